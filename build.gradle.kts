@@ -16,4 +16,9 @@ dependencies {
 
 tasks.getByName<Test>("test") {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+tasks.register<JavaExec>("benchmark") {
+    description = "Runs a benchmark main from the test sources, e.g. -PbenchmarkClass=LexerBenchmark"
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass.set("plc.project." + (project.findProperty("benchmarkClass") ?: "LexerBenchmark"))
+}
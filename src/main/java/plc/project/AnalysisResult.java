@@ -0,0 +1,138 @@
+package plc.project;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The annotations of an AST which an {@link Analyzer} writes into when it is
+ * constructed with one, in place of the nodes themselves: the types of
+ * expressions, the variables of globals, declarations and accesses, and the
+ * functions of functions and calls.
+ *
+ * Annotations are keyed by node identity, since equal nodes may be analyzed
+ * differently: two accesses of {@code x} in different scopes are equal, but
+ * resolve to different variables. The nodes an {@link AstPool} shares are the
+ * ones whose annotations follow from their syntax alone, so they are the same
+ * wherever the node occurs.
+ *
+ * The AST is left unmodified, so one AST may be analyzed by several analyzers
+ * at once, each into its own result. A result is not itself thread safe, but
+ * may be read by any number of threads once its analysis has finished.
+ */
+public final class AnalysisResult {
+
+    //Each node has a single annotation: a type, variable or function
+    private Map<Ast, Object> annotations = new IdentityHashMap<>();
+    //The number of further results which annotated each node added more than
+    //once by putAll, or null if there is none
+    private Map<Ast, Integer> repeats = null;
+
+    /**
+     * Returns the type of the expression, which for accesses and calls is
+     * that of their variable and the return type of their function.
+     */
+    public Environment.Type getType(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Access) {
+            return getVariable(ast).getType();
+        } else if (ast instanceof Ast.Expression.Function) {
+            return getFunction(ast).getReturnType();
+        }
+        return (Environment.Type) require(ast, "type");
+    }
+
+    /**
+     * Returns the variable of a global, declaration or access.
+     */
+    public Environment.Variable getVariable(Ast ast) {
+        return (Environment.Variable) require(ast, "variable");
+    }
+
+    /**
+     * Returns the function of a function or call.
+     */
+    public Environment.Function getFunction(Ast ast) {
+        return (Environment.Function) require(ast, "function");
+    }
+
+    /**
+     * Returns the number of annotated nodes.
+     */
+    public int size() {
+        return annotations.size();
+    }
+
+    void setType(Ast.Expression ast, Environment.Type type) {
+        annotations.put(ast, type);
+    }
+
+    void setVariable(Ast ast, Environment.Variable variable) {
+        annotations.put(ast, variable);
+    }
+
+    void setFunction(Ast ast, Environment.Function function) {
+        annotations.put(ast, function);
+    }
+
+    void remove(Ast ast) {
+        annotations.remove(ast);
+    }
+
+    /**
+     * Adds the annotations of the given results, growing the table once.
+     */
+    void putAll(List<AnalysisResult> results) {
+        int size = annotations.size();
+        for (AnalysisResult result : results) {
+            size += result.annotations.size();
+        }
+        Map<Ast, Object> merged = new IdentityHashMap<>(size);
+        merged.putAll(annotations);
+        annotations = merged;
+        for (AnalysisResult result : results) {
+            putAll(result);
+        }
+    }
+
+    /**
+     * Adds the annotations of the given result. A node it annotates which is
+     * already annotated, as a node an {@link AstPool} shares between two
+     * results is, keeps its annotation until both results are removed.
+     */
+    void putAll(AnalysisResult result) {
+        for (Map.Entry<Ast, Object> entry : result.annotations.entrySet()) {
+            if (annotations.put(entry.getKey(), entry.getValue()) != null) {
+                if (repeats == null) {
+                    repeats = new IdentityHashMap<>();
+                }
+                repeats.merge(entry.getKey(), 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Removes the annotations of the given result, which must have been added
+     * with {@link #putAll(AnalysisResult)}, in time proportional to its size.
+     */
+    void removeAll(AnalysisResult result) {
+        for (Ast ast : result.annotations.keySet()) {
+            Integer count = repeats == null ? null : repeats.get(ast);
+            if (count == null) {
+                annotations.remove(ast);
+            } else if (count == 1) {
+                repeats.remove(ast);
+            } else {
+                repeats.put(ast, count - 1);
+            }
+        }
+    }
+
+    private Object require(Ast ast, String name) {
+        Object annotation = annotations.get(ast);
+        if (annotation == null) {
+            throw new IllegalStateException(name + " is uninitialized");
+        }
+        return annotation;
+    }
+
+}
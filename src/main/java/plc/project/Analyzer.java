@@ -4,8 +4,13 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 /**
@@ -14,18 +19,61 @@ import java.util.stream.Collectors;
  */
 public final class Analyzer implements Ast.Visitor<Void> {
 
+    private static final int CHUNKS_PER_THREAD = 8;
+
     public Scope scope;
-    private Ast.Function function;
+    private Environment.Function function;
+    private final AnalysisResult result;
+    //The function declaring each parameter and function, while bodies are
+    //checked in parallel, and the index of the function being checked
+    private Map<Object, Integer> owners = null;
+    private int index;
+    private Scope globals;
+    //Variable names and function name/arity keys, for IncrementalAnalyzer
+    private Set<String> dependencies = null;
 
     public Analyzer(Scope parent) {
+        this(parent, null);
+    }
+
+    /**
+     * Creates an analyzer which writes its annotations into the given result
+     * instead of the AST, leaving the AST unmodified so that it may be
+     * analyzed by other analyzers at the same time.
+     */
+    public Analyzer(Scope parent, AnalysisResult result) {
+        this.result = result;
         scope = new Scope(parent);
         scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
     }
 
+    /**
+     * Creates an analyzer checking the bodies of functions from the given
+     * index on within the scope of the parent, into a result of its own if the
+     * parent has one, and adding the names it looks up to the given set if
+     * there is one.
+     */
+    Analyzer(Analyzer parent, int index, Set<String> dependencies) {
+        this.result = parent.result == null ? null : new AnalysisResult();
+        this.scope = parent.scope;
+        this.owners = parent.owners;
+        this.index = index;
+        this.globals = parent.scope;
+        this.dependencies = dependencies;
+    }
+
     public Scope getScope() {
         return scope;
     }
 
+    /**
+     * Returns the result this analyzer annotates, or null if it annotates the
+     * AST itself.
+     */
+    public AnalysisResult getResult() {
+        return result;
+    }
+
     @Override
     public Void visit(Ast.Source ast) {
         List<Ast.Global> globals = ast.getGlobals();
@@ -34,10 +82,8 @@ public final class Analyzer implements Ast.Visitor<Void> {
             visit(global);
         for(Ast.Function fun : functions)
             visit(fun);
-        //Make sure there is a main function with arity 0
-        Environment.Function main= scope.lookupFunction("main", 0);
-        //Make sure the main function has an integer return type
-        requireAssignable(Environment.Type.INTEGER, main.getReturnType());
+        //Make sure there is a main function with arity 0 and an integer return type
+        requireMain();
         return null;
     }
 
@@ -48,15 +94,15 @@ public final class Analyzer implements Ast.Visitor<Void> {
         if(value.isPresent()) {
             //If list, assign type beforehand so PLC list function can check values within the list
             if(value.get() instanceof Ast.Expression.PlcList)
-                ((Ast.Expression.PlcList) value.get()).setType(getType(ast.getTypeName()));
+                setType((Ast.Expression.PlcList) value.get(), getType(ast.getTypeName()));
             visit(ast.getValue().get());
-            if (!ast.getTypeName().equals(ast.getValue().get().getType().getName()))
+            if (!ast.getTypeName().equals(getType(ast.getValue().get()).getName()))
                 throw new RuntimeException("Value type does not match declared variable type");
         }
         Environment.Type type = getType(ast.getTypeName());
         Environment.Variable var = new Environment.Variable(ast.getName(), ast.getName(), type, ast.getMutable() ,Environment.NIL);
         scope.defineVariable(ast.getName(), ast.getName(), type, ast.getMutable(), Environment.NIL);
-        ast.setVariable(var);
+        setVariable(ast, var);
         return null;
     }
     private Environment.Type getType(String TypeName)
@@ -79,9 +125,107 @@ public final class Analyzer implements Ast.Visitor<Void> {
             return Environment.Type.DECIMAL;
         else throw new RuntimeException("Illegal variable type");
     }
+
+    /**
+     * Analyzes the source like {@link #visit(Ast.Source)}, but checks the
+     * bodies of the functions concurrently on the given pool.
+     *
+     * The globals and the signatures of the functions are analyzed first, in
+     * order, after which the scope of this analyzer is only read. Each body is
+     * then checked by an analyzer of its own in a child scope, which ignores
+     * the parameters and functions declared after its function, since the
+     * sequential analysis would not have declared them yet. Bodies are joined
+     * in order, so the error thrown is the one {@link #visit(Ast.Source)}
+     * would have thrown: that of the first failing body, or otherwise that of
+     * the first failing signature. An analyzer with a result gives each run
+     * of bodies a result of its own, merged into its result at the end.
+     */
+    public Void visitParallel(Ast.Source ast, ForkJoinPool pool) {
+        List<Ast.Function> functions = ast.getFunctions();
+        for(Ast.Global global : ast.getGlobals())
+            visit(global);
+        List<Environment.Function> signatures = new ArrayList<>();
+        RuntimeException failure = null;
+        owners = new IdentityHashMap<>();
+        try {
+            for(int i = 0; i < functions.size(); i++)
+                signatures.add(declare(i, functions.get(i)));
+        } catch(RuntimeException e) {
+            failure = e;
+        }
+        //Bodies are checked in runs of consecutive functions, since a single
+        //body is too little work for a task of its own
+        int chunk = Math.max(1, signatures.size() / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        List<AnalysisResult> results = new ArrayList<>();
+        List<ForkJoinTask<RuntimeException>> tasks = new ArrayList<>();
+        for(int start = 0; start < signatures.size(); start += chunk)
+        {
+            Analyzer analyzer = new Analyzer(this, start, null);
+            int from = start;
+            int to = Math.min(start + chunk, signatures.size());
+            if(result != null)
+                results.add(analyzer.result);
+            //Returned rather than thrown, since join would wrap it
+            tasks.add(pool.submit(() -> {
+                try {
+                    for(analyzer.index = from; analyzer.index < to; analyzer.index++)
+                        analyzer.visitBody(functions.get(analyzer.index), signatures.get(analyzer.index));
+                    return null;
+                } catch(RuntimeException e) {
+                    return e;
+                }
+            }));
+        }
+        owners = null;
+        for(int i = 0; i < tasks.size(); i++)
+        {
+            RuntimeException error = tasks.get(i).join();
+            if(error != null)
+            {
+                for(ForkJoinTask<RuntimeException> task : tasks)
+                    task.cancel(false);
+                throw error;
+            }
+        }
+        if(result != null)
+            result.putAll(results);
+        if(failure != null)
+            throw failure;
+        requireMain();
+        return null;
+    }
+
+    /**
+     * Requires a main function of arity 0 with an integer return type.
+     */
+    void requireMain() {
+        Environment.Function main = scope.lookupFunction("main", 0);
+        requireAssignable(Environment.Type.INTEGER, main.getReturnType());
+    }
+
     @Override
     public Void visit(Ast.Function ast) {
-        List<Ast.Statement> statements = ast.getStatements();
+        visitBody(ast, declare(ast));
+        return null;
+    }
+
+    /**
+     * Declares the function at the given index like {@link #declare(Ast.Function)},
+     * recording it as the owner of its declarations so that analyzers
+     * created by {@link #Analyzer(Analyzer, int, Set)} may check the body of any
+     * function once all are declared.
+     */
+    Environment.Function declare(int index, Ast.Function ast) {
+        if(owners == null)
+            owners = new IdentityHashMap<>();
+        this.index = index;
+        return declare(ast);
+    }
+
+    /**
+     * Defines the parameters and the function itself in the current scope.
+     */
+    private Environment.Function declare(Ast.Function ast) {
         List<String> params  = ast.getParameters();
         List<String> paramTypesString = ast.getParameterTypeNames();
         List<Environment.Type> paramTypes = new ArrayList<>();
@@ -89,18 +233,25 @@ public final class Analyzer implements Ast.Visitor<Void> {
         Environment.Type returnType = Environment.Type.NIL;
         for(int i = 0; i < params.size(); i++) {
             paramTypes.add(getType(paramTypesString.get(i)));
-            scope.defineVariable(params.get(i), params.get(i), paramTypes.get(i), true, Environment.NIL);
+            own(scope.defineVariable(params.get(i), params.get(i), paramTypes.get(i), true, Environment.NIL));
         }
         if(ast.getReturnTypeName().isPresent())
              returnType = getType(ast.getReturnTypeName().get());
-        scope.defineFunction(name, name, paramTypes, returnType, args -> Environment.NIL);
-        ast.setFunction(scope.lookupFunction(name, ast.getParameters().size()));
-        function = ast;
+        Environment.Function function = own(scope.defineFunction(name, name, paramTypes, returnType, args -> Environment.NIL));
+        setFunction(ast, function);
+        return function;
+    }
+
+    /**
+     * Checks the body of the function in a child of the current scope.
+     */
+    void visitBody(Ast.Function ast, Environment.Function function) {
+        List<Ast.Statement> statements = ast.getStatements();
+        this.function = function;
         scope = new Scope(scope);
         for(Ast.Statement statement : statements)
                 visit(statement);
         scope = scope.getParent();
-        return null;
     }
 
     @Override
@@ -118,7 +269,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         //let var = value
         if(value.isPresent() && !ast.getTypeName().isPresent()) {
             visit(ast.getValue().get());
-            type = (ast.getValue().get().getType());
+            type = (getType(ast.getValue().get()));
         }
         //let var : type
         else if(!value.isPresent() && ast.getTypeName().isPresent())
@@ -127,7 +278,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         else if(value.isPresent() && ast.getTypeName().isPresent())
         {
             visit(ast.getValue().get());
-            if(!ast.getTypeName().get().equals(ast.getValue().get().getType().getName()))
+            if(!ast.getTypeName().get().equals(getType(ast.getValue().get()).getName()))
                 throw new RuntimeException("Returned value is not same as declared type");
             type = getType(ast.getTypeName().get());
         }
@@ -135,7 +286,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         else
             throw new RuntimeException("Missing type and assignment");
         Environment.Variable var = new Environment.Variable(ast.getName(), ast.getName(), type, true, Environment.NIL);
-        ast.setVariable(var);
+        setVariable(ast, var);
         scope.defineVariable(ast.getName(), ast.getName(), type, true, Environment.NIL);
         return null;
 
@@ -148,14 +299,14 @@ public final class Analyzer implements Ast.Visitor<Void> {
         //initialize the receiver and value types
         visit(ast.getReceiver());
         visit(ast.getValue());
-        requireAssignable(ast.getReceiver().getType(), ast.getValue().getType());
+        requireAssignable(getType(ast.getReceiver()), getType(ast.getValue()));
         return null;
     }
 
     @Override
     public Void visit(Ast.Statement.If ast) {
         visit(ast.getCondition());
-        requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
+        requireAssignable(Environment.Type.BOOLEAN, getType(ast.getCondition()));
         if(ast.getThenStatements().isEmpty())
             throw new RuntimeException("Then statement is empty for if");
         List<Ast.Statement> thenStatements = ast.getThenStatements();
@@ -186,7 +337,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             {
                 //check the type
                 visit(cases.get(i).getValue().get());
-                if(!cases.get(i).getValue().get().getType().equals(condition.getType()))
+                if(!getType(cases.get(i).getValue().get()).equals(getType(condition)))
                     throw new RuntimeException("Case type is not same as switch statement type");
                 //if type correct, execute the case
                 visit(cases.get(i));
@@ -214,7 +365,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Statement.While ast) {
         visit(ast.getCondition());
-        requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
+        requireAssignable(Environment.Type.BOOLEAN, getType(ast.getCondition()));
         scope = new Scope(scope);
         for(Ast.Statement statements : ast.getStatements())
             visit(statements);
@@ -226,33 +377,33 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Void visit(Ast.Statement.Return ast) {
         //saved return type in variable to be used in function.
         visit(ast.getValue());
-        requireAssignable(ast.getValue().getType(), function.getFunction().getReturnType());
+        requireAssignable(getType(ast.getValue()), function.getReturnType());
         return null;
     }
 
     @Override
     public Void visit(Ast.Expression.Literal ast) {
         if(ast.getLiteral() instanceof Boolean)
-            ast.setType(Environment.Type.BOOLEAN);
+            setType(ast, Environment.Type.BOOLEAN);
         else if(ast.getLiteral() instanceof Character)
-            ast.setType(Environment.Type.CHARACTER);
+            setType(ast, Environment.Type.CHARACTER);
         else if(ast.getLiteral() instanceof String)
-            ast.setType(Environment.Type.STRING);
+            setType(ast, Environment.Type.STRING);
         else if(ast.getLiteral() == null)
-            ast.setType(Environment.Type.NIL);
+            setType(ast, Environment.Type.NIL);
         else if(ast.getLiteral() instanceof BigInteger)
         {
             BigInteger integer = (BigInteger) ast.getLiteral();
             if(integer.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) > 0 || integer.compareTo(BigInteger.valueOf(Integer.MIN_VALUE)) < 0)
                 throw new RuntimeException("Integer out of bounds exception");
-            ast.setType(Environment.Type.INTEGER);
+            setType(ast, Environment.Type.INTEGER);
         }
         else if(ast.getLiteral() instanceof BigDecimal)
         {
             double num = ((BigDecimal) ast.getLiteral()).doubleValue();
             if(num == Double.NEGATIVE_INFINITY || num == Double.POSITIVE_INFINITY)
                 throw new RuntimeException("Integer out of bounds exception");
-            ast.setType(Environment.Type.DECIMAL);
+            setType(ast, Environment.Type.DECIMAL);
         }
         return null;
     }
@@ -263,7 +414,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         if(!(ast.getExpression() instanceof Ast.Expression.Binary))
             throw new RuntimeException("Illegal grouping. Not binary expression");
         else
-            ast.setType(ast.getExpression().getType());
+            setType(ast, getType(ast.getExpression()));
         return null;
     }
 
@@ -277,31 +428,31 @@ public final class Analyzer implements Ast.Visitor<Void> {
         visit(LHS);
         if(operator.equals("&&") || operator.equals("||"))
         {
-            requireAssignable(Environment.Type.BOOLEAN, LHS.getType());
-            requireAssignable(Environment.Type.BOOLEAN, RHS.getType());
-            ast.setType(Environment.Type.BOOLEAN);
+            requireAssignable(Environment.Type.BOOLEAN, getType(LHS));
+            requireAssignable(Environment.Type.BOOLEAN, getType(RHS));
+            setType(ast, Environment.Type.BOOLEAN);
         }
         else if(operator.equals("<") || operator.equals(">") || operator.equals("==") || operator.equals("!="))
         {
             //check that LHS and RHS of the same type
-            requireAssignable(LHS.getType(), RHS.getType());
+            requireAssignable(getType(LHS), getType(RHS));
             //Now check LHS and RHS comparable
-            requireAssignable(Environment.Type.COMPARABLE, LHS.getType());
-            requireAssignable(Environment.Type.COMPARABLE, RHS.getType());
-            ast.setType(Environment.Type.BOOLEAN);
+            requireAssignable(Environment.Type.COMPARABLE, getType(LHS));
+            requireAssignable(Environment.Type.COMPARABLE, getType(RHS));
+            setType(ast, Environment.Type.BOOLEAN);
         }
         else if(operator.equals("+"))
         {
             //check that LHS and RHS of the same type
-            if(LHS.getType().equals(Environment.Type.STRING) || RHS.getType().equals(Environment.Type.STRING))
-                ast.setType(Environment.Type.STRING);
+            if(getType(LHS).equals(Environment.Type.STRING) || getType(RHS).equals(Environment.Type.STRING))
+                setType(ast, Environment.Type.STRING);
             else{
                 //Check that both sides are the same type
-                requireAssignable(LHS.getType(), RHS.getType());
-                if(LHS.getType().equals(Environment.Type.INTEGER))
-                    ast.setType(Environment.Type.INTEGER);
-                else if(LHS.getType().equals(Environment.Type.DECIMAL))
-                    ast.setType(Environment.Type.DECIMAL);
+                requireAssignable(getType(LHS), getType(RHS));
+                if(getType(LHS).equals(Environment.Type.INTEGER))
+                    setType(ast, Environment.Type.INTEGER);
+                else if(getType(LHS).equals(Environment.Type.DECIMAL))
+                    setType(ast, Environment.Type.DECIMAL);
                 else{
                     throw new RuntimeException("Illegal addition of types");
                 }
@@ -310,11 +461,11 @@ public final class Analyzer implements Ast.Visitor<Void> {
         else if(operator.equals("-") || operator.equals("*") || operator.equals("/"))
         {
             //check that LHS and RHS of the same type
-            requireAssignable(LHS.getType(), RHS.getType());
-            if(LHS.getType().equals(Environment.Type.INTEGER))
-                ast.setType(Environment.Type.INTEGER);
-            else if(LHS.getType().equals(Environment.Type.DECIMAL))
-                ast.setType(Environment.Type.DECIMAL);
+            requireAssignable(getType(LHS), getType(RHS));
+            if(getType(LHS).equals(Environment.Type.INTEGER))
+                setType(ast, Environment.Type.INTEGER);
+            else if(getType(LHS).equals(Environment.Type.DECIMAL))
+                setType(ast, Environment.Type.DECIMAL);
             else{
                 throw new RuntimeException("Illegal " + operator + " of types");
             }
@@ -322,51 +473,149 @@ public final class Analyzer implements Ast.Visitor<Void> {
         else if(operator.equals("^"))
         {
             //check that LHS and RHS of the same type
-            requireAssignable(Environment.Type.INTEGER, LHS.getType());
-            requireAssignable(Environment.Type.INTEGER, RHS.getType());
-            ast.setType(Environment.Type.INTEGER);
+            requireAssignable(Environment.Type.INTEGER, getType(LHS));
+            requireAssignable(Environment.Type.INTEGER, getType(RHS));
+            setType(ast, Environment.Type.INTEGER);
         }
         return null;
     }
 
     @Override
     public Void visit(Ast.Expression.Access ast) {
-        Environment.Variable var = scope.lookupVariable(ast.getName());
+        Environment.Variable var = lookupVariable(ast.getName());
         Optional optional = ast.getOffset();
         if (optional.isPresent()) {
             visit(ast.getOffset().get());
             //require offset isnt an int, throw error
             //requireAssignable(Environment.Type.INTEGER, optional.get().)
-            requireAssignable(Environment.Type.INTEGER, ast.getOffset().get().getType());
+            requireAssignable(Environment.Type.INTEGER, getType(ast.getOffset().get()));
         }
-        ast.setVariable(var);
+        setVariable(ast, var);
         return null;
     }
 
     @Override
     public Void visit(Ast.Expression.Function ast) {
-        Environment.Function fun = scope.lookupFunction(ast.getName(), ast.getArguments().size());
+        Environment.Function fun = lookupFunction(ast.getName(), ast.getArguments().size());
         //List<Ast.Expression> arguments = ast.getArguments();
         //check every argument type matches parameter
         for (int i = 0; i < ast.getArguments().size(); i++) {
             visit(ast.getArguments().get(i));
-            requireAssignable(fun.getParameterTypes().get(i), ast.getArguments().get(i).getType());
+            requireAssignable(fun.getParameterTypes().get(i), getType(ast.getArguments().get(i)));
         }
-        ast.setFunction(fun);
+        setFunction(ast, fun);
         return null;
     }
 
     @Override
     public Void visit(Ast.Expression.PlcList ast) {
         List<Ast.Expression> vals = ast.getValues();
-        //ast.setType();
+        //setType(ast, );
         for (Ast.Expression val : vals) {
             visit(val);
-            requireAssignable(ast.getType(), val.getType());
+            requireAssignable(getType(ast), getType(val));
         }
         return null;
     }
 
+    private <T> T own(T declaration) {
+        if(owners != null)
+            owners.put(declaration, index);
+        return declaration;
+    }
+
+    /**
+     * Looks up a variable like the scope does, but as the sequential analysis
+     * would have from the function being checked.
+     */
+    Environment.Variable lookupVariable(String name) {
+        if(dependencies != null)
+            dependencies.add(name);
+        Environment.Variable variable = scope.lookupVariable(name);
+        //Declared after this function, so the sequential analysis would have
+        //continued past the globals (through an empty scope, if there is none)
+        if(owners != null && owners.getOrDefault(variable, index) > index)
+            return new Scope(globals.getParent()).lookupVariable(name);
+        return variable;
+    }
+
+    Environment.Function lookupFunction(String name, int arity) {
+        if(dependencies != null)
+            dependencies.add(name + "/" + arity);
+        Environment.Function function = scope.lookupFunction(name, arity);
+        if(owners != null && owners.getOrDefault(function, index) > index)
+            return new Scope(globals.getParent()).lookupFunction(name, arity);
+        return function;
+    }
+
+    private Environment.Type getType(Ast.Expression ast) {
+        return result == null ? ast.getType() : result.getType(ast);
+    }
+
+    //Overloaded per node class, since each declares its own setter
+    private void setType(Ast.Expression.Literal ast, Environment.Type type) {
+        if(result == null)
+            ast.setType(type);
+        else
+            result.setType(ast, type);
+    }
+
+    private void setType(Ast.Expression.Group ast, Environment.Type type) {
+        if(result == null)
+            ast.setType(type);
+        else
+            result.setType(ast, type);
+    }
+
+    private void setType(Ast.Expression.Binary ast, Environment.Type type) {
+        if(result == null)
+            ast.setType(type);
+        else
+            result.setType(ast, type);
+    }
+
+    private void setType(Ast.Expression.PlcList ast, Environment.Type type) {
+        if(result == null)
+            ast.setType(type);
+        else
+            result.setType(ast, type);
+    }
+
+    private void setVariable(Ast.Global ast, Environment.Variable variable) {
+        if(result == null)
+            ast.setVariable(variable);
+        else
+            result.setVariable(ast, variable);
+    }
+
+    private void setVariable(Ast.Statement.Declaration ast, Environment.Variable variable) {
+        if(result == null)
+            ast.setVariable(variable);
+        else
+            result.setVariable(ast, variable);
+    }
+
+    private void setVariable(Ast.Expression.Access ast, Environment.Variable variable) {
+        if(result == null)
+            ast.setVariable(variable);
+        else
+            result.setVariable(ast, variable);
+    }
+
+    private void setFunction(Ast.Function ast, Environment.Function function) {
+        if(result == null)
+            ast.setFunction(function);
+        else
+            result.setFunction(ast, function);
+    }
+
+    private void setFunction(Ast.Expression.Function ast, Environment.Function function) {
+        if(result == null)
+            ast.setFunction(function);
+        else
+            result.setFunction(ast, function);
+    }
+
     public static void requireAssignable(Environment.Type target, Environment.Type type) {
         if(target.equals(Environment.Type.ANY))
         {}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * See the Parser assignment specification for specific notes on each AST class
@@ -11,6 +12,29 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * Calls the visitor's method for the class of this node, so dispatching a
+     * node of any class costs one virtual call.
+     */
+    public abstract <T> T accept(Visitor<T> visitor);
+
+    /**
+     * Returns a hash of the syntax of this node. The fields set by the {@link
+     * Analyzer} are not hashed, since they are set after a node may have been
+     * hashed; nodes which are equal have equal syntax, so this is consistent
+     * with equals. The expressions which can be hash consed cache it.
+     */
+    @Override
+    public int hashCode() {
+        return hash();
+    }
+
+    abstract int hash();
+
+    static int mix(int hash, Object field) {
+        return 31 * hash + Objects.hashCode(field);
+    }
+
     public static final class Source extends Ast {
 
         private final List<Global> globals;
@@ -29,13 +53,23 @@ public abstract class Ast {
             return functions;
         }
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Source &&
+            return this == obj || obj instanceof Source &&
                     globals.equals(((Source) obj).globals) &&
                     functions.equals(((Source) obj).functions);
         }
 
+        @Override
+        int hash() {
+            return mix(mix(1, globals), functions);
+        }
+
         @Override
         public String toString() {
             return "Ast.Source{" +
@@ -94,9 +128,14 @@ public abstract class Ast {
         }
 
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Global &&
+            return this == obj || obj instanceof Global &&
                     name.equals(((Global) obj).name) &&
                     typeName.equals(((Global) obj).typeName) &&
                     mutable == ((Global) obj).mutable &&
@@ -104,6 +143,11 @@ public abstract class Ast {
                     Objects.equals(variable, ((Global) obj).variable);
         }
 
+        @Override
+        int hash() {
+            return mix(mix(mix(mix(2, name), typeName), mutable), value);
+        }
+
         @Override
         public String toString() {
             return "Ast.Global{" +
@@ -123,7 +167,8 @@ public abstract class Ast {
         private final List<String> parameters;
         private final List<String> parameterTypeNames;
         private final Optional<String> returnTypeName;
-        private final List<Statement> statements;
+        private volatile List<Statement> statements;
+        private Supplier<List<Statement>> body;
         private Environment.Function function = null;
         
         public Function(String name, List<String> parameters, List<Statement> statements) {
@@ -142,6 +187,16 @@ public abstract class Ast {
             this.statements = statements;
         }
 
+        /**
+         * Creates a function whose statements are parsed from the body on the
+         * first call to {@link #getStatements()}, which throws the {@link
+         * ParseException} of the body if it has any.
+         */
+        public Function(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, Supplier<List<Statement>> body) {
+            this(name, parameters, parameterTypeNames, returnTypeName, (List<Statement>) null);
+            this.body = body;
+        }
+
         public String getName() {
             return name;
         }
@@ -159,6 +214,17 @@ public abstract class Ast {
         }
 
         public List<Statement> getStatements() {
+            List<Statement> statements = this.statements;
+            if (statements == null) {
+                synchronized (this) {
+                    statements = this.statements;
+                    if (statements == null) {
+                        statements = body.get();
+                        this.statements = statements;
+                        body = null;
+                    }
+                }
+            }
             return statements;
         }
 
@@ -174,26 +240,51 @@ public abstract class Ast {
         }
 
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+        /**
+         * Compares the signatures first, then the statements, so the body of a
+         * function parsed lazily is only parsed if the signatures are equal,
+         * in which case it throws the {@link ParseException} of the body if it
+         * has one.
+         */
         @Override
         public boolean equals(Object obj) {
-            return obj instanceof Ast.Function &&
+            return this == obj || obj instanceof Ast.Function &&
                     name.equals(((Ast.Function) obj).name) &&
                     parameters.equals(((Ast.Function) obj).parameters) &&
                     parameterTypeNames.equals(((Ast.Function) obj).parameterTypeNames) &&
                     returnTypeName.equals(((Ast.Function) obj).returnTypeName) &&
-                    statements.equals(((Ast.Function) obj).statements) &&
+                    getStatements().equals(((Ast.Function) obj).getStatements()) &&
                     Objects.equals(function, ((Ast.Function) obj).function);
         }
 
+        /**
+         * Hashes the signature only, so hashing a function parsed lazily does
+         * not parse its body.
+         */
+        @Override
+        int hash() {
+            return mix(mix(mix(mix(3, name), parameters), parameterTypeNames), returnTypeName);
+        }
 
+
+        /**
+         * Formats the function without parsing a body parsed lazily, which is
+         * shown as unparsed until its statements are first read.
+         */
         @Override
         public String toString() {
+            List<Statement> statements = this.statements;
             return "Ast.Function{" +
                     "name='" + name + '\'' +
                     ", parameters=" + parameters +
                     ", parameterTypeNames=" + parameterTypeNames +
                     ", returnTypeName='" + returnTypeName + '\'' +
-                    ", statements=" + statements +
+                    ", statements=" + (statements == null ? "<unparsed>" : statements) +
                     ", function=" + function +
                     '}';
         }
@@ -214,12 +305,22 @@ public abstract class Ast {
                 return expression;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Ast.Statement.Expression &&
+                return this == obj || obj instanceof Ast.Statement.Expression &&
                         expression.equals(((Ast.Statement.Expression) obj).expression);
             }
 
+            @Override
+            int hash() {
+                return mix(4, expression);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.Expression{" +
@@ -270,15 +371,25 @@ public abstract class Ast {
             }
             
             
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Declaration &&
+                return this == obj || obj instanceof Declaration &&
                         name.equals(((Declaration) obj).name) &&
                         typeName.equals(((Declaration) obj).typeName) &&
                         value.equals(((Declaration) obj).value) &&
                         Objects.equals(variable, ((Declaration) obj).variable);
             }
 
+            @Override
+            int hash() {
+                return mix(mix(mix(5, name), typeName), value);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.Declaration{" +
@@ -309,13 +420,23 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Assignment &&
+                return this == obj || obj instanceof Assignment &&
                         receiver.equals(((Assignment) obj).receiver) &&
                         value.equals(((Assignment) obj).value);
             }
 
+            @Override
+            int hash() {
+                return mix(mix(6, receiver), value);
+            }
+
             @Override
             public final String toString() {
                 return "Ast.Statement.Assignment{" +
@@ -351,14 +472,24 @@ public abstract class Ast {
                 return elseStatements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof If &&
+                return this == obj || obj instanceof If &&
                         condition.equals(((If) obj).condition) &&
                         thenStatements.equals(((If) obj).thenStatements) &&
                         elseStatements.equals(((If) obj).elseStatements);
             }
 
+            @Override
+            int hash() {
+                return mix(mix(mix(7, condition), thenStatements), elseStatements);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.If{" +
@@ -386,13 +517,23 @@ public abstract class Ast {
 
             public List<Ast.Statement.Case> getCases() { return cases; }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Switch &&
+                return this == obj || obj instanceof Switch &&
                         condition.equals(((Switch) obj).condition) &&
                         cases.equals(((Switch) obj).cases);
             }
 
+            @Override
+            int hash() {
+                return mix(mix(8, condition), cases);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.Switch{" +
@@ -421,13 +562,23 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Case &&
+                return this == obj || obj instanceof Case &&
                         value.equals(((Case) obj).value) &&
                         statements.equals(((Case) obj).statements);
             }
 
+            @Override
+            int hash() {
+                return mix(mix(9, value), statements);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.Case{" +
@@ -456,13 +607,23 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof While &&
+                return this == obj || obj instanceof While &&
                         condition.equals(((While) obj).condition) &&
                         statements.equals(((While) obj).statements);
             }
 
+            @Override
+            int hash() {
+                return mix(mix(10, condition), statements);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.While{" +
@@ -485,12 +646,22 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Return &&
+                return this == obj || obj instanceof Return &&
                         value.equals(((Return) obj).value);
             }
 
+            @Override
+            int hash() {
+                return mix(11, value);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.Return{" +
@@ -510,6 +681,7 @@ public abstract class Ast {
 
             private final Object literal;
             private Environment.Type type = null;
+            private int hash = 0;
             
             public Literal(Object literal) {
                 this.literal = literal;
@@ -533,13 +705,36 @@ public abstract class Ast {
 
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Literal &&
+                return this == obj || obj instanceof Literal &&
                         Objects.equals(literal, ((Literal) obj).literal) &&
                         Objects.equals(type, ((Literal) obj).type);
             }
 
+            @Override
+            int hash() {
+                return mix(12, literal);
+            }
+
+            /**
+             * Caches the hash, since the hash consing {@link AstPool} hashes
+             * every shareable expression and each one's hash includes those of
+             * its operands. The cache fits in the padding of the node.
+             */
+            @Override
+            public int hashCode() {
+                if (hash == 0) {
+                    hash = hash();
+                }
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expression.Literal{" +
@@ -554,6 +749,7 @@ public abstract class Ast {
 
             private final Ast.Expression expression;
             private Environment.Type type = null;
+            private int hash = 0;
 
             public Group(Ast.Expression expression) {
                 this.expression = expression;
@@ -576,13 +772,31 @@ public abstract class Ast {
             }
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Group &&
+                return this == obj || obj instanceof Group &&
                         expression.equals(((Group) obj).expression) &&
                         Objects.equals(type, ((Group) obj).type);
             }
 
+            @Override
+            int hash() {
+                return mix(13, expression);
+            }
+
+            @Override
+            public int hashCode() {
+                if (hash == 0) {
+                    hash = hash();
+                }
+                return hash;
+            }
+
 
             @Override
             public String toString() {
@@ -600,6 +814,7 @@ public abstract class Ast {
             private final Ast.Expression left;
             private final Ast.Expression right;
             private Environment.Type type = null;
+            private int hash = 0;
 
             public Binary(String operator, Ast.Expression left, Ast.Expression right) {
                 this.operator = operator;
@@ -631,15 +846,33 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Binary &&
+                return this == obj || obj instanceof Binary &&
                         operator.equals(((Binary) obj).operator) &&
                         left.equals(((Binary) obj).left) &&
                         right.equals(((Binary) obj).right) &&
                         Objects.equals(type, ((Binary) obj).type);
             }
 
+            @Override
+            int hash() {
+                return mix(mix(mix(14, operator), left), right);
+            }
+
+            @Override
+            public int hashCode() {
+                if (hash == 0) {
+                    hash = hash();
+                }
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expression.Binary{" +
@@ -688,14 +921,24 @@ public abstract class Ast {
                 return getVariable().getType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Access &&
+                return this == obj || obj instanceof Access &&
                         offset.equals(((Access) obj).offset) &&
                         name.equals(((Access) obj).name) &&
                         Objects.equals(variable, ((Access) obj).variable);
             }
 
+            @Override
+            int hash() {
+                return mix(mix(15, offset), name);
+            }
+
 
             @Override
             public String toString() {
@@ -743,14 +986,24 @@ public abstract class Ast {
                 return getFunction().getReturnType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Ast.Expression.Function &&
+                return this == obj || obj instanceof Ast.Expression.Function &&
                         name.equals(((Ast.Expression.Function) obj).name) &&
                         arguments.equals(((Ast.Expression.Function) obj).arguments) &&
                         Objects.equals(function, ((Ast.Expression.Function) obj).function);
             }
 
+            @Override
+            int hash() {
+                return mix(mix(16, name), arguments);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expression.Function{" +
@@ -788,13 +1041,23 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Ast.Expression.PlcList &&
+                return this == obj || obj instanceof Ast.Expression.PlcList &&
                         values.equals(((Ast.Expression.PlcList) obj).values) &&
                         Objects.equals(type, ((Ast.Expression.PlcList) obj).type);
             }
 
+            @Override
+            int hash() {
+                return mix(17, values);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expression.PlcList{" +
@@ -809,44 +1072,12 @@ public abstract class Ast {
 
     public interface Visitor<T> {
 
+        /**
+         * Dispatches to the method for the class of the node through {@link
+         * Ast#accept(Visitor)}.
+         */
         default T visit(Ast ast) {
-            if (ast instanceof Ast.Source) {
-                return visit((Ast.Source) ast);
-            } else if (ast instanceof Ast.Global) {
-                return visit((Ast.Global) ast);
-            } else if (ast instanceof Ast.Function) {
-                return visit((Ast.Function) ast);
-            } else if (ast instanceof Ast.Statement.Expression) {
-                return visit((Ast.Statement.Expression) ast);
-            } else if (ast instanceof Ast.Statement.Declaration) {
-                return visit((Ast.Statement.Declaration) ast);
-            } else if (ast instanceof Ast.Statement.Assignment) {
-                return visit((Ast.Statement.Assignment) ast);
-            } else if (ast instanceof Ast.Statement.If) {
-                return visit((Ast.Statement.If) ast);
-            } else if (ast instanceof Ast.Statement.Switch) {
-                return visit((Ast.Statement.Switch) ast);
-            } else if (ast instanceof Ast.Statement.Case) {
-                return visit((Ast.Statement.Case) ast);
-            } else if (ast instanceof Ast.Statement.While) {
-                return visit((Ast.Statement.While) ast);
-            } else if (ast instanceof Ast.Statement.Return) {
-                return visit((Ast.Statement.Return) ast);
-            } else if (ast instanceof Ast.Expression.Literal) {
-                return visit((Ast.Expression.Literal) ast);
-            } else if (ast instanceof Ast.Expression.Group) {
-                return visit((Ast.Expression.Group) ast);
-            } else if (ast instanceof Ast.Expression.Binary) {
-                return visit((Ast.Expression.Binary) ast);
-            } else if (ast instanceof Ast.Expression.Access) {
-                return visit((Ast.Expression.Access) ast);
-            } else if (ast instanceof Ast.Expression.Function) {
-                return visit((Ast.Expression.Function) ast);
-            } else if (ast instanceof Ast.Expression.PlcList) {
-                return visit((Ast.Expression.PlcList) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
-            }
+            return ast.accept(this);
         }
 
         T visit(Ast.Source ast);
@@ -0,0 +1,621 @@
+package plc.project;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A directory of parsed sources, so that parsing a source which was parsed
+ * before skips the {@link Lexer} and {@link Parser} entirely.
+ *
+ * Each source is stored in a file named after the SHA-256 hash of its UTF-8
+ * bytes, holding its {@link Ast.Source} in a compact binary format. A cached
+ * file is memory mapped and decoded straight from the mapping. Files start
+ * with a magic number and the {@link #VERSION} of the format, and a file of
+ * another version, or one which cannot be decoded, is treated as missing and
+ * replaced. Files are written to a temporary file first and then renamed, so
+ * several processes may share a directory.
+ *
+ * Only what the parser produces is stored; the fields set by the {@link
+ * Analyzer} are not.
+ */
+public final class AstCache {
+
+    private static final int MAGIC = 0x504C4341;
+
+    /**
+     * The version of the file format, which must be incremented whenever the
+     * format or the ASTs produced by the parser change.
+     */
+    public static final int VERSION = 1;
+
+    private static final byte SOURCE = 0;
+    private static final byte GLOBAL = 1;
+    private static final byte FUNCTION = 2;
+    private static final byte EXPRESSION_STATEMENT = 3;
+    private static final byte DECLARATION = 4;
+    private static final byte ASSIGNMENT = 5;
+    private static final byte IF = 6;
+    private static final byte SWITCH = 7;
+    private static final byte CASE = 8;
+    private static final byte WHILE = 9;
+    private static final byte RETURN = 10;
+    private static final byte LITERAL = 11;
+    private static final byte GROUP = 12;
+    private static final byte BINARY = 13;
+    private static final byte ACCESS = 14;
+    private static final byte FUNCTION_CALL = 15;
+    private static final byte LIST = 16;
+
+    private static final byte NIL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INTEGER = 3;
+    private static final byte BIG_INTEGER = 4;
+    private static final byte DECIMAL = 5;
+    private static final byte BIG_DECIMAL = 6;
+    private static final byte CHARACTER = 7;
+    private static final byte STRING = 8;
+
+    private final Path directory;
+
+    public AstCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Returns the AST of the source, from the cache if it is there and
+     * otherwise by lexing and parsing it and storing the result. A source
+     * which fails to parse is not stored and throws its {@link
+     * ParseException} every time.
+     */
+    public Ast.Source parse(String source) throws IOException {
+        return parse(source.getBytes(StandardCharsets.UTF_8), source);
+    }
+
+    /**
+     * Returns the AST of the UTF-8 source file like {@link #parse(String)}.
+     * Its contents are only decoded on a cache miss.
+     */
+    public Ast.Source parse(Path path) throws IOException {
+        return parse(Files.readAllBytes(path), null);
+    }
+
+    private Ast.Source parse(byte[] bytes, String source) throws IOException {
+        Path file = directory.resolve(key(bytes) + ".ast");
+        Ast.Source ast = read(file);
+        if (ast == null) {
+            if (source == null) {
+                source = new String(bytes, StandardCharsets.UTF_8);
+            }
+            ast = new Parser(new Lexer(source).lexBuffer()).parseSource();
+            write(file, ast);
+        }
+        return ast;
+    }
+
+    /**
+     * Returns the name of the cache file of the source bytes, which is the
+     * hex encoded SHA-256 hash of them.
+     */
+    static String key(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is required of every Java platform.", e);
+        }
+    }
+
+    /**
+     * Returns the AST in the file, or null if there is no file or it is not a
+     * valid file of this version.
+     */
+    private static Ast.Source read(Path file) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            return decode(bytes);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    private void write(Path file, Ast.Source ast) throws IOException {
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, encode(ast));
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Encodes the AST, including its header.
+     */
+    static byte[] encode(Ast.Source ast) {
+        Encoder encoder = new Encoder();
+        encoder.raw(ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).array());
+        encoder.visit(ast);
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Decodes an AST encoded by {@link #encode(Ast.Source)}, or returns null
+     * if the header is not that of this version. Malformed contents throw an
+     * unchecked exception.
+     */
+    static Ast.Source decode(ByteBuffer bytes) {
+        if (bytes.remaining() < 8 || bytes.getInt() != MAGIC || bytes.getInt() != VERSION) {
+            return null;
+        }
+        Ast.Source ast = (Ast.Source) new Decoder(bytes).read();
+        if (bytes.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes after the AST.");
+        }
+        return ast;
+    }
+
+    /**
+     * Writes each node as its tag followed by its fields, with lists prefixed
+     * by their size. Numbers are written as variable length integers, seven
+     * bits to a byte, so most sizes, indexes and literals take a single byte.
+     * Strings are written once and then referred to by their index, since
+     * names and types repeat throughout a source.
+     */
+    private static final class Encoder implements Ast.Visitor<Void> {
+
+        private final Map<String, Integer> strings = new HashMap<>();
+        private byte[] buffer = new byte[1024];
+        private int size = 0;
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            write(SOURCE);
+            nodes(ast.getGlobals());
+            nodes(ast.getFunctions());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Global ast) {
+            write(GLOBAL);
+            string(ast.getName());
+            string(ast.getTypeName());
+            bool(ast.getMutable());
+            optional(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Function ast) {
+            write(FUNCTION);
+            string(ast.getName());
+            strings(ast.getParameters());
+            strings(ast.getParameterTypeNames());
+            bool(ast.getReturnTypeName().isPresent());
+            ast.getReturnTypeName().ifPresent(this::string);
+            nodes(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Expression ast) {
+            write(EXPRESSION_STATEMENT);
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Declaration ast) {
+            write(DECLARATION);
+            string(ast.getName());
+            bool(ast.getTypeName().isPresent());
+            ast.getTypeName().ifPresent(this::string);
+            optional(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Assignment ast) {
+            write(ASSIGNMENT);
+            visit(ast.getReceiver());
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.If ast) {
+            write(IF);
+            visit(ast.getCondition());
+            nodes(ast.getThenStatements());
+            nodes(ast.getElseStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Switch ast) {
+            write(SWITCH);
+            visit(ast.getCondition());
+            nodes(ast.getCases());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Case ast) {
+            write(CASE);
+            optional(ast.getValue());
+            nodes(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.While ast) {
+            write(WHILE);
+            visit(ast.getCondition());
+            nodes(ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Statement.Return ast) {
+            write(RETURN);
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Literal ast) {
+            write(LITERAL);
+            Object literal = ast.getLiteral();
+            if (literal == null) {
+                write(NIL);
+            } else if (literal instanceof Boolean) {
+                write((Boolean) literal ? TRUE : FALSE);
+            } else if (literal instanceof BigInteger) {
+                BigInteger integer = (BigInteger) literal;
+                if (integer.bitLength() < 64) {
+                    write(INTEGER);
+                    signed(integer.longValue());
+                } else {
+                    write(BIG_INTEGER);
+                    bytes(integer.toByteArray());
+                }
+            } else if (literal instanceof BigDecimal) {
+                BigInteger unscaled = ((BigDecimal) literal).unscaledValue();
+                if (unscaled.bitLength() < 64) {
+                    write(DECIMAL);
+                    signed(((BigDecimal) literal).scale());
+                    signed(unscaled.longValue());
+                } else {
+                    write(BIG_DECIMAL);
+                    signed(((BigDecimal) literal).scale());
+                    bytes(unscaled.toByteArray());
+                }
+            } else if (literal instanceof Character) {
+                write(CHARACTER);
+                unsigned((Character) literal);
+            } else if (literal instanceof String) {
+                write(STRING);
+                string((String) literal);
+            } else {
+                throw new AssertionError("Unimplemented literal type: " + literal.getClass().getName() + ".");
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Group ast) {
+            write(GROUP);
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Binary ast) {
+            write(BINARY);
+            string(ast.getOperator());
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Access ast) {
+            write(ACCESS);
+            string(ast.getName());
+            optional(ast.getOffset());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.Function ast) {
+            write(FUNCTION_CALL);
+            string(ast.getName());
+            nodes(ast.getArguments());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expression.PlcList ast) {
+            write(LIST);
+            nodes(ast.getValues());
+            return null;
+        }
+
+        private void write(byte b) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = b;
+        }
+
+        private void raw(byte[] bytes) {
+            if (size + bytes.length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(size * 2, size + bytes.length));
+            }
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void bool(boolean value) {
+            write(value ? (byte) 1 : (byte) 0);
+        }
+
+        private void unsigned(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((byte) (value | 0x80));
+                value >>>= 7;
+            }
+            write((byte) value);
+        }
+
+        /**
+         * Writes a signed number zigzag encoded, so that small negative
+         * numbers are short too.
+         */
+        private void signed(long value) {
+            unsigned((value << 1) ^ (value >> 63));
+        }
+
+        private void bytes(byte[] bytes) {
+            unsigned(bytes.length);
+            raw(bytes);
+        }
+
+        /**
+         * Writes twice the index of a string already written, or one more than
+         * twice the length of its UTF-8 bytes followed by the bytes.
+         */
+        private void string(String string) {
+            Integer index = strings.get(string);
+            if (index != null) {
+                unsigned((long) index << 1);
+                return;
+            }
+            strings.put(string, strings.size());
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            unsigned(((long) bytes.length << 1) | 1);
+            raw(bytes);
+        }
+
+        private void strings(List<String> strings) {
+            unsigned(strings.size());
+            for (String string : strings) {
+                string(string);
+            }
+        }
+
+        private void nodes(List<? extends Ast> nodes) {
+            unsigned(nodes.size());
+            for (Ast node : nodes) {
+                visit(node);
+            }
+        }
+
+        private void optional(Optional<Ast.Expression> value) {
+            bool(value.isPresent());
+            value.ifPresent(this::visit);
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+    }
+
+    private static final class Decoder {
+
+        private final ByteBuffer bytes;
+        private final List<String> strings = new ArrayList<>();
+
+        private Decoder(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        private Ast read() {
+            byte tag = bytes.get();
+            switch (tag) {
+                case SOURCE:
+                    return new Ast.Source(nodes(), nodes());
+                case GLOBAL:
+                    return new Ast.Global(string(), string(), bool(), optional());
+                case FUNCTION:
+                    return new Ast.Function(string(), strings(), strings(),
+                            bool() ? Optional.of(string()) : Optional.empty(), nodes());
+                case EXPRESSION_STATEMENT:
+                    return new Ast.Statement.Expression(expression());
+                case DECLARATION:
+                    return new Ast.Statement.Declaration(string(), bool() ? Optional.of(string()) : Optional.empty(), optional());
+                case ASSIGNMENT:
+                    return new Ast.Statement.Assignment(expression(), expression());
+                case IF:
+                    return new Ast.Statement.If(expression(), nodes(), nodes());
+                case SWITCH:
+                    return new Ast.Statement.Switch(expression(), nodes());
+                case CASE:
+                    return new Ast.Statement.Case(optional(), nodes());
+                case WHILE:
+                    return new Ast.Statement.While(expression(), nodes());
+                case RETURN:
+                    return new Ast.Statement.Return(expression());
+                case LITERAL:
+                    return new Ast.Expression.Literal(literal());
+                case GROUP:
+                    return new Ast.Expression.Group(expression());
+                case BINARY:
+                    return new Ast.Expression.Binary(string(), expression(), expression());
+                case ACCESS:
+                    String name = string();
+                    return new Ast.Expression.Access(optional(), name);
+                case FUNCTION_CALL:
+                    return new Ast.Expression.Function(string(), nodes());
+                case LIST:
+                    return new Ast.Expression.PlcList(nodes());
+                default:
+                    throw new IllegalArgumentException("Invalid node tag " + tag + ".");
+            }
+        }
+
+        private Object literal() {
+            byte tag = bytes.get();
+            switch (tag) {
+                case NIL:
+                    return null;
+                case TRUE:
+                    return true;
+                case FALSE:
+                    return false;
+                case INTEGER:
+                    return BigInteger.valueOf(signed());
+                case BIG_INTEGER:
+                    return new BigInteger(bytes());
+                case DECIMAL:
+                    int scale = (int) signed();
+                    return BigDecimal.valueOf(signed(), scale);
+                case BIG_DECIMAL:
+                    scale = (int) signed();
+                    return new BigDecimal(new BigInteger(bytes()), scale);
+                case CHARACTER:
+                    return (char) unsigned();
+                case STRING:
+                    return string();
+                default:
+                    throw new IllegalArgumentException("Invalid literal tag " + tag + ".");
+            }
+        }
+
+        private Ast.Expression expression() {
+            return (Ast.Expression) read();
+        }
+
+        private boolean bool() {
+            return bytes.get() != 0;
+        }
+
+        private long unsigned() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = bytes.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Invalid variable length integer.");
+        }
+
+        private long signed() {
+            long value = unsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads a size, which is at most the number of bytes remaining since
+         * every element takes at least one byte. A size of ten bytes may have
+         * its sign bit set, which is rejected like any other invalid size.
+         */
+        private int size() {
+            long size = unsigned();
+            if (size < 0 || size > bytes.remaining()) {
+                throw new IllegalArgumentException("Invalid size " + size + ".");
+            }
+            return (int) size;
+        }
+
+        private byte[] bytes() {
+            byte[] array = new byte[size()];
+            bytes.get(array);
+            return array;
+        }
+
+        private String string() {
+            long value = unsigned();
+            long length = value >>> 1;
+            if ((value & 1) == 0) {
+                return strings.get((int) Math.min(length, Integer.MAX_VALUE));
+            } else if (length < 0 || length > bytes.remaining()) {
+                throw new IllegalArgumentException("Invalid string length " + length + ".");
+            }
+            byte[] array = new byte[(int) length];
+            bytes.get(array);
+            String string = new String(array, StandardCharsets.UTF_8);
+            strings.add(string);
+            return string;
+        }
+
+        private List<String> strings() {
+            int size = size();
+            List<String> strings = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                strings.add(string());
+            }
+            return strings;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends Ast> List<T> nodes() {
+            int size = size();
+            List<T> nodes = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                nodes.add((T) read());
+            }
+            return nodes;
+        }
+
+        private Optional<Ast.Expression> optional() {
+            return bool() ? Optional.of(expression()) : Optional.empty();
+        }
+
+    }
+
+}
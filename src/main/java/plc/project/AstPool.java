@@ -0,0 +1,107 @@
+package plc.project;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pool of shared expressions, which the {@link Parser} hash conses into when
+ * it is given one with {@link Parser#setPool(AstPool)}, so that every
+ * occurrence of an equal constant expression is the same node.
+ *
+ * Only the expressions whose annotations by the {@link Analyzer} follow from
+ * their syntax alone are shared: literals, and groups and binary expressions
+ * of shared operands. Every occurrence of {@code 0} is then one node holding
+ * one value, and every occurrence of {@code (x + 1)} holds the same literal,
+ * but is a node of its own since the variable {@code x} resolves differently
+ * in each scope. Shared nodes are equal by identity, so comparing two ASTs
+ * parsed into the same pool stops at the first shared node of each.
+ *
+ * Nodes are pooled by their syntax alone, not by {@link Ast#equals}, which
+ * also compares the type the analyzer annotates a node with in place, so a
+ * node analyzed after it was pooled is still shared with later parses.
+ *
+ * The pool is thread safe, so parsers on several threads may share one, and
+ * it holds every node interned into it until it is discarded.
+ */
+public final class AstPool {
+
+    private final ConcurrentHashMap<Key, Ast.Expression> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the shared node equal to the given one, which becomes the shared
+     * node if there is none, or the node itself if it cannot be shared.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Ast.Expression> T intern(T expression) {
+        if (expression instanceof Ast.Expression.Group) {
+            if (!isShared(((Ast.Expression.Group) expression).getExpression())) {
+                return expression;
+            }
+        } else if (expression instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) expression;
+            if (!isShared(binary.getLeft()) || !isShared(binary.getRight())) {
+                return expression;
+            }
+        } else if (!(expression instanceof Ast.Expression.Literal)) {
+            return expression;
+        }
+        Ast.Expression shared = nodes.putIfAbsent(new Key(expression), expression);
+        return shared != null ? (T) shared : expression;
+    }
+
+    /**
+     * Returns whether the node is the shared node of this pool.
+     */
+    public boolean isShared(Ast.Expression expression) {
+        return nodes.get(new Key(expression)) == expression;
+    }
+
+    /**
+     * Returns the number of shared nodes.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * The syntax of a node: the value of a literal, or the operator and the
+     * operands of a group or binary expression, which are compared by identity
+     * since only expressions of shared operands are pooled.
+     */
+    private static final class Key {
+
+        private final Ast.Expression expression;
+
+        private Key(Ast.Expression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key) || ((Key) obj).expression.getClass() != expression.getClass()) {
+                return false;
+            }
+            Ast.Expression other = ((Key) obj).expression;
+            if (expression instanceof Ast.Expression.Literal) {
+                return Objects.equals(((Ast.Expression.Literal) expression).getLiteral(), ((Ast.Expression.Literal) other).getLiteral());
+            } else if (expression instanceof Ast.Expression.Group) {
+                return ((Ast.Expression.Group) expression).getExpression() == ((Ast.Expression.Group) other).getExpression();
+            } else if (expression instanceof Ast.Expression.Binary) {
+                Ast.Expression.Binary binary = (Ast.Expression.Binary) expression;
+                Ast.Expression.Binary otherBinary = (Ast.Expression.Binary) other;
+                return binary.getOperator().equals(otherBinary.getOperator())
+                        && binary.getLeft() == otherBinary.getLeft()
+                        && binary.getRight() == otherBinary.getRight();
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            //Syntax only, and cached by the nodes that are pooled
+            return expression.hashCode();
+        }
+
+    }
+
+}
@@ -0,0 +1,156 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * The source positions of AST nodes, kept in a side table so the nodes
+ * themselves do not grow a field which is unused unless something needs to
+ * point back at the source.
+ *
+ * The table maps each node, by identity, to the char index at which its first
+ * token starts and the index just past its last token. Recording a position
+ * only appends the node and its two ints to parallel arrays, in the order the
+ * parser finishes the nodes, so it touches no memory but the ends of the
+ * arrays. The open addressing index over them, which makes a lookup a hash
+ * and a few probes, is only built for the positions recorded since the last
+ * lookup, when the next lookup happens. The {@link Parser} populates the table
+ * for every node but the {@link Ast.Source} when it is given one with {@link
+ * Parser#setPositions(AstPositions)}.
+ *
+ * The table is not thread safe, and lookups modify it too. Positions of
+ * function bodies parsed lazily by {@link Parser#parseSourceLazy()} are added
+ * while holding the table's lock when the body is parsed, so a table shared
+ * with other threads must be queried holding it too.
+ */
+public final class AstPositions {
+
+    private Ast[] nodes = new Ast[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int size = 0;
+
+    /**
+     * The index of the positions, holding for each node one more than the
+     * index of its latest position, or 0 for an empty slot.
+     */
+    private int[] index = new int[0];
+    private int indexed = 0;
+
+    /**
+     * Records the position of the node, which replaces any earlier one.
+     */
+    void put(Ast node, int start, int end) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        nodes[size] = node;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * Records all positions of the other table, after those of this one.
+     */
+    void putAll(AstPositions positions) {
+        int total = size + positions.size;
+        if (total > nodes.length) {
+            int length = Math.max(total, nodes.length * 2);
+            nodes = Arrays.copyOf(nodes, length);
+            starts = Arrays.copyOf(starts, length);
+            ends = Arrays.copyOf(ends, length);
+        }
+        System.arraycopy(positions.nodes, 0, nodes, size, positions.size);
+        System.arraycopy(positions.starts, 0, starts, size, positions.size);
+        System.arraycopy(positions.ends, 0, ends, size, positions.size);
+        size = total;
+    }
+
+    /**
+     * Returns the number of positions recorded.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(Ast node) {
+        return find(node) >= 0;
+    }
+
+    /**
+     * Returns the index at which the first token of the node starts, or -1 if
+     * the node has no position.
+     */
+    public int getStart(Ast node) {
+        int position = find(node);
+        return position >= 0 ? starts[position] : -1;
+    }
+
+    /**
+     * Returns the index just past the last token of the node, or -1 if the
+     * node has no position.
+     */
+    public int getEnd(Ast node) {
+        int position = find(node);
+        return position >= 0 ? ends[position] : -1;
+    }
+
+    /**
+     * Formats the start of the node as {@code line:column}, or returns null if
+     * the node has no position.
+     */
+    public String format(Ast node, LineMap lines) {
+        int start = getStart(node);
+        return start >= 0 ? lines.format(start) : null;
+    }
+
+    /**
+     * Returns the index of the latest position of the node, or -1 if it has
+     * none, first indexing the positions recorded since the last lookup.
+     */
+    private int find(Ast node) {
+        if (indexed < size) {
+            update();
+        }
+        if (index.length == 0) {
+            return -1;
+        }
+        int entry = index[slot(node)];
+        return entry - 1;
+    }
+
+    private void update() {
+        if (2 * size > index.length) {
+            index = new int[Integer.highestOneBit(Math.max(size, 16) * 4 - 1)];
+            indexed = 0;
+        }
+        for (; indexed < size; indexed++) {
+            index[slot(nodes[indexed])] = indexed + 1;
+        }
+    }
+
+    /**
+     * Returns the slot of the index holding the node, or the empty slot where
+     * it belongs.
+     */
+    private int slot(Ast node) {
+        int mask = index.length - 1;
+        int slot = spread(System.identityHashCode(node)) & mask;
+        while (index[slot] != 0 && nodes[index[slot] - 1] != node) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Mixes the bits of an identity hash, which are poorly distributed in the
+     * low bits on some JVMs.
+     */
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,576 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An AST encoded into a single array of ints instead of a graph of {@link
+ * Ast} objects, for programs so large that building, traversing and
+ * collecting one object per node, with its lists and optionals, dominates.
+ *
+ * A node is the offset in the arena of its kind, such as {@link #BINARY},
+ * followed by its fields in a fixed order. A field is either the offset of a
+ * child node, the index of a string in the string pool, the index of a value
+ * in the literal pool, a boolean as 0 or 1, or the offset of a list, which is
+ * its length followed by its elements. An absent optional field is -1.
+ * Nodes are encoded in the order of a depth first traversal, each followed by
+ * its lists and then its children, so the root is at offset 0 and a traversal
+ * reads the arena from front to back.
+ *
+ * Nodes are read with a {@link Cursor}, which names fields by role, such as
+ * {@link #LEFT}, and descends into a child for the duration of a call to a
+ * {@link Visitor}. Only what the parser produces is encoded; the fields set by
+ * the {@link Analyzer} are not.
+ */
+public final class FlatAst {
+
+    public static final int SOURCE = 0;
+    public static final int GLOBAL = 1;
+    public static final int FUNCTION = 2;
+    public static final int EXPRESSION_STATEMENT = 3;
+    public static final int DECLARATION = 4;
+    public static final int ASSIGNMENT = 5;
+    public static final int IF = 6;
+    public static final int SWITCH = 7;
+    public static final int CASE = 8;
+    public static final int WHILE = 9;
+    public static final int RETURN = 10;
+    public static final int LITERAL = 11;
+    public static final int GROUP = 12;
+    public static final int BINARY = 13;
+    public static final int ACCESS = 14;
+    public static final int FUNCTION_CALL = 15;
+    public static final int LIST = 16;
+
+    public static final int GLOBALS = 0;
+    public static final int FUNCTIONS = 1;
+    public static final int NAME = 2;
+    public static final int TYPE_NAME = 3;
+    public static final int MUTABLE = 4;
+    public static final int VALUE = 5;
+    public static final int PARAMETERS = 6;
+    public static final int PARAMETER_TYPE_NAMES = 7;
+    public static final int RETURN_TYPE_NAME = 8;
+    public static final int STATEMENTS = 9;
+    public static final int EXPRESSION = 10;
+    public static final int RECEIVER = 11;
+    public static final int CONDITION = 12;
+    public static final int THEN_STATEMENTS = 13;
+    public static final int ELSE_STATEMENTS = 14;
+    public static final int CASES = 15;
+    public static final int OPERATOR = 16;
+    public static final int LEFT = 17;
+    public static final int RIGHT = 18;
+    public static final int OFFSET = 19;
+    public static final int ARGUMENTS = 20;
+    public static final int VALUES = 21;
+    private static final int ROLES = 22;
+
+    /**
+     * The fields of each kind, in the order they are encoded.
+     */
+    private static final int[][] FIELDS = {
+            {GLOBALS, FUNCTIONS},
+            {NAME, TYPE_NAME, MUTABLE, VALUE},
+            {NAME, PARAMETERS, PARAMETER_TYPE_NAMES, RETURN_TYPE_NAME, STATEMENTS},
+            {EXPRESSION},
+            {NAME, TYPE_NAME, VALUE},
+            {RECEIVER, VALUE},
+            {CONDITION, THEN_STATEMENTS, ELSE_STATEMENTS},
+            {CONDITION, CASES},
+            {VALUE, STATEMENTS},
+            {CONDITION, STATEMENTS},
+            {VALUE},
+            {VALUE},
+            {EXPRESSION},
+            {OPERATOR, LEFT, RIGHT},
+            {OFFSET, NAME},
+            {NAME, ARGUMENTS},
+            {VALUES},
+    };
+
+    /**
+     * The position of each role among the fields of each kind, indexed by
+     * {@code kind * ROLES + role}, or 0 if the kind has no such field.
+     */
+    private static final byte[] SLOTS = new byte[FIELDS.length * ROLES];
+
+    static {
+        for (int kind = 0; kind < FIELDS.length; kind++) {
+            for (int i = 0; i < FIELDS[kind].length; i++) {
+                SLOTS[kind * ROLES + FIELDS[kind][i]] = (byte) (i + 1);
+            }
+        }
+    }
+
+    private final int[] arena;
+    private final String[] strings;
+    private final Object[] literals;
+    private final int root;
+    private final int size;
+
+    private FlatAst(int[] arena, String[] strings, Object[] literals, int root, int size) {
+        this.arena = arena;
+        this.strings = strings;
+        this.literals = literals;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Encodes the given node and everything below it.
+     */
+    public static FlatAst of(Ast ast) {
+        Encoder encoder = new Encoder();
+        int root = encoder.visit(ast);
+        return new FlatAst(Arrays.copyOf(encoder.arena, encoder.length), encoder.strings.toArray(new String[0]),
+                encoder.literals.toArray(), root, encoder.size);
+    }
+
+    /**
+     * Decodes the root back into a tree of {@link Ast} objects, equal to the
+     * one it was encoded from.
+     */
+    public Ast toAst() {
+        return decode(root);
+    }
+
+    /**
+     * Returns the offset of the root node.
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of ints in the arena, which holds every node and
+     * list.
+     */
+    public int getArenaSize() {
+        return arena.length;
+    }
+
+    public int getKind(int node) {
+        return arena[node];
+    }
+
+    /**
+     * Returns a cursor at the root.
+     */
+    public Cursor cursor() {
+        return new Cursor(root);
+    }
+
+    /**
+     * Returns the raw value of a field of the node.
+     */
+    private int field(int node, int role) {
+        int slot = SLOTS[arena[node] * ROLES + role];
+        if (slot == 0) {
+            throw new IllegalArgumentException("Node kind " + arena[node] + " has no field " + role + ".");
+        }
+        return arena[node + slot];
+    }
+
+    /**
+     * Visits one node and everything below it with a cursor, which is only
+     * valid during the call.
+     */
+    public interface Visitor<T> {
+
+        T visit(Cursor cursor);
+
+    }
+
+    /**
+     * A position in the arena, which moves to a child for the duration of a
+     * call to a {@link Visitor} and back again afterwards, so a traversal
+     * allocates nothing but the cursor.
+     */
+    public final class Cursor {
+
+        private int node;
+
+        private Cursor(int node) {
+            this.node = node;
+        }
+
+        public int getNode() {
+            return node;
+        }
+
+        public int getKind() {
+            return arena[node];
+        }
+
+        /**
+         * Returns whether the kind of the node has the field.
+         */
+        public boolean hasField(int role) {
+            return SLOTS[arena[node] * ROLES + role] != 0;
+        }
+
+        /**
+         * Returns whether the optional field is present.
+         */
+        public boolean has(int role) {
+            return field(node, role) >= 0;
+        }
+
+        /**
+         * Returns the string field, such as the {@link #NAME}, or null if it
+         * is absent.
+         */
+        public String getString(int role) {
+            int string = field(node, role);
+            return string >= 0 ? strings[string] : null;
+        }
+
+        /**
+         * Returns the string at the index of a list field of strings, such as
+         * the {@link #PARAMETERS} of a function.
+         */
+        public String getString(int role, int index) {
+            return strings[arena[field(node, role) + 1 + index]];
+        }
+
+        public boolean getBoolean(int role) {
+            return field(node, role) != 0;
+        }
+
+        /**
+         * Returns the value of a {@link #LITERAL}, whose {@link #VALUE} field
+         * is an index into the literal pool rather than a node.
+         */
+        public Object getLiteral() {
+            return literals[field(node, VALUE)];
+        }
+
+        /**
+         * Returns the length of the list field.
+         */
+        public int size(int role) {
+            return arena[field(node, role)];
+        }
+
+        /**
+         * Visits the child in the given field, which must be present.
+         */
+        public <T> T visit(int role, Visitor<T> visitor) {
+            return visitChild(field(node, role), visitor);
+        }
+
+        /**
+         * Visits the child at the index of a list field.
+         */
+        public <T> T visit(int role, int index, Visitor<T> visitor) {
+            return visitChild(arena[field(node, role) + 1 + index], visitor);
+        }
+
+        private <T> T visitChild(int child, Visitor<T> visitor) {
+            int parent = node;
+            node = child;
+            try {
+                return visitor.visit(this);
+            } finally {
+                node = parent;
+            }
+        }
+
+    }
+
+    private Ast decode(int node) {
+        switch (arena[node]) {
+            case SOURCE:
+                return new Ast.Source(nodes(arena[node + 1]), nodes(arena[node + 2]));
+            case GLOBAL:
+                return new Ast.Global(strings[arena[node + 1]], strings[arena[node + 2]], arena[node + 3] != 0, optional(arena[node + 4]));
+            case FUNCTION:
+                return new Ast.Function(strings[arena[node + 1]], strings(arena[node + 2]), strings(arena[node + 3]),
+                        optionalString(arena[node + 4]), nodes(arena[node + 5]));
+            case EXPRESSION_STATEMENT:
+                return new Ast.Statement.Expression((Ast.Expression) decode(arena[node + 1]));
+            case DECLARATION:
+                return new Ast.Statement.Declaration(strings[arena[node + 1]], optionalString(arena[node + 2]), optional(arena[node + 3]));
+            case ASSIGNMENT:
+                return new Ast.Statement.Assignment((Ast.Expression) decode(arena[node + 1]), (Ast.Expression) decode(arena[node + 2]));
+            case IF:
+                return new Ast.Statement.If((Ast.Expression) decode(arena[node + 1]), nodes(arena[node + 2]), nodes(arena[node + 3]));
+            case SWITCH:
+                return new Ast.Statement.Switch((Ast.Expression) decode(arena[node + 1]), nodes(arena[node + 2]));
+            case CASE:
+                return new Ast.Statement.Case(optional(arena[node + 1]), nodes(arena[node + 2]));
+            case WHILE:
+                return new Ast.Statement.While((Ast.Expression) decode(arena[node + 1]), nodes(arena[node + 2]));
+            case RETURN:
+                return new Ast.Statement.Return((Ast.Expression) decode(arena[node + 1]));
+            case LITERAL:
+                return new Ast.Expression.Literal(literals[arena[node + 1]]);
+            case GROUP:
+                return new Ast.Expression.Group((Ast.Expression) decode(arena[node + 1]));
+            case BINARY:
+                return new Ast.Expression.Binary(strings[arena[node + 1]], (Ast.Expression) decode(arena[node + 2]), (Ast.Expression) decode(arena[node + 3]));
+            case ACCESS:
+                return new Ast.Expression.Access(optional(arena[node + 1]), strings[arena[node + 2]]);
+            case FUNCTION_CALL:
+                return new Ast.Expression.Function(strings[arena[node + 1]], nodes(arena[node + 2]));
+            case LIST:
+                return new Ast.Expression.PlcList(nodes(arena[node + 1]));
+            default:
+                throw new AssertionError("Invalid node kind: " + arena[node] + ".");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Ast> List<T> nodes(int list) {
+        List<T> nodes = new ArrayList<>(arena[list]);
+        for (int i = 1; i <= arena[list]; i++) {
+            nodes.add((T) decode(arena[list + i]));
+        }
+        return nodes;
+    }
+
+    private List<String> strings(int list) {
+        List<String> strings = new ArrayList<>(arena[list]);
+        for (int i = 1; i <= arena[list]; i++) {
+            strings.add(this.strings[arena[list + i]]);
+        }
+        return strings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Ast> Optional<T> optional(int node) {
+        return node >= 0 ? Optional.of((T) decode(node)) : Optional.empty();
+    }
+
+    private Optional<String> optionalString(int string) {
+        return string >= 0 ? Optional.of(strings[string]) : Optional.empty();
+    }
+
+    /**
+     * Appends each node to the arena before its children, reserving its
+     * fields and those of its lists and filling them in once the children are
+     * appended, so that a traversal reads the arena front to back.
+     */
+    private static final class Encoder implements Ast.Visitor<Integer> {
+
+        private int[] arena = new int[1024];
+        private int length = 0;
+        private int size = 0;
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<Object> literals = new ArrayList<>();
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            int node = node(SOURCE, 2);
+            set(node + 1, nodes(ast.getGlobals()));
+            set(node + 2, nodes(ast.getFunctions()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Global ast) {
+            int node = node(GLOBAL, 4);
+            set(node + 1, string(ast.getName()));
+            set(node + 2, string(ast.getTypeName()));
+            set(node + 3, ast.getMutable() ? 1 : 0);
+            set(node + 4, optional(ast.getValue()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Function ast) {
+            int node = node(FUNCTION, 5);
+            set(node + 1, string(ast.getName()));
+            set(node + 2, strings(ast.getParameters()));
+            set(node + 3, strings(ast.getParameterTypeNames()));
+            set(node + 4, ast.getReturnTypeName().isPresent() ? string(ast.getReturnTypeName().get()) : -1);
+            set(node + 5, nodes(ast.getStatements()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            int node = node(EXPRESSION_STATEMENT, 1);
+            set(node + 1, visit(ast.getExpression()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            int node = node(DECLARATION, 3);
+            set(node + 1, string(ast.getName()));
+            set(node + 2, ast.getTypeName().isPresent() ? string(ast.getTypeName().get()) : -1);
+            set(node + 3, optional(ast.getValue()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            int node = node(ASSIGNMENT, 2);
+            set(node + 1, visit(ast.getReceiver()));
+            set(node + 2, visit(ast.getValue()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            int node = node(IF, 3);
+            set(node + 1, visit(ast.getCondition()));
+            set(node + 2, nodes(ast.getThenStatements()));
+            set(node + 3, nodes(ast.getElseStatements()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Switch ast) {
+            int node = node(SWITCH, 2);
+            set(node + 1, visit(ast.getCondition()));
+            set(node + 2, nodes(ast.getCases()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Case ast) {
+            int node = node(CASE, 2);
+            set(node + 1, optional(ast.getValue()));
+            set(node + 2, nodes(ast.getStatements()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            int node = node(WHILE, 2);
+            set(node + 1, visit(ast.getCondition()));
+            set(node + 2, nodes(ast.getStatements()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            int node = node(RETURN, 1);
+            set(node + 1, visit(ast.getValue()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            int node = node(LITERAL, 1);
+            set(node + 1, literals.size());
+            literals.add(ast.getLiteral());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            int node = node(GROUP, 1);
+            set(node + 1, visit(ast.getExpression()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            int node = node(BINARY, 3);
+            set(node + 1, string(ast.getOperator()));
+            set(node + 2, visit(ast.getLeft()));
+            set(node + 3, visit(ast.getRight()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            int node = node(ACCESS, 2);
+            set(node + 1, optional(ast.getOffset()));
+            set(node + 2, string(ast.getName()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            int node = node(FUNCTION_CALL, 2);
+            set(node + 1, string(ast.getName()));
+            set(node + 2, nodes(ast.getArguments()));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.PlcList ast) {
+            int node = node(LIST, 1);
+            set(node + 1, nodes(ast.getValues()));
+            return node;
+        }
+
+        /**
+         * Reserves a node of the given kind and number of fields.
+         */
+        private int node(int kind, int fields) {
+            size++;
+            int node = reserve(1 + fields);
+            arena[node] = kind;
+            return node;
+        }
+
+        private int nodes(List<? extends Ast> nodes) {
+            int list = reserve(1 + nodes.size());
+            arena[list] = nodes.size();
+            for (int i = 0; i < nodes.size(); i++) {
+                set(list + 1 + i, visit(nodes.get(i)));
+            }
+            return list;
+        }
+
+        private int strings(List<String> strings) {
+            int list = reserve(1 + strings.size());
+            arena[list] = strings.size();
+            for (int i = 0; i < strings.size(); i++) {
+                arena[list + 1 + i] = string(strings.get(i));
+            }
+            return list;
+        }
+
+        private int optional(Optional<? extends Ast> node) {
+            return node.isPresent() ? visit(node.get()) : -1;
+        }
+
+        private int string(String string) {
+            Integer index = indices.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                indices.put(string, index);
+            }
+            return index;
+        }
+
+        /**
+         * Sets an int of the arena, which is reallocated as children are
+         * appended, so a field must only be indexed once its value is known.
+         */
+        private void set(int index, int value) {
+            arena[index] = value;
+        }
+
+        private int reserve(int count) {
+            if (length + count > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, length + count));
+            }
+            int offset = length;
+            length += count;
+            return offset;
+        }
+
+    }
+
+}
@@ -1,16 +1,24 @@
 package plc.project;
 
 import java.io.PrintWriter;
-import java.math.BigDecimal;
-import java.math.BigInteger;
 
 public final class Generator implements Ast.Visitor<Void> {
 
     private final PrintWriter writer;
+    private final AnalysisResult result;
     private int indent = 0;
 
     public Generator(PrintWriter writer) {
+        this(writer, null);
+    }
+
+    /**
+     * Creates a generator which reads the annotations of the AST from the
+     * given result, as written by an {@link Analyzer} constructed with it.
+     */
+    public Generator(PrintWriter writer, AnalysisResult result) {
         this.writer = writer;
+        this.result = result;
     }
 
     private void print(Object... objects) {
@@ -66,9 +74,9 @@ public final class Generator implements Ast.Visitor<Void> {
         if(!ast.getMutable())
             print("final ");
         if(ast.getValue().isPresent() && ast.getValue().get() instanceof Ast.Expression.PlcList)
-            print(ast.getVariable().getType().getJvmName(), "[] ", ast.getVariable().getJvmName());
+            print(getVariable(ast).getType().getJvmName(), "[] ", getVariable(ast).getJvmName());
         else
-            print(ast.getVariable().getType().getJvmName(), " ", ast.getVariable().getJvmName());
+            print(getVariable(ast).getType().getJvmName(), " ", getVariable(ast).getJvmName());
         if(ast.getValue().isPresent())
             print(" = ", ast.getValue().get());
         print(";");
@@ -79,7 +87,7 @@ public final class Generator implements Ast.Visitor<Void> {
     public Void visit(Ast.Function ast) {
         int curr = indent;
         indent++;
-        print(ast.getFunction().getReturnType().getJvmName(), " ", ast.getFunction().getJvmName() , "(");
+        print(getFunction(ast).getReturnType().getJvmName(), " ", getFunction(ast).getJvmName() , "(");
         for(int i = 0; i < ast.getParameters().size(); i++){
             if(i == 0)
                 print(getJvm(ast.getParameterTypeNames().get(i)), " ", ast.getParameters().get(i));
@@ -107,9 +115,9 @@ public final class Generator implements Ast.Visitor<Void> {
     @Override
     public Void visit(Ast.Statement.Declaration ast) {
         if(ast.getValue().isPresent())
-            print(ast.getValue().get().getType().getJvmName(), " ", ast.getVariable().getJvmName() , " = ", ast.getValue().get(), ";");
+            print(getType(ast.getValue().get()).getJvmName(), " ", getVariable(ast).getJvmName() , " = ", ast.getValue().get(), ";");
         else
-            print(ast.getVariable().getType().getJvmName(), " ", ast.getVariable().getJvmName() , ";");
+            print(getVariable(ast).getType().getJvmName(), " ", getVariable(ast).getJvmName() , ";");
         return null;
     }
 
@@ -213,17 +221,17 @@ public final class Generator implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Expression.Literal ast) {
-        if(ast.getType().equals(Environment.Type.STRING))
+        if(getType(ast).equals(Environment.Type.STRING))
             print("\"",ast.getLiteral().toString(),"\"");
-        else if(ast.getType().equals(Environment.Type.CHARACTER))
+        else if(getType(ast).equals(Environment.Type.CHARACTER))
             print("'",ast.getLiteral().toString(),"'");
-        else if(ast.getType().equals(Environment.Type.INTEGER))
-            print(new BigInteger(ast.getLiteral().toString()));
-        else if(ast.getType().equals(Environment.Type.DECIMAL))
-            print(new BigDecimal(ast.getLiteral().toString()));
-        else if(ast.getType().equals(Environment.Type.BOOLEAN))
+        else if(getType(ast).equals(Environment.Type.INTEGER))
+            print(ast.getLiteral());
+        else if(getType(ast).equals(Environment.Type.DECIMAL))
+            print(ast.getLiteral());
+        else if(getType(ast).equals(Environment.Type.BOOLEAN))
             print(ast.getLiteral().toString());
-        else if(ast.getType().equals(Environment.Type.NIL))
+        else if(getType(ast).equals(Environment.Type.NIL))
             print("null");
         return null;
     }
@@ -246,7 +254,7 @@ public final class Generator implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Expression.Access ast) {
-        String JvmName = ast.getVariable().getJvmName();
+        String JvmName = getVariable(ast).getJvmName();
         if(ast.getOffset().isPresent())
             print(JvmName, "[", ast.getOffset().get(), "]");
         else
@@ -256,7 +264,7 @@ public final class Generator implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Expression.Function ast) {
-        print(ast.getFunction().getJvmName(), "(");
+        print(getFunction(ast).getJvmName(), "(");
         for(int i = 0; i < ast.getArguments().size(); i++) {
             if(i == 0)
                 print(ast.getArguments().get(i));
@@ -280,8 +288,32 @@ public final class Generator implements Ast.Visitor<Void> {
         return null;
     }
 
+    private Environment.Type getType(Ast.Expression ast) {
+        return result == null ? ast.getType() : result.getType(ast);
+    }
+
+    private Environment.Variable getVariable(Ast.Global ast) {
+        return result == null ? ast.getVariable() : result.getVariable(ast);
+    }
+
+    private Environment.Variable getVariable(Ast.Statement.Declaration ast) {
+        return result == null ? ast.getVariable() : result.getVariable(ast);
+    }
+
+    private Environment.Variable getVariable(Ast.Expression.Access ast) {
+        return result == null ? ast.getVariable() : result.getVariable(ast);
+    }
+
+    private Environment.Function getFunction(Ast.Function ast) {
+        return result == null ? ast.getFunction() : result.getFunction(ast);
+    }
+
+    private Environment.Function getFunction(Ast.Expression.Function ast) {
+        return result == null ? ast.getFunction() : result.getFunction(ast);
+    }
+
     private String getJvm(Ast.Expression RHS){
-        Environment.Type type = RHS.getType();
+        Environment.Type type = getType(RHS);
         return type.getJvmName();
     }
 
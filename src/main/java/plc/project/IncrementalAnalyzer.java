@@ -0,0 +1,328 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Analyzes successive versions of a source, re-checking only the function
+ * bodies an edit can have affected. Each version is analyzed into an {@link
+ * AnalysisResult}, leaving the AST unmodified, so a version may share the
+ * nodes of the previous one: after an edit, the new source is expected to
+ * hold the same global and function nodes wherever nothing was edited, with
+ * only the edited functions parsed again.
+ *
+ * The result of each body is cached along with the names it looked up, which
+ * are the only globals, parameters and functions it depends on. If the globals
+ * and signatures are unchanged, only the bodies of the new functions are
+ * checked. Otherwise the globals and signatures are analyzed again, and a
+ * cached body is only checked again if one of its names was declared, removed
+ * or declared differently by the edit, which is how a function may come to see
+ * a function declared before it, or stop seeing one. If functions were
+ * reordered, the whole source is analyzed again.
+ *
+ * The annotations of the whole source are kept in one result, which each edit
+ * updates in place by removing the annotations of the bodies and signatures it
+ * replaced and adding those of their replacements, so merging the result costs
+ * as much as the edit rather than the source.
+ *
+ * Any error is reported by analyzing the whole source again in order, so it
+ * is the one {@link Analyzer#visit(Ast.Source)} would have thrown.
+ */
+public final class IncrementalAnalyzer {
+
+    private final Scope parent;
+    private Ast.Source source = null;
+    private List<Ast.Global> globals = null;
+    private Analyzer analyzer = null;
+    private List<Body> bodies = null;
+    private AnalysisResult result = null;
+    private int checked = 0;
+
+    public IncrementalAnalyzer(Scope parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Analyzes the source, throwing the exception of the first error.
+     */
+    public void analyze(Ast.Source source) {
+        checked = 0;
+        try {
+            if(this.source == null)
+                analyzeAll(source);
+            else
+                update(source);
+        } catch(RuntimeException e) {
+            this.source = null;
+            analyzeAll(source);
+        }
+        this.source = source;
+        this.globals = new ArrayList<>(source.getGlobals());
+    }
+
+    /**
+     * Returns the annotations of the last source analyzed, which the next
+     * analysis updates in place.
+     */
+    public AnalysisResult getResult() {
+        if(source == null)
+            throw new IllegalStateException("no source has been analyzed");
+        return result;
+    }
+
+    /**
+     * Returns the number of function bodies checked by the last analysis.
+     */
+    public int getChecked() {
+        return checked;
+    }
+
+    /**
+     * Analyzes every global and function in order, like {@link
+     * Analyzer#visit(Ast.Source)}.
+     */
+    private void analyzeAll(Ast.Source source) {
+        Analyzer analyzer = new Analyzer(parent, new AnalysisResult());
+        List<Body> bodies = new ArrayList<>(source.getFunctions().size());
+        for(Ast.Global global : source.getGlobals())
+            analyzer.visit(global);
+        for(int i = 0; i < source.getFunctions().size(); i++) {
+            Ast.Function function = source.getFunctions().get(i);
+            bodies.add(check(analyzer, i, function, analyzer.declare(i, function)));
+        }
+        analyzer.requireMain();
+        List<AnalysisResult> results = new ArrayList<>(bodies.size() + 1);
+        results.add(analyzer.getResult());
+        for(Body body : bodies)
+            results.add(body.result);
+        result = new AnalysisResult();
+        result.putAll(results);
+        this.analyzer = analyzer;
+        this.bodies = bodies;
+    }
+
+    /**
+     * Analyzes the source, reusing what it can from the previous one.
+     */
+    private void update(Ast.Source source) {
+        List<Ast.Function> functions = source.getFunctions();
+        //Globals are annotated in the scope of the previous analysis, so they
+        //are only reused as the same nodes
+        boolean same = sameNodes(source.getGlobals(), globals) && functions.size() == bodies.size();
+        for(int i = 0; same && i < functions.size(); i++)
+            same = sameSignature(functions.get(i), bodies.get(i).function);
+        if(same)
+            updateBodies(functions);
+        else
+            updateSignatures(source);
+    }
+
+    /**
+     * Checks the new bodies of functions whose signatures are all unchanged,
+     * within the scope of the previous analysis.
+     */
+    private void updateBodies(List<Ast.Function> functions) {
+        for(int i = 0; i < functions.size(); i++) {
+            Body body = bodies.get(i);
+            Ast.Function function = functions.get(i);
+            if(function != body.function) {
+                Body checked = check(analyzer, i, function, body.signature);
+                AnalysisResult signatures = analyzer.getResult();
+                signatures.remove(body.function);
+                signatures.setFunction(function, body.signature);
+                result.remove(body.function);
+                result.setFunction(function, body.signature);
+                result.removeAll(body.result);
+                result.putAll(checked.result);
+                bodies.set(i, checked);
+            }
+        }
+    }
+
+    /**
+     * Analyzes the globals and signatures again, then checks the bodies which
+     * are new or which looked up a declaration which changed.
+     */
+    private void updateSignatures(Ast.Source source) {
+        List<Ast.Function> functions = source.getFunctions();
+        Map<Ast.Function, Integer> indices = new IdentityHashMap<>();
+        for(int i = 0; i < bodies.size(); i++)
+            indices.put(bodies.get(i).function, i);
+        //Functions which moved past each other may see different declarations
+        //without any of them changing
+        int last = -1;
+        for(Ast.Function function : functions) {
+            Integer index = indices.get(function);
+            if(index != null && index < last) {
+                analyzeAll(source);
+                return;
+            }
+            last = index != null ? index : last;
+        }
+        Analyzer analyzer = new Analyzer(parent, new AnalysisResult());
+        for(Ast.Global global : source.getGlobals())
+            analyzer.visit(global);
+        List<Environment.Function> signatures = new ArrayList<>(functions.size());
+        for(int i = 0; i < functions.size(); i++)
+            signatures.add(analyzer.declare(i, functions.get(i)));
+        Set<Ast.Function> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(functions);
+        List<Ast.Function> previous = new ArrayList<>(bodies.size());
+        for(Body body : bodies)
+            previous.add(body.function);
+        Map<String, Declaration> before = declarations(globals, previous, current::contains);
+        Map<String, Declaration> after = declarations(source.getGlobals(), functions, indices::containsKey);
+        Set<String> changed = new HashSet<>();
+        for(Map.Entry<String, Declaration> entry : after.entrySet()) {
+            if(!entry.getValue().equals(before.get(entry.getKey())))
+                changed.add(entry.getKey());
+        }
+        for(String name : before.keySet()) {
+            if(!after.containsKey(name))
+                changed.add(name);
+        }
+        List<Body> bodies = new ArrayList<>(functions.size());
+        Set<Body> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(int i = 0; i < functions.size(); i++) {
+            Integer index = indices.get(functions.get(i));
+            Body body = index == null ? null : this.bodies.get(index);
+            if(body == null || depends(body, changed))
+                body = check(analyzer, i, functions.get(i), signatures.get(i));
+            else {
+                kept.add(body);
+                body = new Body(body.function, signatures.get(i), body.result, body.dependencies);
+            }
+            bodies.add(body);
+        }
+        analyzer.requireMain();
+        //Replace the globals, signatures and every body not kept
+        result.removeAll(this.analyzer.getResult());
+        for(Body body : this.bodies) {
+            if(!kept.contains(body))
+                result.removeAll(body.result);
+        }
+        result.putAll(analyzer.getResult());
+        for(int i = 0; i < bodies.size(); i++) {
+            Integer index = indices.get(functions.get(i));
+            if(index == null || !kept.contains(this.bodies.get(index)))
+                result.putAll(bodies.get(i).result);
+        }
+        this.analyzer = analyzer;
+        this.bodies = bodies;
+    }
+
+    private Body check(Analyzer analyzer, int index, Ast.Function function, Environment.Function signature) {
+        Set<String> dependencies = new HashSet<>();
+        Analyzer body = new Analyzer(analyzer, index, dependencies);
+        body.visitBody(function, signature);
+        checked++;
+        return new Body(function, signature, body.getResult(), dependencies);
+    }
+
+    private static boolean depends(Body body, Set<String> changed) {
+        for(String name : changed) {
+            if(body.dependencies.contains(name))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the declarations of the globals and signatures by the keys the
+     * analyzer looks them up with: variable names and function name/arity.
+     *
+     * A function kept by the edit owns its declarations by identity. Any other
+     * function owns them by the number of kept functions before it, which is
+     * what decides the kept functions they are visible to, so that a function
+     * replaced by an edit still owns the declarations it did not change.
+     */
+    private static Map<String, Declaration> declarations(List<Ast.Global> globals, List<Ast.Function> functions, Predicate<Ast.Function> kept) {
+        Map<String, Declaration> declarations = new HashMap<>();
+        for(Ast.Global global : globals)
+            declarations.put(global.getName(), new Declaration(-1, Arrays.asList(global.getTypeName(), global.getMutable())));
+        int count = 0;
+        for(Ast.Function function : functions) {
+            Object owner = kept.test(function) ? function : count;
+            for(int i = 0; i < function.getParameters().size(); i++)
+                declarations.put(function.getParameters().get(i), new Declaration(owner, function.getParameterTypeNames().get(i)));
+            declarations.put(function.getName() + "/" + function.getParameters().size(),
+                    new Declaration(owner, Arrays.asList(function.getParameterTypeNames(), function.getReturnTypeName())));
+            if(owner == function)
+                count++;
+        }
+        return declarations;
+    }
+
+    private static boolean sameNodes(List<? extends Ast> nodes, List<? extends Ast> others) {
+        if(nodes.size() != others.size())
+            return false;
+        for(int i = 0; i < nodes.size(); i++) {
+            if(nodes.get(i) != others.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean sameSignature(Ast.Function function, Ast.Function other) {
+        return function == other || function.getName().equals(other.getName()) &&
+                function.getParameters().equals(other.getParameters()) &&
+                function.getParameterTypeNames().equals(other.getParameterTypeNames()) &&
+                function.getReturnTypeName().equals(other.getReturnTypeName());
+    }
+
+    /**
+     * A global, parameter or function as declared by the source: the owner
+     * declaring it, which is -1 for a global, and its types.
+     */
+    private static final class Declaration {
+
+        private final Object owner;
+        private final Object types;
+
+        private Declaration(Object owner, Object types) {
+            this.owner = owner;
+            this.types = types;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Declaration &&
+                    (owner == ((Declaration) obj).owner || owner instanceof Integer && owner.equals(((Declaration) obj).owner)) &&
+                    types.equals(((Declaration) obj).types);
+        }
+
+        @Override
+        public int hashCode() {
+            return types.hashCode();
+        }
+
+    }
+
+    /**
+     * The cached analysis of a function body.
+     */
+    private static final class Body {
+
+        private final Ast.Function function;
+        private final Environment.Function signature;
+        private final AnalysisResult result;
+        private final Set<String> dependencies;
+
+        private Body(Ast.Function function, Environment.Function signature, AnalysisResult result, Set<String> dependencies) {
+            this.function = function;
+            this.signature = signature;
+            this.result = result;
+            this.dependencies = dependencies;
+        }
+
+    }
+
+}
@@ -1,6 +1,23 @@
 package plc.project;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The lexer works through three main functions:
@@ -13,13 +30,313 @@ import java.util.List;
  * should throw a {@link ParseException} with an index at the character which is
  * invalid.
  *
- * The {@link #peek(String...)} and {@link #match(String...)} functions are * helpers you need to use, they will make the implementation a lot easier. */
+ * Tokens are recognized by a table driven DFA: every character is mapped to a
+ * character class once through {@link #CLASSES}, and {@link #TRANSITIONS}
+ * gives the next state for each (state, class) pair. The DFA remembers the
+ * last accepting state it passed through, so lookahead such as {@code 1.} or
+ * {@code -0} falls back to the shorter token exactly like the original regex
+ * implementation did. The {@link #peek(String...)} and {@link
+ * #match(String...)} regex helpers are still available, but the lexing path no
+ * longer uses them. */
 public final class Lexer {
 
+    //Character classes, the columns of the transition table
+    private static final int OTHER = 0;
+    private static final int WHITESPACE = 1;
+    private static final int NEWLINE = 2;
+    private static final int ZERO = 3;
+    private static final int DIGIT = 4;
+    private static final int ESCAPE_LETTER = 5;
+    private static final int LETTER = 6;
+    private static final int AT = 7;
+    private static final int UNDERSCORE = 8;
+    private static final int MINUS = 9;
+    private static final int DOT = 10;
+    private static final int SINGLE_QUOTE = 11;
+    private static final int DOUBLE_QUOTE = 12;
+    private static final int BACKSLASH = 13;
+    private static final int AMPERSAND = 14;
+    private static final int PIPE = 15;
+    private static final int BANG = 16;
+    private static final int EQUALS = 17;
+    private static final int END_OF_INPUT = 18;
+    private static final int CLASS_COUNT = 19;
+
+    //DFA states, the rows of the transition table
+    private static final int START = 0;
+    private static final int IDENTIFIER = 1;
+    private static final int NEGATIVE = 2;
+    private static final int NEGATIVE_ZERO = 3;
+    private static final int ZERO_INTEGER = 4;
+    private static final int INTEGER = 5;
+    private static final int INTEGER_DOT = 6;
+    private static final int DECIMAL_DOT = 7;
+    private static final int DECIMAL = 8;
+    private static final int CHARACTER_OPEN = 9;
+    private static final int CHARACTER_ESCAPE = 10;
+    private static final int CHARACTER_BODY = 11;
+    private static final int CHARACTER = 12;
+    private static final int STRING_BODY = 13;
+    private static final int STRING_ESCAPE = 14;
+    private static final int STRING = 15;
+    private static final int OPERATOR = 16;
+    private static final int AMPERSAND_OPERATOR = 17;
+    private static final int PIPE_OPERATOR = 18;
+    private static final int BANG_OPERATOR = 19;
+    private static final int EQUALS_OPERATOR = 20;
+    private static final int DOUBLE_OPERATOR = 21;
+    private static final int STATE_COUNT = 22;
+
+    //Transition results that are not states. DEAD falls back to the last
+    //accepting state, anything lower is an index into ERRORS.
+    private static final byte DEAD = -1;
+    private static final byte ILLEGAL_DECIMAL = -2;
+    private static final byte ILLEGAL_DECIMAL_VALUE = -3;
+    private static final byte ILLEGAL_CHARACTER = -4;
+    private static final byte ILLEGAL_CHARACTER_END = -5;
+    private static final byte ILLEGAL_STRING_NEWLINE = -6;
+    private static final byte ILLEGAL_STRING_END = -7;
+    private static final byte ILLEGAL_ESCAPE = -8;
+
+    private static final String[] ERRORS = {
+            null,
+            null,
+            "Illegal decimal",
+            "Illegal decimal value",
+            "Illegal character in character Token",
+            "Illegal end to character token",
+            "Illegal newline in string",
+            "Illegal End of String",
+            "Illegal escape Character"
+    };
+
+    private static final byte[] CLASSES = new byte[128];
+    private static final byte[][] TRANSITIONS = new byte[STATE_COUNT][CLASS_COUNT];
+    private static final Token.Type[] ACCEPT = new Token.Type[STATE_COUNT];
+
+    //For each state that loops on itself, a table marking the characters it
+    //loops on, with slot 128 for all non-ASCII characters; see runOf.
+    private static final byte[][] RUNS = new byte[STATE_COUNT][];
+    private static final byte[] SPACES = new byte[129];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++)
+            CLASSES[c] = LETTER;
+        for (char c = 'A'; c <= 'Z'; c++)
+            CLASSES[c] = LETTER;
+        for (char c = '1'; c <= '9'; c++)
+            CLASSES[c] = DIGIT;
+        for (char c : "bnrt".toCharArray())
+            CLASSES[c] = ESCAPE_LETTER;
+        for (char c : "\b\t ".toCharArray())
+            CLASSES[c] = WHITESPACE;
+        CLASSES['\n'] = NEWLINE;
+        CLASSES['\r'] = NEWLINE;
+        CLASSES['0'] = ZERO;
+        CLASSES['@'] = AT;
+        CLASSES['_'] = UNDERSCORE;
+        CLASSES['-'] = MINUS;
+        CLASSES['.'] = DOT;
+        CLASSES['\''] = SINGLE_QUOTE;
+        CLASSES['"'] = DOUBLE_QUOTE;
+        CLASSES['\\'] = BACKSLASH;
+        CLASSES['&'] = AMPERSAND;
+        CLASSES['|'] = PIPE;
+        CLASSES['!'] = BANG;
+        CLASSES['='] = EQUALS;
+
+        for (byte[] row : TRANSITIONS)
+            Arrays.fill(row, DEAD);
+
+        //Anything without a dedicated start state is a single character operator
+        Arrays.fill(TRANSITIONS[START], (byte) OPERATOR);
+        TRANSITIONS[START][END_OF_INPUT] = DEAD;
+        TRANSITIONS[START][ZERO] = ZERO_INTEGER;
+        TRANSITIONS[START][DIGIT] = INTEGER;
+        TRANSITIONS[START][MINUS] = NEGATIVE;
+        TRANSITIONS[START][LETTER] = IDENTIFIER;
+        TRANSITIONS[START][ESCAPE_LETTER] = IDENTIFIER;
+        TRANSITIONS[START][AT] = IDENTIFIER;
+        TRANSITIONS[START][SINGLE_QUOTE] = CHARACTER_OPEN;
+        TRANSITIONS[START][DOUBLE_QUOTE] = STRING_BODY;
+        TRANSITIONS[START][AMPERSAND] = AMPERSAND_OPERATOR;
+        TRANSITIONS[START][PIPE] = PIPE_OPERATOR;
+        TRANSITIONS[START][BANG] = BANG_OPERATOR;
+        TRANSITIONS[START][EQUALS] = EQUALS_OPERATOR;
+
+        for (int c : new int[] {LETTER, ESCAPE_LETTER, ZERO, DIGIT, UNDERSCORE, MINUS})
+            TRANSITIONS[IDENTIFIER][c] = IDENTIFIER;
+
+        //A minus is only part of a number if the number is well formed after it
+        TRANSITIONS[NEGATIVE][DOT] = ILLEGAL_DECIMAL;
+        TRANSITIONS[NEGATIVE][DIGIT] = INTEGER;
+        TRANSITIONS[NEGATIVE][ZERO] = NEGATIVE_ZERO;
+        TRANSITIONS[NEGATIVE_ZERO][DOT] = DECIMAL_DOT;
+
+        TRANSITIONS[ZERO_INTEGER][DOT] = DECIMAL_DOT;
+        TRANSITIONS[INTEGER][ZERO] = INTEGER;
+        TRANSITIONS[INTEGER][DIGIT] = INTEGER;
+        TRANSITIONS[INTEGER][DOT] = INTEGER_DOT;
+        TRANSITIONS[INTEGER_DOT][ZERO] = DECIMAL;
+        TRANSITIONS[INTEGER_DOT][DIGIT] = DECIMAL;
+        //After a leading zero the dot commits the token to being a decimal
+        Arrays.fill(TRANSITIONS[DECIMAL_DOT], ILLEGAL_DECIMAL_VALUE);
+        TRANSITIONS[DECIMAL_DOT][ZERO] = DECIMAL;
+        TRANSITIONS[DECIMAL_DOT][DIGIT] = DECIMAL;
+        TRANSITIONS[DECIMAL][ZERO] = DECIMAL;
+        TRANSITIONS[DECIMAL][DIGIT] = DECIMAL;
+
+        Arrays.fill(TRANSITIONS[CHARACTER_OPEN], (byte) CHARACTER_BODY);
+        TRANSITIONS[CHARACTER_OPEN][SINGLE_QUOTE] = ILLEGAL_CHARACTER;
+        TRANSITIONS[CHARACTER_OPEN][NEWLINE] = ILLEGAL_CHARACTER;
+        TRANSITIONS[CHARACTER_OPEN][END_OF_INPUT] = ILLEGAL_CHARACTER;
+        TRANSITIONS[CHARACTER_OPEN][BACKSLASH] = CHARACTER_ESCAPE;
+        escapes(CHARACTER_ESCAPE, CHARACTER_BODY);
+        Arrays.fill(TRANSITIONS[CHARACTER_BODY], ILLEGAL_CHARACTER_END);
+        TRANSITIONS[CHARACTER_BODY][SINGLE_QUOTE] = CHARACTER;
+
+        Arrays.fill(TRANSITIONS[STRING_BODY], (byte) STRING_BODY);
+        TRANSITIONS[STRING_BODY][NEWLINE] = ILLEGAL_STRING_NEWLINE;
+        TRANSITIONS[STRING_BODY][END_OF_INPUT] = ILLEGAL_STRING_END;
+        TRANSITIONS[STRING_BODY][BACKSLASH] = STRING_ESCAPE;
+        TRANSITIONS[STRING_BODY][DOUBLE_QUOTE] = STRING;
+        escapes(STRING_ESCAPE, STRING_BODY);
+
+        TRANSITIONS[AMPERSAND_OPERATOR][AMPERSAND] = DOUBLE_OPERATOR;
+        TRANSITIONS[PIPE_OPERATOR][PIPE] = DOUBLE_OPERATOR;
+        TRANSITIONS[BANG_OPERATOR][EQUALS] = DOUBLE_OPERATOR;
+        TRANSITIONS[EQUALS_OPERATOR][EQUALS] = DOUBLE_OPERATOR;
+
+        ACCEPT[IDENTIFIER] = Token.Type.IDENTIFIER;
+        ACCEPT[NEGATIVE] = Token.Type.OPERATOR;
+        ACCEPT[ZERO_INTEGER] = Token.Type.INTEGER;
+        ACCEPT[INTEGER] = Token.Type.INTEGER;
+        ACCEPT[DECIMAL] = Token.Type.DECIMAL;
+        ACCEPT[CHARACTER] = Token.Type.CHARACTER;
+        ACCEPT[STRING] = Token.Type.STRING;
+        ACCEPT[OPERATOR] = Token.Type.OPERATOR;
+        ACCEPT[AMPERSAND_OPERATOR] = Token.Type.OPERATOR;
+        ACCEPT[PIPE_OPERATOR] = Token.Type.OPERATOR;
+        ACCEPT[BANG_OPERATOR] = Token.Type.OPERATOR;
+        ACCEPT[EQUALS_OPERATOR] = Token.Type.OPERATOR;
+        ACCEPT[DOUBLE_OPERATOR] = Token.Type.OPERATOR;
+
+        for (int state = 0; state < STATE_COUNT; state++) {
+            byte[] run = new byte[129];
+            boolean loops = false;
+            for (char c = 0; c <= 128; c++) {
+                run[c] = (byte) (TRANSITIONS[state][classOf(c)] == state ? 1 : 0);
+                loops |= run[c] != 0;
+            }
+            RUNS[state] = loops ? run : null;
+        }
+        for (char c = 0; c <= 128; c++)
+            SPACES[c] = (byte) ((classOf(c) == WHITESPACE || classOf(c) == NEWLINE) && c != '\n' ? 1 : 0);
+    }
+
+    /**
+     * Fills the row for a state directly after a backslash, which only allows
+     * the escape characters {@code [bnrt'"\\]}.
+     */
+    private static void escapes(int state, int next) {
+        Arrays.fill(TRANSITIONS[state], ILLEGAL_ESCAPE);
+        TRANSITIONS[state][ESCAPE_LETTER] = (byte) next;
+        TRANSITIONS[state][SINGLE_QUOTE] = (byte) next;
+        TRANSITIONS[state][DOUBLE_QUOTE] = (byte) next;
+        TRANSITIONS[state][BACKSLASH] = (byte) next;
+    }
+
+    private static int classOf(char c) {
+        return c < 128 ? CLASSES[c] : OTHER;
+    }
+
+    /**
+     * The default size of the sliding window used by streaming lexers.
+     */
+    public static final int DEFAULT_WINDOW = 1 << 16;
+
+    /**
+     * The default number of characters each task of {@link
+     * #lexParallel(ForkJoinPool)} lexes before looking for a place to cut.
+     */
+    public static final int DEFAULT_CHUNK = 1 << 16;
+
+    /**
+     * The most characters the DFA reads past the end of a token it accepts,
+     * as for the {@code -} in {@code -0a}. An edit this far or further past
+     * the end of a token cannot change that token.
+     */
+    private static final int LOOKAHEAD = 2;
+
     private final CharStream chars;
+    private final Symbol.Table identifiers;
+    //Null for a streaming lexer not recording lines, so its memory stays
+    //bounded by the window
+    private LineMap lines = new LineMap();
 
     public Lexer(String input) {
         chars = new CharStream(input);
+        identifiers = new Symbol.Table();
+    }
+
+    /**
+     * Creates a lexer over the characters of the input between start and end,
+     * still producing indexes relative to the start of the whole input.
+     */
+    Lexer(CharSequence input, int start, int end) {
+        this(input, start, end, new Symbol.Table());
+    }
+
+    /**
+     * Creates a lexer over part of the input like {@link #Lexer(CharSequence,
+     * int, int)}, which interns identifiers through the given table.
+     */
+    Lexer(CharSequence input, int start, int end, Symbol.Table identifiers) {
+        chars = new CharStream(input, start, end);
+        this.identifiers = identifiers;
+    }
+
+    /**
+     * Creates a streaming lexer reading from the given reader through a sliding
+     * window of {@link #DEFAULT_WINDOW} characters. Use {@link #tokens()} or
+     * {@link #spliterator()} to pull tokens without holding the whole input.
+     * Lines are not recorded, so {@link #getLineMap()} returns null.
+     */
+    public Lexer(Reader reader) {
+        this(reader, DEFAULT_WINDOW);
+    }
+
+    public Lexer(Reader reader, int window) {
+        this(reader, window, false);
+    }
+
+    /**
+     * Creates a streaming lexer which records the start of every line if lines
+     * is true, for the line and column of errors. The line map grows with the
+     * number of lines read, so memory is then no longer bounded by the window.
+     */
+    public Lexer(Reader reader, int window, boolean lines) {
+        chars = new CharStream(reader, window);
+        identifiers = new Symbol.Table();
+        this.lines = lines ? new LineMap() : null;
+    }
+
+    /**
+     * Creates a streaming lexer decoding the channel as UTF-8, which does not
+     * record lines.
+     */
+    public Lexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    /**
+     * Creates a lexer over the memory mapped UTF-8 file. ASCII regions are
+     * lexed directly from the mapped bytes, so a pure ASCII file is never
+     * decoded or copied as a whole; see {@link MappedSource}.
+     */
+    public Lexer(Path path) throws IOException {
+        chars = new CharStream(MappedSource.map(path));
+        identifiers = new Symbol.Table();
     }
 
     /**
@@ -28,142 +345,331 @@ public final class Lexer {
      */
     public List<Token> lex() {
         List<Token> tokens = new ArrayList<>();
-        while(chars.has(0)){
-                //If whiteSpace, advance and restart count for length
-               if(peek("[\b\n\r\t ]"))
-                   {chars.advance();chars.skip();}
-               //If escape character, make sure it is a valid escape character
-               else if(peek("\\\\", "[bnrt]"))
-                    {chars.advance();chars.advance();chars.skip();}
-               //Else, create a new token
-                else
-                    tokens.add(lexToken());
+        while(skipWhitespace())
+            tokens.add(lexToken());
+        return tokens;
+    }
+
+    /**
+     * Lexes the input like {@link #lex()}, splitting it into chunks which are
+     * lexed concurrently on the given pool using {@link #DEFAULT_CHUNK}.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool) {
+        return lexParallel(pool, DEFAULT_CHUNK);
+    }
+
+    /**
+     * Lexes the input like {@link #lex()}, splitting it into chunks of at least
+     * the given number of characters which are lexed concurrently.
+     *
+     * Chunks are cut directly after a newline. A newline can never be part of
+     * a token (strings and characters reject them), and no lookahead in the DFA
+     * matches across one, so lexing stops at a cut exactly where the sequential
+     * lexer would be skipping whitespace. The result is therefore the same
+     * token list, and if any chunk fails, the exception of the first failing
+     * chunk is the one the sequential lexer would have thrown. The chunks
+     * share the names they intern, so every occurrence of an identifier is
+     * still the same String instance.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool, int chunk) {
+        if(chars.input == null)
+            throw new UnsupportedOperationException("Parallel lexing requires a string or file input.");
+        CharSequence input = chars.input;
+        List<Lexer> lexers = new ArrayList<>();
+        List<ForkJoinTask<List<Token>>> tasks = new ArrayList<>();
+        ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+        int start = chars.index;
+        while(start < chars.limit) {
+            int cut = start + chunk < chars.limit ? indexOf(input, '\n', start + chunk) : -1;
+            int end = cut < 0 || cut >= chars.limit ? chars.limit : cut + 1;
+            Lexer lexer = new Lexer(input, start, end, new Symbol.Table(names));
+            lexers.add(lexer);
+            tasks.add(pool.submit(lexer::lex));
+            start = end;
+        }
+        chars.index = chars.limit;
+        chars.skip();
+        List<Token> tokens = new ArrayList<>();
+        for(int i = 0; i < tasks.size(); i++) {
+            try {
+                tokens.addAll(tasks.get(i).join());
+            } catch(RuntimeException e) {
+                for(ForkJoinTask<List<Token>> task : tasks)
+                    task.cancel(false);
+                if(!(e instanceof ParseException))
+                    throw e;
+                //The chunk only knows its own lines
+                lines.addAll(lexers.get(i).lines);
+                throw new ParseException(e.getMessage(), ((ParseException) e).getIndex(), lines);
+            }
+            lines.addAll(lexers.get(i).lines);
         }
         return tokens;
     }
 
     /**
-     * This method determines the type of the next token, delegating to the
-     * appropriate lex method. As such, it is best for this method to not change
-     * the state of the char stream (thus, use peek not match).
+     * Returns the lines of the input lexed so far, or null for a streaming
+     * lexer which does not record them. After {@link #relex} without the
+     * previous line map, which only sees the damaged region, the map is rebuilt
+     * from the whole input.
+     */
+    public LineMap getLineMap() {
+        if(lines == null && chars.input != null)
+            lines = LineMap.of(chars.input);
+        return lines;
+    }
+
+    private static int indexOf(CharSequence input, char c, int from) {
+        if(input instanceof String)
+            return ((String) input).indexOf(c, from);
+        for(int i = from; i < input.length(); i++) {
+            if(input.charAt(i) == c)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Lexes the input after an edit like {@link #relex(List, LineMap, int, int,
+     * String)}, without the line map of the input before it, so the line map
+     * of this lexer is rebuilt from the whole input when it is requested.
+     */
+    public List<Token> relex(List<Token> previous, int offset, int removed, String inserted) {
+        return relex(previous, null, offset, removed, inserted);
+    }
+
+    /**
+     * Lexes the input after an edit, given the tokens and line map of the input
+     * before it. The input of this lexer is the edited source, in which the
+     * removed characters at the offset were replaced by the inserted text.
+     *
+     * Tokens ending well before the edit are kept, and lexing restarts after
+     * the last of them. Once a new token starts where an old token after the
+     * edit started, shifted by the change in length, the rest of the input is
+     * unchanged and is lexed from the same state, so the remaining old tokens
+     * are reused instead of being lexed again. The result is the same as
+     * lexing the whole edited input.
+     *
+     * The tokens returned are a {@link TokenPieces} sharing the kept and reused
+     * tokens with the previous list, which must not be modified afterwards, and
+     * the line map of this lexer is the previous one with the lines of the
+     * damaged region spliced in. Neither is copied or shifted as a whole, so
+     * the work is proportional to the damaged region (and the number of edits
+     * the previous tokens went through) rather than to the input.
+     */
+    public List<Token> relex(List<Token> previous, LineMap previousLines, int offset, int removed, String inserted) {
+        if(chars.input == null)
+            throw new UnsupportedOperationException("Relexing requires a string or file input.");
+        if(offset < 0 || removed < 0 || offset + inserted.length() > chars.limit
+                || !inserted.contentEquals(chars.input.subSequence(offset, offset + inserted.length())))
+            throw new IllegalArgumentException("The input does not contain the inserted text at the offset.");
+        int delta = inserted.length() - removed;
+        int kept = 0;
+        for(int low = 0, high = previous.size(); low < high; ) {
+            int middle = (low + high) >>> 1;
+            Token token = previous.get(middle);
+            if(token.getIndex() + token.getLiteral().length() + LOOKAHEAD <= offset)
+                low = kept = middle + 1;
+            else
+                high = middle;
+        }
+        int old = kept;
+        while(old < previous.size() && previous.get(old).getIndex() < offset + removed)
+            old++;
+        List<Token> tokens = new ArrayList<>();
+        int restart = kept == 0 ? 0 : previous.get(kept - 1).getIndex() + previous.get(kept - 1).getLiteral().length();
+        int resume = -1;
+        chars.index = restart;
+        chars.skip();
+        lines = new LineMap();
+        try {
+            while(skipWhitespace()) {
+                int position = chars.index;
+                while(old < previous.size() && previous.get(old).getIndex() + delta < position)
+                    old++;
+                if(position >= offset + inserted.length() && old < previous.size() && previous.get(old).getIndex() + delta == position) {
+                    resume = position;
+                    chars.index = chars.limit;
+                    break;
+                }
+                tokens.add(lexToken());
+            }
+        } catch(ParseException e) {
+            //The lines after the error were not seen
+            lines = previousLines == null ? LineMap.of(chars.input) : LineMap.splice(previousLines, restart, lines, Integer.MAX_VALUE, 0);
+            throw new ParseException(e.getMessage(), e.getIndex(), lines);
+        }
+        //Lines starting at the resumed token were recorded while skipping the
+        //whitespace before it, so only the old lines after it are reused
+        if(previousLines == null)
+            lines = null;
+        else
+            lines = LineMap.splice(previousLines, restart, lines, resume < 0 ? Integer.MAX_VALUE : resume - delta, delta);
+        TokenPieces pieces = new TokenPieces().add(previous, 0, kept, 0).add(tokens, 0, tokens.size(), 0);
+        return resume < 0 ? pieces : pieces.add(previous, old, previous.size(), delta);
+    }
+
+    /**
+     * Lexes the input like {@link #lex()}, but records the tokens in a {@link
+     * TokenBuffer} over the source instead of creating a {@link Token} and a
+     * literal copy per token. This requires a string input, since the buffer
+     * refers back into it.
+     */
+    public TokenBuffer lexBuffer() {
+        if(!(chars.input instanceof String))
+            throw new UnsupportedOperationException("A token buffer requires a string input.");
+        TokenBuffer buffer = new TokenBuffer((String) chars.input, chars.input.length() / 4);
+        while(skipWhitespace()) {
+            int start = chars.index;
+            Token.Type type = scan(START);
+            buffer.add(type, start, chars.length);
+            chars.skip();
+        }
+        buffer.setLineMap(lines);
+        return buffer;
+    }
+
+    /**
+     * Returns an iterator lexing one token per call to {@link Iterator#next()},
+     * so consumers can start before the input has been read. Token indexes and
+     * {@link ParseException} indexes are offsets from the start of the input.
+     */
+    public Iterator<Token> tokens() {
+        return new Iterator<Token>() {
+
+            @Override
+            public boolean hasNext() {
+                return skipWhitespace();
+            }
+
+            @Override
+            public Token next() {
+                if(!skipWhitespace())
+                    throw new NoSuchElementException();
+                return lexToken();
+            }
+
+        };
+    }
+
+    /**
+     * Returns the tokens of {@link #tokens()} as an ordered spliterator, for
+     * use with {@link java.util.stream.StreamSupport}.
+     */
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(tokens(), Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    /**
+     * Skips whitespace, returning true if a token starts at the new position.
+     */
+    private boolean skipWhitespace() {
+        while(chars.has(0)){
+            int c = classOf(chars.get(0));
+            //If whiteSpace, advance and restart count for length
+            if(c == WHITESPACE || c == NEWLINE) {
+                //Newlines are left out of SPACES so each line start is recorded
+                if(chars.get(0) == '\n') {
+                    chars.advance();
+                    if(lines != null)
+                        lines.add(chars.index);
+                }
+                chars.advanceRun(SPACES);
+                chars.skip();
+            }
+            //If escape character, make sure it is a valid escape character
+            else if(c == BACKSLASH && chars.has(1) && classOf(chars.get(1)) == ESCAPE_LETTER)
+                {chars.advance();chars.advance();chars.skip();}
+            //Else, a new token starts here
+            else
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * This method determines the type of the next token by running the DFA
+     * from its start state. As such, it does not need to delegate to the
+     * individual lex methods, which remain as entry points into the same DFA.
      *
      * The next character should start a valid token since whitespace is handled
      * by {@link #lex()}
      */
     public Token lexToken() {
-        if(peek("[0-9-]"))
-            return lexNumber();
-        else if(peek("'"))
-            return lexCharacter();
-       else if(peek("[a-zA-Z@]"))
-            return lexIdentifier();
-        else if(peek("\""))
-            return lexString();
-        else
-            return lexOperator();
+        return chars.emit(identifiers, scan(START));
     }
 
     public Token lexIdentifier() {
         //Because initial character can be @, skip the first character
         chars.advance();
-        while(chars.has(0))
-        {
-            if(peek("[A-Za-z0-9_-]"))
-                chars.advance();
-            else break;
-        }
-        return chars.emit(Token.Type.IDENTIFIER);
+        return chars.emit(identifiers, scan(IDENTIFIER));
     }
 
     public Token lexNumber() {
-        //catch bases illegal cases
-        if(peek("\\.") || peek("-", "\\."))
-            throw new ParseException("Illegal decimal", chars.index);
-        if (peek("-")) {
-            if(peek(".","0", "\\.") || peek(".","[1-9]")){chars.advance();}
-            else return lexOperator();
-            //else throw new ParseException("Cannot have negative zero", chars.index);
-        }
-        //Check cases where leading number is 0, either decimal or int token
-        if(peek("0"))
-        {
-            chars.advance();
-            if(peek("\\."))
-                return isDecimal();
-            else
-                return chars.emit(Token.Type.INTEGER);
-        }
-        //if token is legal
-        while(chars.has(0))
-        {
-            if(peek("[0-9]"))
-                chars.advance();
-            else if(peek("\\.", "[0-9]"))
-                return isDecimal();
-            else break;
-        }
-        return chars.emit(Token.Type.INTEGER);
+        return chars.emit(identifiers, scan(START));
     }
+
     public Token isDecimal()
     {
         chars.advance();
-        if(peek("[0-9]"))
-            while (peek("[0-9]"))
-                chars.advance();
-        else throw new ParseException("Illegal decimal value", chars.index);
-        return chars.emit(Token.Type.DECIMAL);
+        return chars.emit(identifiers, scan(DECIMAL_DOT));
     }
 
     public Token lexCharacter() {
-        //Move the char counter past the '
-        chars.advance();
-        //check for special character
-        if(peek("\\\\"))
-            lexEscape();
-        //if not special character, make sure it is allowed character but not the end /'
-        else {
-            if (peek("[^'\n\r\\\\]"))
-                chars.advance();
-            //If character is empty or contains lone \ token
-            else throw new ParseException("Illegal character in character Token", chars.index);
-        }
-         //check that the end of the char ends with /'
-        if(peek("'"))
-            chars.advance();
-        else throw new ParseException("Illegal end to character token", chars.index);
-        return chars.emit(Token.Type.CHARACTER);
+        return chars.emit(identifiers, scan(START));
     }
 
     public Token lexString() {
-        //Move the char counter past the '
-        chars.advance();
-        //check for special character "H"e"l"l"o"
-        while(chars.has(0) && !peek("\"")) {
-            if (peek("\\\\"))
-                lexEscape();
-            else if(peek("[\n\r]"))
-                throw new ParseException("Illegal newline in string", chars.index);
-            else chars.advance();
-        }
-        if(peek("\""))
-            chars.advance();
-        else throw new ParseException("Illegal End of String", chars.index);
-       //throw new ParseException("Illegal End of String", chars.index);
-            return chars.emit(Token.Type.STRING);
+        return chars.emit(identifiers, scan(START));
     }
 
     public void lexEscape() {
         chars.advance();
-        if(peek("[bnrt'\"\\\\]"))
+        if(chars.has(0) && TRANSITIONS[STRING_ESCAPE][classOf(chars.get(0))] >= 0)
             chars.advance();
-        else throw new ParseException("Illegal escape Character", chars.index);
+        else throw new ParseException("Illegal escape Character", chars.index, lines);
     }
 
     public Token lexOperator() {
-        if(peek("&", "&") || peek("\\|", "\\|") || peek("!", "=") || peek("=","="))
-            match(".",".");
-        else chars.advance();
-        return chars.emit(Token.Type.OPERATOR);
+        int state = chars.has(0) ? TRANSITIONS[START][classOf(chars.get(0))] : DEAD;
+        if(state < 0 || ACCEPT[state] != Token.Type.OPERATOR)
+            state = OPERATOR;
+        chars.advance();
+        return chars.emit(identifiers, scan(state));
+    }
+
+    /**
+     * Runs the DFA from the given state, which must describe the characters
+     * already consumed for the current token, and returns the type of the
+     * longest token it accepted. Characters read past that token are given
+     * back to the char stream.
+     */
+    private Token.Type scan(int state) {
+        Token.Type accepted = ACCEPT[state];
+        int acceptedLength = chars.length;
+        while(true) {
+            int next = TRANSITIONS[state][chars.has(0) ? classOf(chars.get(0)) : END_OF_INPUT];
+            if(next >= 0) {
+                chars.advance();
+                state = next;
+                if(RUNS[state] != null)
+                    chars.advanceRun(RUNS[state]);
+                if(ACCEPT[state] != null) {
+                    accepted = ACCEPT[state];
+                    acceptedLength = chars.length;
+                }
+            }
+            else if(next == ILLEGAL_DECIMAL)
+                throw new ParseException(ERRORS[-next], chars.index - chars.length, lines);
+            else if(next != DEAD)
+                throw new ParseException(ERRORS[-next], chars.index, lines);
+            else if(accepted == null)
+                throw new ParseException("Unexpected end of input", chars.index, lines);
+            else {
+                chars.retreat(chars.length - acceptedLength);
+                return accepted;
+            }
+        }
     }
 
     /**
@@ -200,32 +706,138 @@ public final class Lexer {
      * A helper class maintaining the input string, current index of the char
      * stream, and the current length of the token being matched.
      *
+     * The input is either a string or a reader. A reader is consumed through a
+     * sliding window which only keeps the characters of the current token and
+     * its lookahead, so memory is bounded by the window size (or the longest
+     * token) instead of the input size. Indexes are always absolute offsets
+     * from the start of the input.
+     *
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
      */
     public static final class CharStream {
 
-        private final String input;
+        private final CharSequence input;
+        private final Reader reader;
+        private char[] window;
+        private int windowStart = 0;
+        private int limit;
+        private boolean exhausted = false;
         private int index = 0;
         private int length = 0;
 
-        public CharStream(String input) {
+        public CharStream(CharSequence input) {
+            this(input, 0, input.length());
+        }
+
+        /**
+         * Creates a char stream over the input between start and end, with
+         * indexes still relative to the start of the input.
+         */
+        public CharStream(CharSequence input, int start, int end) {
             this.input = input;
+            this.reader = null;
+            this.index = start;
+            this.limit = end;
+        }
+
+        public CharStream(Reader reader, int window) {
+            if (window < 2) {
+                throw new IllegalArgumentException("The window must hold at least two characters.");
+            }
+            this.input = null;
+            this.reader = reader;
+            this.window = new char[window];
+            this.limit = 0;
+        }
+
+        public int getIndex() {
+            return index;
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < limit || fill(index + offset);
         }
 
         public char get(int offset) {
-            return input.charAt(index + offset);
+            return input != null ? input.charAt(index + offset) : window[index + offset - windowStart];
         }
 
         public void advance() {
             index++;
             length++;
         }
+
+        /**
+         * Advances over the longest run of characters marked in the table, as
+         * built for {@link #RUNS}, among the characters already read. Most runs
+         * are short, so the first eight characters are checked one at a time;
+         * longer runs continue in {@link #advanceLongRun(byte[])}. Streaming
+         * lexers continue through {@link #has(int)} once the run reaches the
+         * end of the window.
+         */
+        public void advanceRun(byte[] run) {
+            int i = index;
+            int end = Math.min(limit, i + 8);
+            if (input != null) {
+                while (i < end && run[slot(input.charAt(i))] != 0)
+                    i++;
+            } else {
+                while (i < end && run[slot(window[i - windowStart])] != 0)
+                    i++;
+            }
+            length += i - index;
+            index = i;
+            if (i == end && i < limit)
+                advanceLongRun(run);
+        }
+
+        /**
+         * Continues a run a stride of eight characters at a time, combining the
+         * eight table entries before branching, and finishes it one character
+         * at a time.
+         */
+        private void advanceLongRun(byte[] run) {
+            int i = index;
+            int end = limit;
+            if (input != null) {
+                CharSequence input = this.input;
+                while (i + 8 <= end && (run[slot(input.charAt(i))] & run[slot(input.charAt(i + 1))]
+                        & run[slot(input.charAt(i + 2))] & run[slot(input.charAt(i + 3))]
+                        & run[slot(input.charAt(i + 4))] & run[slot(input.charAt(i + 5))]
+                        & run[slot(input.charAt(i + 6))] & run[slot(input.charAt(i + 7))]) != 0)
+                    i += 8;
+                while (i < end && run[slot(input.charAt(i))] != 0)
+                    i++;
+            } else {
+                char[] window = this.window;
+                int offset = -windowStart;
+                while (i + 8 <= end && (run[slot(window[i + offset])] & run[slot(window[i + offset + 1])]
+                        & run[slot(window[i + offset + 2])] & run[slot(window[i + offset + 3])]
+                        & run[slot(window[i + offset + 4])] & run[slot(window[i + offset + 5])]
+                        & run[slot(window[i + offset + 6])] & run[slot(window[i + offset + 7])]) != 0)
+                    i += 8;
+                while (i < end && run[slot(window[i + offset])] != 0)
+                    i++;
+            }
+            length += i - index;
+            index = i;
+        }
+
+        private static int slot(char c) {
+            return Math.min(c, 128);
+        }
+
+        /**
+         * Moves back over characters of the current token that were read as
+         * lookahead but turned out not to belong to it.
+         */
+        public void retreat(int count) {
+            index -= count;
+            length -= count;
+        }
+
         public void skip() {
             length = 0;
         }
@@ -233,7 +845,65 @@ public final class Lexer {
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            String literal = input != null ? input.subSequence(start, index).toString() : new String(window, start - windowStart, index - start);
+            return new Token(type, literal, start, Symbol.NONE, Token.decode(type, literal, 0, literal.length()));
+        }
+
+        /**
+         * Emits the current token like {@link #emit(Token.Type)}, resolving the
+         * {@link Symbol} of identifiers and operators directly from the input.
+         * Keywords and operators reuse the canonical symbol text, and other
+         * identifiers are interned through the given table.
+         */
+        public Token emit(Symbol.Table identifiers, Token.Type type) {
+            if (type != Token.Type.IDENTIFIER && type != Token.Type.OPERATOR) {
+                return emit(type);
+            }
+            int start = index - length;
+            CharSequence text = input != null ? input : CharBuffer.wrap(window, 0, limit - windowStart);
+            int offset = input != null ? start : start - windowStart;
+            int symbol = Symbol.lookup(text, offset, length);
+            String literal;
+            if (symbol != Symbol.NONE)
+                literal = Symbol.text(symbol);
+            else if (type == Token.Type.IDENTIFIER)
+                literal = identifiers.intern(text, offset, length);
+            else
+                literal = text.subSequence(offset, offset + length).toString();
+            skip();
+            return new Token(type, literal, start, symbol, null);
+        }
+
+        /**
+         * Reads from the reader until the character at the given absolute
+         * position is in the window, returning false at the end of the input.
+         * Characters before the current token are discarded to make room, and
+         * the window only grows when a single token fills all of it.
+         */
+        private boolean fill(int position) {
+            if (reader == null || exhausted) {
+                return false;
+            }
+            try {
+                while (position >= limit) {
+                    if (limit - windowStart == window.length) {
+                        int start = index - length;
+                        char[] target = start == windowStart ? new char[window.length * 2] : window;
+                        System.arraycopy(window, start - windowStart, target, 0, limit - start);
+                        window = target;
+                        windowStart = start;
+                    }
+                    int read = reader.read(window, limit - windowStart, window.length - (limit - windowStart));
+                    if (read < 0) {
+                        exhausted = true;
+                        return false;
+                    }
+                    limit += read;
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
     }
 }
@@ -0,0 +1,204 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Maps char indexes of a source to lines and columns, both starting at 1.
+ *
+ * The map holds the index at which each line starts in a sorted int array, so
+ * a lookup is a binary search. The {@link Lexer} records line starts while it
+ * skips whitespace, since a newline can never be part of a token, and attaches
+ * the map to the {@link ParseException}s it throws. Lines are terminated by
+ * {@code \n}, so a {@code \r\n} pair ends a single line.
+ *
+ * A map {@link #splice spliced} after an edit instead reads its line starts
+ * from slices of the arrays of other maps, each shifted by the change in
+ * length before it, so the lines before and after the edit are shared rather
+ * than copied. A lookup then first finds the slice by binary search.
+ */
+public final class LineMap {
+
+    private int[] starts = new int[16];
+    private int count = 1;
+    //For a spliced map, the array, first index and shift of each slice, and
+    //the number of lines up to the end of it; null for a map of one array
+    private int[][] arrays = null;
+    private int[] froms;
+    private int[] deltas;
+    private int[] ends;
+    private int pieces = 0;
+
+    /**
+     * Returns the line map of the whole source.
+     */
+    public static LineMap of(CharSequence source) {
+        LineMap lines = new LineMap();
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                lines.add(i + 1);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the map of a source after an edit, given the map before it: the
+     * previous lines starting at or before {@code before}, the lines of the
+     * damaged region recorded in {@code damaged} other than its implicit first
+     * line, then the previous lines starting after {@code after} shifted by
+     * {@code delta}. Both {@code before} and {@code after} are indexes into the
+     * source before the edit.
+     */
+    static LineMap splice(LineMap previous, int before, LineMap damaged, int after, int delta) {
+        LineMap lines = new LineMap();
+        lines.arrays = new int[4][];
+        lines.froms = new int[4];
+        lines.deltas = new int[4];
+        lines.ends = new int[4];
+        lines.count = 0;
+        lines.slice(previous, 0, previous.getLine(before), 0);
+        lines.slice(damaged, 1, damaged.count, 0);
+        lines.slice(previous, after == Integer.MAX_VALUE ? previous.count : previous.getLine(after), previous.count, delta);
+        return lines;
+    }
+
+    /**
+     * Records a line starting at the given index, which must be after the
+     * start of every line recorded so far.
+     */
+    void add(int start) {
+        if (arrays != null) {
+            throw new IllegalStateException("A spliced line map cannot be extended");
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = start;
+    }
+
+    /**
+     * Records the lines of another map of a later part of the same source,
+     * other than its implicit first line.
+     */
+    void addAll(LineMap lines) {
+        for (int i = 1; i < lines.count; i++) {
+            add(lines.start(i));
+        }
+    }
+
+    public int getLineCount() {
+        return count;
+    }
+
+    /**
+     * Returns the index at which the given line starts.
+     */
+    public int getLineStart(int line) {
+        if (line < 1 || line > count) {
+            throw new IndexOutOfBoundsException("Line " + line + " out of bounds for " + count + " lines");
+        }
+        return start(line - 1);
+    }
+
+    /**
+     * Returns the line containing the given index.
+     */
+    public int getLine(int index) {
+        if (arrays == null) {
+            int line = Arrays.binarySearch(starts, 0, count, index);
+            return line >= 0 ? line + 1 : -line - 1;
+        }
+        //The last slice starting at or before the index, which the first
+        //always does since it holds the first line
+        int low = 0;
+        int high = pieces - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (arrays[middle][froms[middle]] + deltas[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int first = low == 0 ? 0 : ends[low - 1];
+        int end = froms[low] + ends[low] - first;
+        int line = Arrays.binarySearch(arrays[low], froms[low], end, index - deltas[low]);
+        return first + (line >= 0 ? line + 1 : -line - 1) - froms[low];
+    }
+
+    public int getColumn(int index) {
+        return index - start(getLine(index) - 1) + 1;
+    }
+
+    /**
+     * Formats the index as {@code line:column}.
+     */
+    public String format(int index) {
+        int line = getLine(index);
+        return line + ":" + (index - start(line - 1) + 1);
+    }
+
+    /**
+     * Returns the start of the line at the given index, counting from 0.
+     */
+    private int start(int i) {
+        if (arrays == null) {
+            return starts[i];
+        }
+        int low = 0;
+        int high = pieces - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] <= i) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int first = low == 0 ? 0 : ends[low - 1];
+        return arrays[low][froms[low] + i - first] + deltas[low];
+    }
+
+    /**
+     * Appends the lines of the map from one line index up to another, shifted
+     * by the delta, taking them from the slices of a spliced map so that
+     * slices never nest.
+     */
+    private void slice(LineMap lines, int from, int to, int delta) {
+        if (lines.arrays == null) {
+            append(lines.starts, from, to, delta);
+            return;
+        }
+        for (int piece = 0, first = 0; piece < lines.pieces && first < to; first = lines.ends[piece++]) {
+            int low = Math.max(from, first);
+            int high = Math.min(to, lines.ends[piece]);
+            append(lines.arrays[piece], lines.froms[piece] + low - first, lines.froms[piece] + high - first, lines.deltas[piece] + delta);
+        }
+    }
+
+    private void append(int[] array, int from, int to, int delta) {
+        if (from >= to) {
+            return;
+        }
+        //Extend the last slice where the two are adjacent in the same array
+        int last = pieces - 1;
+        if (last >= 0 && arrays[last] == array && deltas[last] == delta
+                && froms[last] + ends[last] - (last == 0 ? 0 : ends[last - 1]) == from) {
+            ends[last] += to - from;
+        } else {
+            if (pieces == arrays.length) {
+                arrays = Arrays.copyOf(arrays, pieces * 2);
+                froms = Arrays.copyOf(froms, pieces * 2);
+                deltas = Arrays.copyOf(deltas, pieces * 2);
+                ends = Arrays.copyOf(ends, pieces * 2);
+            }
+            arrays[pieces] = array;
+            froms[pieces] = from;
+            deltas[pieces] = delta;
+            ends[pieces] = count + to - from;
+            pieces++;
+        }
+        count += to - from;
+    }
+
+}
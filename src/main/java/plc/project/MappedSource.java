@@ -0,0 +1,164 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The characters of a UTF-8 file, read directly from its memory mapped bytes.
+ *
+ * The characters are split into pages of {@link #PAGE} characters. A page whose
+ * bytes are all ASCII is read straight from the mapping, one byte per
+ * character, and only pages containing multi-byte characters are decoded into
+ * a char array up front. Character lookup is therefore a shift, a mask and a
+ * single array or buffer read, without any state, so the source may be lexed
+ * by several threads at once.
+ */
+final class MappedSource implements CharSequence {
+
+    private static final int SHIFT = 12;
+    static final int PAGE = 1 << SHIFT;
+    private static final int MASK = PAGE - 1;
+
+    private final ByteBuffer bytes;
+    private final int[] offsets;
+    private final char[][] pages;
+    private final int length;
+    private final boolean ascii;
+
+    /**
+     * Maps the file read only. The mapping stays valid after the channel is
+     * closed, until the source is garbage collected.
+     */
+    static MappedSource map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The file is too large to map: " + path);
+            }
+            return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    MappedSource(ByteBuffer bytes) {
+        this.bytes = bytes;
+        int size = bytes.limit();
+        offsets = new int[(size >>> SHIFT) + 2];
+        pages = new char[offsets.length][];
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        int position = 0;
+        int page = 0;
+        int length = 0;
+        int carry = -1;
+        boolean ascii = true;
+        while (position < size || carry >= 0) {
+            if (carry < 0 && isAscii(bytes, position, Math.min(position + PAGE, size))) {
+                int count = Math.min(PAGE, size - position);
+                offsets[page] = position;
+                position += count;
+                length += count;
+            } else {
+                char[] chars = new char[PAGE];
+                CharBuffer out = CharBuffer.wrap(chars);
+                if (carry >= 0) {
+                    out.put((char) carry);
+                    carry = -1;
+                }
+                ByteBuffer in = bytes.duplicate();
+                in.limit(size);
+                in.position(position);
+                decoder.decode(in, out, true);
+                if (out.hasRemaining() && in.hasRemaining()) {
+                    // A surrogate pair straddles the end of the page.
+                    CharBuffer pair = CharBuffer.allocate(2);
+                    decoder.decode(in, pair, true);
+                    out.put(pair.get(0));
+                    carry = pair.get(1);
+                }
+                pages[page] = chars;
+                ascii = false;
+                position = in.position();
+                length += out.position();
+            }
+            page++;
+        }
+        this.length = length;
+        this.ascii = ascii;
+    }
+
+    /**
+     * Returns true if every page is read directly from the mapped bytes, in
+     * which case character indexes are byte offsets.
+     */
+    boolean isAscii() {
+        return ascii;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (ascii) {
+            return (char) bytes.get(index);
+        }
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        char[] page = pages[index >>> SHIFT];
+        return page == null ? (char) bytes.get(offsets[index >>> SHIFT] + (index & MASK)) : page[index & MASK];
+    }
+
+    /**
+     * Returns the characters between start and end as a String.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + length);
+        }
+        if (ascii) {
+            byte[] ascii = new byte[end - start];
+            bytes.get(start, ascii);
+            return new String(ascii, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    /**
+     * Checks eight bytes at a time for a set high bit.
+     */
+    private static boolean isAscii(ByteBuffer bytes, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            if ((bytes.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,536 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Folds the constant expressions of an analyzed AST and propagates the values
+ * of {@code VAL} globals initialized with literals, returning the optimized
+ * AST for the {@link Interpreter} or {@link Generator}.
+ *
+ * A binary expression whose operands are both literals is replaced by the
+ * literal the interpreter would evaluate it to, and a group by what it groups
+ * once that is no longer a binary expression. An {@code &&} or {@code ||} is
+ * also replaced by one of its operands when the other is a literal that makes
+ * it redundant, keeping any operand the interpreter would have evaluated. An
+ * expression is left as is if evaluating it would throw, as dividing by zero
+ * does, or if its value is not a literal the analyzer accepts, such as an
+ * integer out of range, so errors are still those of the unoptimized AST.
+ *
+ * The interpreter and the Java code of the generator evaluate some constant
+ * expressions differently: the generator emits decimals as doubles and
+ * {@code ^} as {@link Math#pow}, so {@code 0.25 * 0.5} is {@code 0.1} to the
+ * interpreter but {@code 0.125} in Java, {@code 1.0 == 1.00} is false to the
+ * interpreter but true in Java, and {@code 2 ^ 10} is {@code 1024} to the
+ * interpreter but {@code 1024.0} in Java. An optimizer is therefore created
+ * for the {@link Backend} the AST is for. An AST optimized for the {@link
+ * Backend#GENERATOR generator} only has the expressions folded which both
+ * evaluate to the same value, so its Java code behaves as that of the
+ * unoptimized AST; it is still interpreted as the unoptimized AST is too. An
+ * AST optimized for the {@link Backend#INTERPRETER interpreter} must not be
+ * generated.
+ *
+ * The AST is left unmodified: the nodes which change are copied, along with
+ * any nodes containing them, and every other node is shared with the optimized
+ * AST. The copies are annotated in place, or in the {@link AnalysisResult} of
+ * the analysis if there is one, so the optimized AST can be generated without
+ * being analyzed again.
+ */
+public final class Optimizer implements Ast.Visitor<Ast> {
+
+    private final AnalysisResult result;
+    //The literals of the VAL globals visited so far, by name
+    private final Map<String, Ast.Expression.Literal> constants = new HashMap<>();
+    private final Backend backend;
+
+    /**
+     * The backend an optimized AST is for, whose semantics folding keeps.
+     */
+    public enum Backend {
+        INTERPRETER,
+        GENERATOR
+    }
+
+    /**
+     * Creates an optimizer for the given backend, for an AST annotated in
+     * place.
+     */
+    public Optimizer(Backend backend) {
+        this(null, backend);
+    }
+
+    /**
+     * Creates an optimizer for the given backend, for an AST analyzed into the
+     * given result, which the nodes it creates are annotated in.
+     */
+    public Optimizer(AnalysisResult result, Backend backend) {
+        this.result = result;
+        this.backend = backend;
+    }
+
+    @Override
+    public Ast visit(Ast.Source ast) {
+        constants.clear();
+        List<Ast.Global> globals = visitAll(ast.getGlobals());
+        List<Ast.Function> functions = visitAll(ast.getFunctions());
+        if(globals == ast.getGlobals() && functions == ast.getFunctions())
+            return ast;
+        return new Ast.Source(globals, functions);
+    }
+
+    @Override
+    public Ast visit(Ast.Global ast) {
+        Optional<Ast.Expression> value = visitOptional(ast.getValue());
+        Ast.Global global = ast;
+        if(value != ast.getValue()) {
+            global = new Ast.Global(ast.getName(), ast.getTypeName(), ast.getMutable(), value);
+            setVariable(global, getVariable(ast));
+        }
+        //A global of type Any keeps its type wherever it is accessed
+        if(!ast.getMutable() && value.isPresent() && value.get() instanceof Ast.Expression.Literal &&
+                getType(value.get()).equals(getVariable(ast).getType()))
+            constants.put(ast.getName(), (Ast.Expression.Literal) value.get());
+        return global;
+    }
+
+    @Override
+    public Ast visit(Ast.Function ast) {
+        List<Ast.Statement> statements = visitAll(ast.getStatements());
+        if(statements == ast.getStatements())
+            return ast;
+        Ast.Function function = new Ast.Function(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(), statements);
+        setFunction(function, getFunction(ast));
+        return function;
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Expression ast) {
+        Ast.Expression expression = visit(ast.getExpression());
+        return expression == ast.getExpression() ? ast : new Ast.Statement.Expression(expression);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Declaration ast) {
+        Optional<Ast.Expression> value = visitOptional(ast.getValue());
+        if(value == ast.getValue())
+            return ast;
+        Ast.Statement.Declaration declaration = new Ast.Statement.Declaration(ast.getName(), ast.getTypeName(), value);
+        setVariable(declaration, getVariable(ast));
+        return declaration;
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Assignment ast) {
+        //The receiver is assigned rather than evaluated, so only its offset is
+        Ast.Expression receiver = ast.getReceiver();
+        if(receiver instanceof Ast.Expression.Access && ((Ast.Expression.Access) receiver).getOffset().isPresent())
+            receiver = visit(receiver);
+        Ast.Expression value = visit(ast.getValue());
+        if(receiver == ast.getReceiver() && value == ast.getValue())
+            return ast;
+        return new Ast.Statement.Assignment(receiver, value);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.If ast) {
+        Ast.Expression condition = visit(ast.getCondition());
+        List<Ast.Statement> thenStatements = visitAll(ast.getThenStatements());
+        List<Ast.Statement> elseStatements = visitAll(ast.getElseStatements());
+        if(condition == ast.getCondition() && thenStatements == ast.getThenStatements() && elseStatements == ast.getElseStatements())
+            return ast;
+        return new Ast.Statement.If(condition, thenStatements, elseStatements);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Switch ast) {
+        Ast.Expression condition = visit(ast.getCondition());
+        List<Ast.Statement.Case> cases = visitAll(ast.getCases());
+        if(condition == ast.getCondition() && cases == ast.getCases())
+            return ast;
+        return new Ast.Statement.Switch(condition, cases);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Case ast) {
+        Optional<Ast.Expression> value = visitOptional(ast.getValue());
+        List<Ast.Statement> statements = visitAll(ast.getStatements());
+        if(value == ast.getValue() && statements == ast.getStatements())
+            return ast;
+        return new Ast.Statement.Case(value, statements);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.While ast) {
+        Ast.Expression condition = visit(ast.getCondition());
+        List<Ast.Statement> statements = visitAll(ast.getStatements());
+        if(condition == ast.getCondition() && statements == ast.getStatements())
+            return ast;
+        return new Ast.Statement.While(condition, statements);
+    }
+
+    @Override
+    public Ast visit(Ast.Statement.Return ast) {
+        Ast.Expression value = visit(ast.getValue());
+        return value == ast.getValue() ? ast : new Ast.Statement.Return(value);
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Literal ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Group ast) {
+        Ast.Expression expression = visit(ast.getExpression());
+        //The analyzer only accepts groups of binary expressions
+        if(!(expression instanceof Ast.Expression.Binary))
+            return expression;
+        if(expression == ast.getExpression())
+            return ast;
+        Ast.Expression.Group group = new Ast.Expression.Group(expression);
+        setType(group, getType(ast));
+        return group;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Binary ast) {
+        String operator = ast.getOperator();
+        Ast.Expression left = visit(ast.getLeft());
+        Ast.Expression right = visit(ast.getRight());
+        if(operator.equals("&&") || operator.equals("||")) {
+            Boolean shortCircuit = operator.equals("||");
+            //TRUE && x is x and FALSE && x is FALSE, without evaluating x
+            if(left instanceof Ast.Expression.Literal)
+                return shortCircuit.equals(((Ast.Expression.Literal) left).getLiteral()) ? left : right;
+            //x && TRUE is x, but x && FALSE still evaluates x
+            if(right instanceof Ast.Expression.Literal && !shortCircuit.equals(((Ast.Expression.Literal) right).getLiteral()))
+                return left;
+        }
+        else if(left instanceof Ast.Expression.Literal && right instanceof Ast.Expression.Literal) {
+            Object l = ((Ast.Expression.Literal) left).getLiteral(), r = ((Ast.Expression.Literal) right).getLiteral();
+            Object value = fold(operator, l, r);
+            if(value != null && isLiteral(value) && (backend == Backend.INTERPRETER || isJava(value, foldJava(operator, l, r)))) {
+                Ast.Expression.Literal literal = new Ast.Expression.Literal(value);
+                setType(literal, getType(ast));
+                return literal;
+            }
+        }
+        if(left == ast.getLeft() && right == ast.getRight())
+            return ast;
+        Ast.Expression.Binary binary = new Ast.Expression.Binary(operator, left, right);
+        setType(binary, getType(ast));
+        return binary;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Access ast) {
+        if(!ast.getOffset().isPresent()) {
+            //Locals and parameters are mutable, so an immutable variable of
+            //the same name as a VAL global is that global
+            Ast.Expression.Literal constant = constants.get(ast.getName());
+            if(constant == null || getVariable(ast).getMutable() || !getVariable(ast).getType().equals(getType(constant)))
+                return ast;
+            return constant;
+        }
+        Ast.Expression offset = visit(ast.getOffset().get());
+        if(offset == ast.getOffset().get())
+            return ast;
+        Ast.Expression.Access access = new Ast.Expression.Access(Optional.of(offset), ast.getName());
+        setVariable(access, getVariable(ast));
+        return access;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.Function ast) {
+        List<Ast.Expression> arguments = visitAll(ast.getArguments());
+        if(arguments == ast.getArguments())
+            return ast;
+        Ast.Expression.Function function = new Ast.Expression.Function(ast.getName(), arguments);
+        setFunction(function, getFunction(ast));
+        return function;
+    }
+
+    @Override
+    public Ast visit(Ast.Expression.PlcList ast) {
+        List<Ast.Expression> values = visitAll(ast.getValues());
+        if(values == ast.getValues())
+            return ast;
+        Ast.Expression.PlcList list = new Ast.Expression.PlcList(values);
+        setType(list, getType(ast));
+        return list;
+    }
+
+    /**
+     * Returns the value the interpreter evaluates the operator to for the
+     * given literals, or null if it throws or is not folded.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object fold(String operator, Object left, Object right) {
+        //Nil has no literal value to compare or concatenate
+        if(left == null || right == null)
+            return null;
+        if(operator.equals("<") || operator.equals(">")) {
+            if(!left.getClass().equals(right.getClass()) || !(left instanceof Comparable))
+                return null;
+            //As in the interpreter, compareTo must return exactly -1 or 1,
+            //which strings and characters only do for adjacent values
+            int val = operator.equals("<") ? -1 : 1;
+            return ((Comparable<Object>) left).compareTo(right) == val;
+        }
+        if(operator.equals("=="))
+            return left.equals(right);
+        if(operator.equals("!="))
+            return !left.equals(right);
+        if(operator.equals("+") && (left instanceof String || right instanceof String))
+            return left.toString() + right.toString();
+        if(left instanceof BigInteger && right instanceof BigInteger) {
+            BigInteger l = (BigInteger) left, r = (BigInteger) right;
+            if(operator.equals("+"))
+                return BigInteger.valueOf((long) l.intValue() + (long) r.intValue());
+            if(operator.equals("-"))
+                return l.subtract(r);
+            if(operator.equals("*"))
+                return l.multiply(r);
+            if(operator.equals("/"))
+                return r.signum() == 0 ? null : l.divide(r);
+            if(operator.equals("^")) {
+                if(r.intValue() == 0 || l.equals(BigInteger.ONE))
+                    return BigInteger.ONE;
+                if(r.longValue() < 0)
+                    return BigInteger.ZERO;
+                //Any other base is out of range past 2^31
+                return l.abs().bitLength() > 1 && r.intValue() > 32 ? null : l.pow(r.intValue());
+            }
+        }
+        if(left instanceof BigDecimal && right instanceof BigDecimal) {
+            BigDecimal l = (BigDecimal) left, r = (BigDecimal) right;
+            if(operator.equals("+"))
+                return BigDecimal.valueOf(l.doubleValue() + r.doubleValue());
+            if(operator.equals("-"))
+                return l.subtract(r);
+            if(operator.equals("*"))
+                return l.multiply(r).setScale(1, RoundingMode.HALF_EVEN);
+            if(operator.equals("/"))
+                return r.signum() == 0 ? null : l.divide(r, RoundingMode.HALF_EVEN).setScale(1, RoundingMode.HALF_EVEN);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value the generated Java code evaluates the operator to for
+     * the given literals, which are ints, doubles, chars, booleans and string
+     * constants there, or null if it throws, does not compile or is not
+     * folded.
+     */
+    private static Object foldJava(String operator, Object left, Object right) {
+        //Math.pow is a double, whatever the type of its arguments
+        if(left == null || right == null || operator.equals("^"))
+            return null;
+        if(operator.equals("+") && (left instanceof String || right instanceof String))
+            return toJavaString(left) + toJavaString(right);
+        if(!left.getClass().equals(right.getClass()))
+            return null;
+        if(left instanceof BigInteger) {
+            int l = ((BigInteger) left).intValue(), r = ((BigInteger) right).intValue();
+            if(operator.equals("+"))
+                return BigInteger.valueOf(l + r);
+            if(operator.equals("-"))
+                return BigInteger.valueOf(l - r);
+            if(operator.equals("*"))
+                return BigInteger.valueOf(l * r);
+            if(operator.equals("/"))
+                return r == 0 ? null : BigInteger.valueOf(l / r);
+            return compareJava(operator, Integer.compare(l, r));
+        }
+        if(left instanceof BigDecimal) {
+            double l = ((BigDecimal) left).doubleValue(), r = ((BigDecimal) right).doubleValue();
+            if(operator.equals("+"))
+                return l + r;
+            if(operator.equals("-"))
+                return l - r;
+            if(operator.equals("*"))
+                return l * r;
+            if(operator.equals("/"))
+                return l / r;
+            //Both are finite, so the comparison is that of ==, < and >
+            return compareJava(operator, Double.compare(l, r));
+        }
+        if(left instanceof Character)
+            return compareJava(operator, Character.compare((Character) left, (Character) right));
+        //String literals are interned, so == compares their contents
+        if(operator.equals("=="))
+            return left.equals(right);
+        if(operator.equals("!="))
+            return !left.equals(right);
+        return null;
+    }
+
+    private static Boolean compareJava(String operator, int comparison) {
+        if(operator.equals("<"))
+            return comparison < 0;
+        if(operator.equals(">"))
+            return comparison > 0;
+        if(operator.equals("=="))
+            return comparison == 0;
+        if(operator.equals("!="))
+            return comparison != 0;
+        return null;
+    }
+
+    /**
+     * Returns the string Java concatenates for a literal, which for a decimal
+     * is that of its double.
+     */
+    private static String toJavaString(Object value) {
+        return value instanceof BigDecimal ? Double.toString(((BigDecimal) value).doubleValue()) : value.toString();
+    }
+
+    /**
+     * Returns whether the literal folded by the interpreter is generated as
+     * the given Java value.
+     */
+    private static boolean isJava(Object value, Object java) {
+        if(value instanceof BigDecimal)
+            return java instanceof Double && ((BigDecimal) value).doubleValue() == (Double) java;
+        //The generator prints strings unescaped, so a quote or backslash
+        //concatenated from a character would end or escape the literal
+        if(value instanceof String && (((String) value).indexOf('"') >= 0 || ((String) value).indexOf('\\') >= 0))
+            return false;
+        return value.equals(java);
+    }
+
+    /**
+     * Returns whether the analyzer accepts the value as a literal.
+     */
+    private static boolean isLiteral(Object value) {
+        if(value instanceof BigInteger)
+            return ((BigInteger) value).bitLength() < 32;
+        if(value instanceof BigDecimal)
+            return Double.isFinite(((BigDecimal) value).doubleValue());
+        return true;
+    }
+
+    private Ast.Expression visit(Ast.Expression ast) {
+        return (Ast.Expression) ast.accept(this);
+    }
+
+    private Optional<Ast.Expression> visitOptional(Optional<Ast.Expression> ast) {
+        if(!ast.isPresent())
+            return ast;
+        Ast.Expression expression = visit(ast.get());
+        return expression == ast.get() ? ast : Optional.of(expression);
+    }
+
+    /**
+     * Visits each node, returning the same list if no node changed.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Ast> List<T> visitAll(List<T> nodes) {
+        List<T> visited = null;
+        for(int i = 0; i < nodes.size(); i++) {
+            T node = (T) nodes.get(i).accept(this);
+            if(visited == null && node != nodes.get(i)) {
+                visited = new ArrayList<>(nodes.size());
+                visited.addAll(nodes.subList(0, i));
+            }
+            if(visited != null)
+                visited.add(node);
+        }
+        return visited == null ? nodes : visited;
+    }
+
+    private Environment.Type getType(Ast.Expression ast) {
+        return result == null ? ast.getType() : result.getType(ast);
+    }
+
+    private Environment.Variable getVariable(Ast.Global ast) {
+        return result == null ? ast.getVariable() : result.getVariable(ast);
+    }
+
+    private Environment.Variable getVariable(Ast.Statement.Declaration ast) {
+        return result == null ? ast.getVariable() : result.getVariable(ast);
+    }
+
+    private Environment.Variable getVariable(Ast.Expression.Access ast) {
+        return result == null ? ast.getVariable() : result.getVariable(ast);
+    }
+
+    private Environment.Function getFunction(Ast.Function ast) {
+        return result == null ? ast.getFunction() : result.getFunction(ast);
+    }
+
+    private Environment.Function getFunction(Ast.Expression.Function ast) {
+        return result == null ? ast.getFunction() : result.getFunction(ast);
+    }
+
+    //Overloaded per node class, since each declares its own setter
+    private void setType(Ast.Expression.Literal ast, Environment.Type type) {
+        if(result == null)
+            ast.setType(type);
+        else
+            result.setType(ast, type);
+    }
+
+    private void setType(Ast.Expression.Group ast, Environment.Type type) {
+        if(result == null)
+            ast.setType(type);
+        else
+            result.setType(ast, type);
+    }
+
+    private void setType(Ast.Expression.Binary ast, Environment.Type type) {
+        if(result == null)
+            ast.setType(type);
+        else
+            result.setType(ast, type);
+    }
+
+    private void setType(Ast.Expression.PlcList ast, Environment.Type type) {
+        if(result == null)
+            ast.setType(type);
+        else
+            result.setType(ast, type);
+    }
+
+    private void setVariable(Ast.Global ast, Environment.Variable variable) {
+        if(result == null)
+            ast.setVariable(variable);
+        else
+            result.setVariable(ast, variable);
+    }
+
+    private void setVariable(Ast.Statement.Declaration ast, Environment.Variable variable) {
+        if(result == null)
+            ast.setVariable(variable);
+        else
+            result.setVariable(ast, variable);
+    }
+
+    private void setVariable(Ast.Expression.Access ast, Environment.Variable variable) {
+        if(result == null)
+            ast.setVariable(variable);
+        else
+            result.setVariable(ast, variable);
+    }
+
+    private void setFunction(Ast.Function ast, Environment.Function function) {
+        if(result == null)
+            ast.setFunction(function);
+        else
+            result.setFunction(ast, function);
+    }
+
+    private void setFunction(Ast.Expression.Function ast, Environment.Function function) {
+        if(result == null)
+            ast.setFunction(function);
+        else
+            result.setFunction(ast, function);
+    }
+
+}
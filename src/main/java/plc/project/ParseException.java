@@ -3,14 +3,31 @@ package plc.project;
 public final class ParseException extends RuntimeException {
 
     private final int index;
+    private final LineMap lines;
 
     public ParseException(String message, int index) {
+        this(message, index, null);
+    }
+
+    /**
+     * Creates an exception whose index can be resolved to a line and column
+     * through the given map of the source.
+     */
+    public ParseException(String message, int index, LineMap lines) {
         super(message);
         this.index = index;
+        this.lines = lines;
     }
 
     public int getIndex() {
         return index;
     }
 
+    /**
+     * Returns the line map of the source, or null if it is not known.
+     */
+    public LineMap getLineMap() {
+        return lines;
+    }
+
 }
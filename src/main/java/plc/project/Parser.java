@@ -1,13 +1,13 @@
 package plc.project;
 
-import jdk.nashorn.internal.runtime.ParserException;
-
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -15,8 +15,8 @@ import java.util.OptionalInt;
  * Tree (AST).
  *
  * The parser has a similar architecture to the lexer, just with {@link Token}s
- * instead of characters. As before, {@link #peek(Object...)} and {@link
- * #match(Object...)} are helpers to make the implementation easier.
+ * instead of characters. As before, {@link #peek(int)} and {@link
+ * #match(int)} are helpers to make the implementation easier.
  *
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
@@ -24,10 +24,105 @@ import java.util.OptionalInt;
  */
 public final class Parser {
 
+    private static final int LOGICAL = 1;
+    private static final int COMPARISON = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+
+    /**
+     * The precedence of each binary operator, indexed by {@link Symbol}, or 0
+     * for every other token.
+     */
+    private static final byte[] PRECEDENCE = new byte[Symbol.POWER + 1];
+
+    static {
+        PRECEDENCE[Symbol.AND] = PRECEDENCE[Symbol.OR] = LOGICAL;
+        PRECEDENCE[Symbol.LESS] = PRECEDENCE[Symbol.GREATER] = COMPARISON;
+        PRECEDENCE[Symbol.EQUAL] = PRECEDENCE[Symbol.NOT_EQUAL] = COMPARISON;
+        PRECEDENCE[Symbol.PLUS] = PRECEDENCE[Symbol.MINUS] = ADDITIVE;
+        PRECEDENCE[Symbol.TIMES] = PRECEDENCE[Symbol.DIVIDE] = PRECEDENCE[Symbol.POWER] = MULTIPLICATIVE;
+    }
+
     private final TokenStream tokens;
+    private final LineMap lines;
+    private boolean lazy = false;
+    private boolean iterative = false;
+    private Frame[] frames = new Frame[16];
+    private int size = 0;
+    private AstPositions positions = null;
+    private AstPool pool = null;
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this(tokens, null);
+    }
+
+    /**
+     * Creates a parser whose {@link ParseException}s carry the line map of
+     * the source, such as {@link Lexer#getLineMap()}.
+     */
+    public Parser(List<Token> tokens, LineMap lines) {
+        this.tokens = new ListStream(tokens);
+        this.lines = lines;
+    }
+
+    /**
+     * Parses directly from a {@link TokenBuffer}, so literals are only
+     * materialized for the tokens that end up in the AST.
+     */
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new BufferStream(tokens);
+        this.lines = tokens.getLineMap();
+    }
+
+    /**
+     * Parses while pulling tokens from the lexer on demand, so lexing and
+     * parsing overlap and only the few tokens within reach of the parser's
+     * lookahead and lookbehind are held at any time.
+     */
+    public Parser(Lexer lexer) {
+        this.tokens = new LexerStream(lexer.tokens());
+        this.lines = lexer.getLineMap();
+    }
+
+    private Parser(TokenStream tokens, LineMap lines, boolean iterative, AstPool pool) {
+        this.tokens = tokens;
+        this.lines = lines;
+        this.iterative = iterative;
+        this.pool = pool;
+    }
+
+    /**
+     * Sets whether blocks, statements and expressions are parsed with an
+     * explicit stack on the heap instead of by recursion, so that their
+     * nesting depth is not limited by the size of the thread's stack. Both
+     * modes produce the same AST and throw the same {@link ParseException}s.
+     * The other rules, which cannot nest, are parsed by recursive descent in
+     * either mode.
+     */
+    public void setIterative(boolean iterative) {
+        this.iterative = iterative;
+    }
+
+    /**
+     * Sets the table the positions of parsed nodes are recorded in, or null
+     * to not record them, which is the default. Positions are recorded in
+     * every mode, and for a function parsed lazily by {@link
+     * #parseSourceLazy()} the positions of its body are added when the body
+     * is parsed.
+     */
+    public void setPositions(AstPositions positions) {
+        this.positions = positions;
+    }
+
+    /**
+     * Sets the pool constant expressions are hash consed into, or null to
+     * create a node for every occurrence, which is the default. The pool may
+     * be shared with other parsers, including those parsing on other threads.
+     * A shared node has the position of its last occurrence, if positions are
+     * recorded too.
+     */
+    public void setPool(AstPool pool) {
+        this.pool = pool;
     }
 
     /**
@@ -39,29 +134,144 @@ public final class Parser {
         //Read in all the Global Objects first
         while(tokens.has(0))
         {
-            if(peek("LIST") || peek("VAR") || peek("VAL"))
+            if(peek(Symbol.LIST) || peek(Symbol.VAR) || peek(Symbol.VAL))
             {
-                globals.add(parseGlobal());
-                if(!match(";"))
+                int start = start();
+                Ast.Global global = parseGlobal();
+                if(!match(Symbol.SEMICOLON))
                 {
                     throwError("Illegal end of global variable");
                     return null;
                 }
+                globals.add(record(global, start));
             }
             else break;
         }
         //Then read in all the Function Objects
+        parseFunctions(functions);
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but only
+     * parses the signature of each function. Its body is skipped by balancing
+     * {@code DO} and {@code SWITCH} against {@code END}, and parsed from that
+     * range of tokens when {@link Ast.Function#getStatements()} is first
+     * called, so a syntax error in a body is only thrown then. This requires
+     * the parser to have been created from a token list or buffer, which the
+     * functions keep a reference to until their bodies are parsed.
+     */
+    public Ast.Source parseSourceLazy() throws ParseException {
+        //Fails before parsing anything if the stream cannot be split
+        tokens.range(tokens.index, tokens.index);
+        lazy = true;
+        try {
+            return parseSource();
+        } finally {
+            lazy = false;
+        }
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but parses
+     * the functions concurrently on the given pool. This requires the parser
+     * to have been created from a token list or buffer.
+     *
+     * After the globals, a scan over the token symbols finds where each
+     * function ends by balancing {@code DO} and {@code SWITCH} against {@code
+     * END}, and each function is then parsed from its own range of tokens. A
+     * function which parses to exactly the end of its range is the function
+     * the sequential parser would have produced, since none of the lookahead
+     * patterns can match across the closing {@code END}. From the first range
+     * which does not, or wherever the scan stopped making sense, the rest of
+     * the source is parsed sequentially, so any error is the one {@link
+     * #parseSource()} would have thrown.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        //Fails before parsing anything if the stream cannot be split
+        tokens.range(tokens.index, tokens.index);
+        List<Ast.Global> globals = new ArrayList<>();
+        while(tokens.has(0) && (peek(Symbol.LIST) || peek(Symbol.VAR) || peek(Symbol.VAL)))
+        {
+            int start = start();
+            Ast.Global global = parseGlobal();
+            if(!match(Symbol.SEMICOLON))
+                throwError("Illegal end of global variable");
+            globals.add(record(global, start));
+        }
+        List<Integer> starts = new ArrayList<>();
+        List<Parser> parsers = new ArrayList<>();
+        List<ForkJoinTask<Ast.Function>> tasks = new ArrayList<>();
+        int start = tokens.index;
+        int depth = 0;
+        for(int i = 0; tokens.has(i); i++)
+        {
+            int symbol = tokens.symbol(i);
+            if(depth == 0 && symbol != Symbol.FUN)
+                break;
+            if(symbol == Symbol.DO || symbol == Symbol.SWITCH)
+                depth++;
+            else if(symbol == Symbol.END && --depth == 0)
+            {
+                Parser parser = new Parser(tokens.range(start, tokens.index + i + 1), lines, iterative, this.pool);
+                //Each range records into its own table, merged in order below
+                parser.positions = positions == null ? null : new AstPositions();
+                starts.add(start);
+                parsers.add(parser);
+                tasks.add(pool.submit(parser::parseRange));
+                start = tokens.index + i + 1;
+            }
+            else if(depth < 0)
+                break;
+        }
+        List<Ast.Function> functions = new ArrayList<>(tasks.size());
+        for(int i = 0; i < tasks.size(); i++)
+        {
+            Ast.Function function = tasks.get(i).join();
+            if(function == null)
+            {
+                for(ForkJoinTask<Ast.Function> task : tasks)
+                    task.cancel(false);
+                start = starts.get(i);
+                break;
+            }
+            if(positions != null)
+                positions.putAll(parsers.get(i).positions);
+            functions.add(function);
+        }
+        tokens.index = start;
+        parseFunctions(functions);
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Parses the function making up the whole token range of this parser, or
+     * returns null if the range does not hold exactly one function.
+     */
+    private Ast.Function parseRange() {
+        try {
+            int start = start();
+            if(!match(Symbol.FUN))
+                return null;
+            Ast.Function function = parseFunction();
+            return tokens.has(0) ? null : record(function, start);
+        } catch(ParseException e) {
+            return null;
+        }
+    }
+
+    private void parseFunctions(List<Ast.Function> functions) throws ParseException {
         while(tokens.has(0))
         {
-            if(match("FUN"))
-                functions.add(parseFunction());
+            int start = start();
+            if(match(Symbol.FUN))
+                functions.add(record(parseFunction(), start));
             //Should only be functions or globals, if not then throw error
             else {
                 throwError("Illegal Function or Global Declaration");
-                return null;
+                return;
             }
         }
-        return new Ast.Source(globals, functions);
     }
 
     /**
@@ -69,15 +279,15 @@ public final class Parser {
      * next tokens start a global, aka {@code LIST|VAL|VAR}.
      */
     public Ast.Global parseGlobal() throws ParseException {
-        if(match("LIST"))
+        if(match(Symbol.LIST))
         {
             return parseList();
         }
-        else if(match("VAR"))
+        else if(match(Symbol.VAR))
         {
             return parseMutable();
         }
-        else if(match("VAL"))
+        else if(match(Symbol.VAL))
         {
             return parseImmutable();
         }
@@ -90,21 +300,22 @@ public final class Parser {
      */
     public Ast.Global parseList() throws ParseException {
         List<Ast.Expression> expressions = new ArrayList<>();
-        if(match(Token.Type.IDENTIFIER, ":",  Token.Type.IDENTIFIER, "=" ,"["))
+        if(match(Token.Type.IDENTIFIER, Symbol.COLON,  Token.Type.IDENTIFIER, Symbol.ASSIGN ,Symbol.LEFT_BRACKET))
         {
-            String name = tokens.get(-5).getLiteral(); // -5 to get Identifier
-            String type = tokens.get(-3).getLiteral();
+            String name = tokens.literal(-5); // -5 to get Identifier
+            String type = tokens.literal(-3);
+            int start = positions == null ? 0 : tokens.index(-1);
             expressions.add(parseExpression());
-            while(match(",") && tokens.has(0))
+            while(match(Symbol.COMMA) && tokens.has(0))
             {
                 expressions.add(parseExpression());
             }
-            if(!match("]"))
+            if(!match(Symbol.RIGHT_BRACKET))
             {
                 throwError("Illegal end of list");
                 return null;
             }
-            else return new Ast.Global(name, type,true, Optional.of(new Ast.Expression.PlcList(expressions)));
+            else return new Ast.Global(name, type,true, Optional.of(record(new Ast.Expression.PlcList(expressions), start)));
         }
         else {
             throwError("Illegal token as list Identifier");
@@ -121,11 +332,11 @@ public final class Parser {
             throwError("Token is not an Identifier");
             return null;
         }
-        String name = tokens.get(-1).getLiteral();
-        if(match(":",Token.Type.IDENTIFIER)) {
-            String type = tokens.get(-1).getLiteral();
-            if (peek("=")) {
-                match("=");
+        String name = tokens.literal(-1);
+        if(match(Symbol.COLON,Token.Type.IDENTIFIER)) {
+            String type = tokens.literal(-1);
+            if (peek(Symbol.ASSIGN)) {
+                match(Symbol.ASSIGN);
                 Optional<Ast.Expression> value = Optional.of(parseExpression());
                 return new Ast.Global(name, type, true, value);
             }
@@ -146,12 +357,12 @@ public final class Parser {
             throwError("Token is not an Identifier");
             return null;
         }
-        String name = tokens.get(-1).getLiteral();
-        if (!match(":", Token.Type.IDENTIFIER,"=")) {
+        String name = tokens.literal(-1);
+        if (!match(Symbol.COLON, Token.Type.IDENTIFIER,Symbol.ASSIGN)) {
             throwError("Illegal immutable declaration");
             return null;
         }
-        String type = tokens.get(-2).getLiteral();
+        String type = tokens.literal(-2);
         Optional<Ast.Expression> value = Optional.of(parseExpression());
         return new Ast.Global(name, type, false, value);
     }
@@ -165,8 +376,8 @@ public final class Parser {
             throwError("Token should be an Identifier");
             return null;
         }
-        String name = tokens.get(-1).getLiteral();
-        if (!match("(")) {
+        String name = tokens.literal(-1);
+        if (!match(Symbol.LEFT_PAREN)) {
             throwError("Missing (");
             return null;
         }
@@ -176,45 +387,99 @@ public final class Parser {
         List<Ast.Statement> statements = new ArrayList<>();
         String type = "";
         //ex: func(), after the (, checks for the parameters.
-        if (match(Token.Type.IDENTIFIER,":", Token.Type.IDENTIFIER)) {
-            parameters.add(tokens.get(-3).getLiteral());
-            parameterTypes.add(tokens.get(-1).getLiteral());
+        if (match(Token.Type.IDENTIFIER,Symbol.COLON, Token.Type.IDENTIFIER)) {
+            parameters.add(tokens.literal(-3));
+            parameterTypes.add(tokens.literal(-1));
             //checks for more than 1 parameter
-            while(peek(",")) {
-                match(",");
-                if (!match(Token.Type.IDENTIFIER, ":", Token.Type.IDENTIFIER)) {
+            while(peek(Symbol.COMMA)) {
+                match(Symbol.COMMA);
+                if (!match(Token.Type.IDENTIFIER, Symbol.COLON, Token.Type.IDENTIFIER)) {
                     throwError("Missing Identifier in function");
                     return null;
                 }
-                parameters.add(tokens.get(-3).getLiteral());
-                parameterTypes.add(tokens.get(-1).getLiteral());
+                parameters.add(tokens.literal(-3));
+                parameterTypes.add(tokens.literal(-1));
             }
         }
-        if (!match(")")) {
+        if (!match(Symbol.RIGHT_PAREN)) {
             throwError("Missing )");
             return null;
         }
-        if(match(":", Token.Type.IDENTIFIER))
-             type = tokens.get(-1).getLiteral();
-        if (!match("DO")) {
+        if(match(Symbol.COLON, Token.Type.IDENTIFIER))
+             type = tokens.literal(-1);
+        if (!match(Symbol.DO)) {
             throwError("Missing DO");
             return null;
         }
+        int end = lazy ? blockEnd() : -1;
+        if (end >= 0) {
+            TokenStream stream = tokens;
+            AstPositions table = positions;
+            AstPool shared = pool;
+            int start = stream.index;
+            stream.index = end + 1;
+            return new Ast.Function(name, parameters, parameterTypes, Optional.of(type),
+                    () -> new Parser(stream.range(start, end + 1), lines, iterative, shared).parseBody(table));
+        }
         statements = parseBlock();
-        if (!match("END")) {
+        if (!match(Symbol.END)) {
             throwError("Missing END");
             return null;
         }
         return new Ast.Function(name, parameters, parameterTypes, Optional.of(type),  statements);
     }
 
+    /**
+     * Returns the index of the {@code END} closing the block starting at the
+     * current token, or -1 if the block is never closed.
+     */
+    private int blockEnd() {
+        int depth = 1;
+        for(int i = 0; tokens.has(i); i++)
+        {
+            int symbol = tokens.symbol(i);
+            if(symbol == Symbol.DO || symbol == Symbol.SWITCH)
+                depth++;
+            else if(symbol == Symbol.END && --depth == 0)
+                return tokens.index + i;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a function body skipped by {@link #parseSourceLazy()}, which
+     * together with its {@code END} must span the whole token range of this
+     * parser. The positions of the body are recorded in a table of its own and
+     * added to the given one, if any, only once the body has parsed, so bodies
+     * parsed on other threads hold its lock only for the copy.
+     */
+    private List<Ast.Statement> parseBody(AstPositions table) throws ParseException {
+        positions = table == null ? null : new AstPositions();
+        List<Ast.Statement> statements = parseBlock();
+        if(!match(Symbol.END))
+            throwError("Missing END");
+        //An earlier END would have closed the function
+        if(tokens.has(0))
+            throwError("Illegal Function or Global Declaration");
+        if(table != null)
+        {
+            synchronized(table) {
+                table.putAll(positions);
+            }
+        }
+        return statements;
+    }
+
     /**
      * Parses the {@code block} rule. This method should only be called if the
      * preceding token indicates the opening a block.
      */
+    @SuppressWarnings("unchecked")
     public List<Ast.Statement> parseBlock() throws ParseException {
+        if(iterative)
+            return (List<Ast.Statement>) iterate(BLOCK);
         List<Ast.Statement> exprs = new ArrayList<>();
-        while(tokens.has(0) && !peek("END") && !peek("ELSE") && !peek("DEFAULT") && !peek("CASE")){
+        while(tokens.has(0) && !peek(Symbol.END) && !peek(Symbol.ELSE) && !peek(Symbol.DEFAULT) && !peek(Symbol.CASE)){
             exprs.add(parseStatement());
         }
         return exprs;
@@ -226,30 +491,34 @@ public final class Parser {
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Statement parseStatement() throws ParseException {
-            if (match("LET")) {
-                return parseDeclarationStatement();
-            } else if (match("SWITCH")) {
-                return parseSwitchStatement();
-            } else if (match("IF")) {
-                return parseIfStatement();
-            } else if (match("WHILE")) {
-                return parseWhileStatement();
-            } else if (match("RETURN")) {
-                return parseReturnStatement();
+            if (iterative) {
+                return (Ast.Statement) iterate(STATEMENT);
+            }
+            int start = start();
+            if (match(Symbol.LET)) {
+                return record(parseDeclarationStatement(), start);
+            } else if (match(Symbol.SWITCH)) {
+                return record(parseSwitchStatement(), start);
+            } else if (match(Symbol.IF)) {
+                return record(parseIfStatement(), start);
+            } else if (match(Symbol.WHILE)) {
+                return record(parseWhileStatement(), start);
+            } else if (match(Symbol.RETURN)) {
+                return record(parseReturnStatement(), start);
             } else {
                 Ast.Expression left = parseExpression();
-                if (match("=")) {
+                if (match(Symbol.ASSIGN)) {
                     Ast.Expression right = parseExpression();
-                    if (match(";")) {
-                        return new Ast.Statement.Assignment(left, right);
+                    if (match(Symbol.SEMICOLON)) {
+                        return record(new Ast.Statement.Assignment(left, right), start);
                     }
                     else {
                         throwError("Illegal Assignment statement");
                         return null;
                     }
                 }
-                if (match(";")) {
-                    return new Ast.Statement.Expression(left);
+                if (match(Symbol.SEMICOLON)) {
+                    return record(new Ast.Statement.Expression(left), start);
                 }
                 else {
                     throwError("Illegal Assignment statement: missing semicolon");
@@ -269,22 +538,22 @@ public final class Parser {
             throwError("Declaration name is not an identifier");
             return null;
         }
-        String varName = tokens.get(-1).getLiteral();
+        String varName = tokens.literal(-1);
         //after the var name, if it isn't a semicolon then it is an initialization..., else it is a declaration
-        if (match(";")){
+        if (match(Symbol.SEMICOLON)){
             return new Ast.Statement.Declaration(varName, Optional.empty());
         }
         else {
             Optional name = Optional.empty();
             Optional<Ast.Expression> expr = Optional.empty();
-            if(match(":", Token.Type.IDENTIFIER))
-                name = Optional.of(tokens.get(-1).getLiteral());
+            if(match(Symbol.COLON, Token.Type.IDENTIFIER))
+                name = Optional.of(tokens.literal(-1));
             //if next token isn't =, then throw error
-            if (match("=")){
+            if (match(Symbol.ASSIGN)){
                 expr = Optional.of(parseExpression());
             }
             //Need to end with semicolon
-            if (!match(";")) {
+            if (!match(Symbol.SEMICOLON)) {
                 throwError("Missing ;");
             }
             return new Ast.Statement.Declaration(varName, name, expr);
@@ -298,15 +567,15 @@ public final class Parser {
      */
     public Ast.Statement.If parseIfStatement() throws ParseException {
         Ast.Expression condition = parseExpression();
-        if (!match("DO")) {
+        if (!match(Symbol.DO)) {
             throwError("Missing DO");
             return null;
         }
         List<Ast.Statement> thenStatements = parseBlock();
         List<Ast.Statement> elseStatements = new ArrayList<>();
         // if there is no else statement thing...
-        if (!match("ELSE")) {
-            if (!match("END")) {
+        if (!match(Symbol.ELSE)) {
+            if (!match(Symbol.END)) {
                 throwError("Expected END");
                 return null;
             }
@@ -314,7 +583,7 @@ public final class Parser {
         }
         // if there is an else statement
         elseStatements = parseBlock();
-        if (!match("END")) {
+        if (!match(Symbol.END)) {
             throwError("Expected END");
             return null;
         }
@@ -329,16 +598,16 @@ public final class Parser {
     public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
         Ast.Expression condition = parseExpression();
         List<Ast.Statement.Case> cases = new ArrayList<>();
-        while (peek("CASE")) {
-            //match("CASE");
+        while (peek(Symbol.CASE)) {
+            //match(Symbol.CASE);
             cases.add(parseCaseStatement());
         }
-        if (!peek("DEFAULT")) {
+        if (!peek(Symbol.DEFAULT)) {
             throwError("No DEFAULT Case");
             return null;
         }
         cases.add(parseCaseStatement());
-        if(!match("END"))
+        if(!match(Symbol.END))
         {
             throwError("Illegal End of Switch case");
             return null;
@@ -353,19 +622,20 @@ public final class Parser {
      */
     public Ast.Statement.Case parseCaseStatement() throws ParseException {
         List<Ast.Statement> statements = new ArrayList<>();
-        if (match("CASE")) {
+        int start = start();
+        if (match(Symbol.CASE)) {
             Optional<Ast.Expression> value = Optional.of(parseExpression());
-            if (!match(":")) {
+            if (!match(Symbol.COLON)) {
                 throwError("No :");
                 return null;
             }
             statements = parseBlock();
-            return new Ast.Statement.Case(value, statements);
+            return record(new Ast.Statement.Case(value, statements), start);
         }
         //this is default
-        match("DEFAULT");
+        match(Symbol.DEFAULT);
         statements = parseBlock();
-        return new Ast.Statement.Case(Optional.empty(), statements);
+        return record(new Ast.Statement.Case(Optional.empty(), statements), start);
     }
 
     /**
@@ -375,12 +645,12 @@ public final class Parser {
      */
     public Ast.Statement.While parseWhileStatement() throws ParseException {
         Ast.Expression condition = parseExpression();
-        if (!match("DO")) {
+        if (!match(Symbol.DO)) {
             throwError("Missing DO");
             return null;
         }
         List<Ast.Statement> statements = parseBlock();
-        if (!match("END")) {
+        if (!match(Symbol.END)) {
             throwError("Missing END");
             return null;
         }
@@ -394,7 +664,7 @@ public final class Parser {
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
         Ast.Expression expr = parseExpression();
-        if (!match(";")) {
+        if (!match(Symbol.SEMICOLON)) {
             throwError("Missing ;");
             return null;
         }
@@ -405,11 +675,14 @@ public final class Parser {
      * Parses the {@code expression} rule.
      */
     public Ast.Expression parseExpression() throws ParseException {
+        if(iterative) {
+            return (Ast.Expression) iterate(EXPRESSION);
+        }
         if(tokens.has(0)) {
-            return parseLogicalExpression();
+            return parseBinaryExpression(LOGICAL);
         }
         else {
-            throw new ParseException("Parse Expression contains Illegal token index", tokens.get(0).getIndex());
+            throw error("Parse Expression contains Illegal token index", tokens.index(0));
         }
     }
 
@@ -417,66 +690,49 @@ public final class Parser {
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expression parseLogicalExpression() throws ParseException {
-        Ast.Expression left = parseComparisonExpression();
-        Ast.Expression right;
-        while(match("&&") || match("||"))
-        {
-            String op = tokens.get(-1).getLiteral();
-            right = parseComparisonExpression();
-            if(!(peek("&&") || peek("||")))
-                return new Ast.Expression.Binary(op, left, right);
-            else left = new Ast.Expression.Binary(op, left, right);
-        }
-        return left;
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expression parseComparisonExpression() throws ParseException {
-        Ast.Expression left = parseAdditiveExpression();
-        Ast.Expression right;
-        while(match("<") || match(">") || match("==") || match("!="))
-        {
-            String op = tokens.get(-1).getLiteral();
-            right = parseAdditiveExpression();
-            if(!(peek("<") || peek(">") || peek("==") || peek("!=")))
-                return new Ast.Expression.Binary(op, left, right);
-            else left = new Ast.Expression.Binary(op, left, right);
-        }
-        return left;
+        return parseBinaryExpression(COMPARISON);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expression parseAdditiveExpression() throws ParseException {
-        Ast.Expression left = parseMultiplicativeExpression();
-        Ast.Expression right;
-        while(match("+") || match("-"))
-        {
-            String op = tokens.get(-1).getLiteral();
-            right = parseMultiplicativeExpression();
-            if(!(peek("+") || peek("-")))
-                return new Ast.Expression.Binary(op, left, right);
-            else left = new Ast.Expression.Binary(op, left, right);
-        }
-        return left;
+        return parseBinaryExpression(ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expression parseMultiplicativeExpression() throws ParseException {
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
+
+    /**
+     * Parses a chain of binary operators of at least the given precedence by
+     * precedence climbing. Each operator's right operand is parsed at the next
+     * higher precedence, so operators of the same precedence fold to the left
+     * exactly as one loop per grammar rule would, but a primary expression is
+     * reached in one call instead of one per precedence level.
+     */
+    private Ast.Expression parseBinaryExpression(int precedence) throws ParseException {
+        int start = start();
         Ast.Expression left = parsePrimaryExpression();
-        Ast.Expression right;
-        while(match("*") || match("/") || match("^"))
+        while(tokens.has(0))
         {
-            String op = tokens.get(-1).getLiteral();
-            right = parsePrimaryExpression();
-            if(!(peek("*") || peek("/") || peek("^")))
-                return new Ast.Expression.Binary(op, left, right);
-            else left = new Ast.Expression.Binary(op, left, right);
+            int symbol = tokens.symbol(0);
+            int next = PRECEDENCE[symbol];
+            if(next < precedence)
+                break;
+            tokens.advance();
+            Ast.Expression right = parseBinaryExpression(next + 1);
+            left = record(share(new Ast.Expression.Binary(Symbol.text(symbol), left, right)), start);
         }
         return left;
     }
@@ -488,37 +744,32 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expression parsePrimaryExpression() throws ParseException {
-        if(match("TRUE"))
-            return new Ast.Expression.Literal(true);
-        else if(match("FALSE"))
-            return new Ast.Expression.Literal(false);
-        else if(match("NIL"))
-            return new Ast.Expression.Literal(null);
+        int start = start();
+        return record(parsePrimary(), start);
+    }
+
+    private Ast.Expression parsePrimary() throws ParseException {
+        if(match(Symbol.TRUE))
+            return share(new Ast.Expression.Literal(true));
+        else if(match(Symbol.FALSE))
+            return share(new Ast.Expression.Literal(false));
+        else if(match(Symbol.NIL))
+            return share(new Ast.Expression.Literal(null));
         //Because the match advances the index by 1, want to get(-1) to go back to token that was read
         else if(match(Token.Type.INTEGER))
-            return new Ast.Expression.Literal(new BigInteger(tokens.get(-1).getLiteral()));
+            return share(new Ast.Expression.Literal(tokens.value(-1)));
         else if(match(Token.Type.DECIMAL))
-            return new Ast.Expression.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
+            return share(new Ast.Expression.Literal(tokens.value(-1)));
         else if(match(Token.Type.CHARACTER))
-        {
-            String toReturn = tokens.get(-1).getLiteral();
-            toReturn = toReturn.substring(1,toReturn.length() - 1);
-            toReturn = escapeChars(toReturn);
-            return new Ast.Expression.Literal(new Character(toReturn.charAt(0)));
-        }
+            return share(new Ast.Expression.Literal(tokens.value(-1)));
         else if(match(Token.Type.STRING))
-        {
-            String toReturn = tokens.get(-1).getLiteral();
-            toReturn = toReturn.substring(1, toReturn.length() - 1);
-            toReturn = escapeChars(toReturn);
-            return new Ast.Expression.Literal(new String(toReturn));
-        }
-        else if(match("("))
+            return share(new Ast.Expression.Literal(tokens.value(-1)));
+        else if(match(Symbol.LEFT_PAREN))
         {
 
             Ast.Expression expression = parseExpression();
-            if(match(")")) {
-                return new Ast.Expression.Group(expression);
+            if(match(Symbol.RIGHT_PAREN)) {
+                return share(new Ast.Expression.Group(expression));
             }
             else {
                 throwError("Illegal Grouping of Expression");
@@ -526,27 +777,27 @@ public final class Parser {
         }
         else if(match(Token.Type.IDENTIFIER))
         {
-            String Name = tokens.get(-1).getLiteral();
-            if(match("(")){
+            String Name = tokens.literal(-1);
+            if(match(Symbol.LEFT_PAREN)){
                 List<Ast.Expression> params = new ArrayList<>();
-                while(tokens.has(0) && !peek(")"))
+                while(tokens.has(0) && !peek(Symbol.RIGHT_PAREN))
                 {
                     params.add(parseExpression());
-                    if(peek(",", ")")) {
-                        throw new ParseException("Illegal end of function call", tokens.get(0).getIndex() + 1);
+                    if(peek(Symbol.COMMA, Symbol.RIGHT_PAREN)) {
+                        throw error("Illegal end of function call", tokens.index(0) + 1);
                     }
-                    if(!match(",")) break;
+                    if(!match(Symbol.COMMA)) break;
                 }
-                if(match(")")) {
+                if(match(Symbol.RIGHT_PAREN)) {
                     return new Ast.Expression.Function(Name, params);
                 }
                 else {
                     throwError("Illegal End of Function Call");
                 }
             }
-            if(match("[")){
+            if(match(Symbol.LEFT_BRACKET)){
                 Ast.Expression expression = parseExpression();
-                if(match("]"))
+                if(match(Symbol.RIGHT_BRACKET))
                     return new Ast.Expression.Access(Optional.of(expression), Name);
                 else throwError("Illegal Closing of Access Operator");
             }
@@ -556,89 +807,544 @@ public final class Parser {
         return null;
     }
 
-    private void throwError(String error) throws ParseException
-    {
-        if(tokens.has(0))
-            throw new ParseException(error, tokens.get(0).getIndex());
-        else throw new ParseException(error, tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-    }
-    private String escapeChars(String toReturn)
-    {
-        toReturn = toReturn.replace("\\\\", "\\");
-        toReturn = toReturn.replace("\\'", "'");
-        toReturn = toReturn.replace("\\\"", "\"");
-        toReturn = toReturn.replace("\\b", "\b");
-        toReturn = toReturn.replace("\\n", "\n");
-        toReturn = toReturn.replace("\\r", "\r");
-        toReturn = toReturn.replace("\\t", "\t");
-        return toReturn;
-    }
+    private static final int BLOCK = 0;
+    private static final int STATEMENT = 1;
+    private static final int DECLARATION = 2;
+    private static final int SWITCH_CONDITION = 3;
+    private static final int CASE_VALUE = 4;
+    private static final int CASE_BLOCK = 5;
+    private static final int DEFAULT_BLOCK = 6;
+    private static final int IF_CONDITION = 7;
+    private static final int IF_THEN = 8;
+    private static final int IF_ELSE = 9;
+    private static final int WHILE_CONDITION = 10;
+    private static final int WHILE_BLOCK = 11;
+    private static final int RETURN_VALUE = 12;
+    private static final int RECEIVER = 13;
+    private static final int ASSIGNMENT_VALUE = 14;
+    private static final int EXPRESSION = 15;
+    private static final int BINARY = 16;
+    private static final int BINARY_LEFT = 17;
+    private static final int BINARY_RIGHT = 18;
+    private static final int PRIMARY = 19;
+    private static final int GROUP = 20;
+    private static final int ARGUMENT = 21;
+    private static final int INDEX = 22;
+
+    /**
+     * The state of one rule being parsed by {@link #iterate(int)}, which
+     * corresponds to the local variables of that rule's method.
+     */
+    private static final class Frame {
+
+        int state;
+        int start;
+        int mark;
+        int precedence;
+        String text;
+        Ast.Expression expression;
+        Object value;
+        List<Object> items;
 
+        private void reset(int state) {
+            this.state = state;
+            precedence = 0;
+            text = null;
+            expression = null;
+            value = null;
+            items = null;
+        }
+
+    }
 
     /**
-     * As in the lexer, returns {@code true} if the current sequence of tokens
-     * matches the given patterns. Unlike the lexer, the pattern is not a regex;
-     * instead it is either a {@link Token.Type}, which matches if the token's
-     * type is the same, or a {@link String}, which matches if the token's
-     * literal is the same.
-     *
-     * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
-     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
-     */
-    private boolean peek(Object... patterns) {
-        for (int i = 0; i < patterns.length; i++) {
-            if (!tokens.has(i)) {
-                return false;
-            } else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) {
-                    return false;
-                }
-            } else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
-                    return false;
-                }
-            } else {
-                throw new AssertionError("Invalid pattern object: " + patterns[i].getClass());
+     * Parses the given rule with an explicit stack of {@link Frame}s instead
+     * of recursion. Each rule method is split at the points where it would
+     * call another rule into states, with one case per state: a case either
+     * pushes the frame of the rule to call after setting its own frame to the
+     * state to resume in, or pops its frame and passes the rule's result to
+     * the frame below. The tokens are matched and the errors thrown in the
+     * same order as by the recursive methods.
+     */
+    @SuppressWarnings("unchecked")
+    private Object iterate(int rule) throws ParseException {
+        size = 0;
+        push(rule);
+        Object result = null;
+        while(true)
+        {
+            Frame frame = frames[size - 1];
+            Object value = null;
+            switch(frame.state)
+            {
+                case BLOCK:
+                    if(frame.items == null)
+                        frame.items = new ArrayList<>();
+                    else frame.items.add(result);
+                    if(tokens.has(0) && !peek(Symbol.END) && !peek(Symbol.ELSE) && !peek(Symbol.DEFAULT) && !peek(Symbol.CASE))
+                        push(STATEMENT);
+                    else value = frame.items;
+                    break;
+                case STATEMENT:
+                    if(match(Symbol.LET))
+                    {
+                        if(!match(Token.Type.IDENTIFIER))
+                            throwError("Declaration name is not an identifier");
+                        frame.text = tokens.literal(-1);
+                        if(match(Symbol.SEMICOLON))
+                        {
+                            value = new Ast.Statement.Declaration(frame.text, Optional.empty());
+                            break;
+                        }
+                        frame.value = match(Symbol.COLON, Token.Type.IDENTIFIER) ? Optional.of(tokens.literal(-1)) : Optional.empty();
+                        if(match(Symbol.ASSIGN))
+                        {
+                            frame.state = DECLARATION;
+                            push(EXPRESSION);
+                            break;
+                        }
+                        if(!match(Symbol.SEMICOLON))
+                            throwError("Missing ;");
+                        value = new Ast.Statement.Declaration(frame.text, (Optional<String>) frame.value, Optional.empty());
+                    }
+                    else
+                    {
+                        if(match(Symbol.SWITCH))
+                            frame.state = SWITCH_CONDITION;
+                        else if(match(Symbol.IF))
+                            frame.state = IF_CONDITION;
+                        else if(match(Symbol.WHILE))
+                            frame.state = WHILE_CONDITION;
+                        else if(match(Symbol.RETURN))
+                            frame.state = RETURN_VALUE;
+                        else frame.state = RECEIVER;
+                        push(EXPRESSION);
+                    }
+                    break;
+                case DECLARATION:
+                    if(!match(Symbol.SEMICOLON))
+                        throwError("Missing ;");
+                    value = new Ast.Statement.Declaration(frame.text, (Optional<String>) frame.value, Optional.of((Ast.Expression) result));
+                    break;
+                case SWITCH_CONDITION:
+                case CASE_BLOCK:
+                    if(frame.state == SWITCH_CONDITION)
+                    {
+                        frame.value = result;
+                        frame.items = new ArrayList<>();
+                    }
+                    else frame.items.add(record(new Ast.Statement.Case(Optional.of(frame.expression), (List<Ast.Statement>) result), frame.mark));
+                    frame.mark = start();
+                    if(match(Symbol.CASE))
+                    {
+                        frame.state = CASE_VALUE;
+                        push(EXPRESSION);
+                        break;
+                    }
+                    if(!peek(Symbol.DEFAULT))
+                        throwError("No DEFAULT Case");
+                    match(Symbol.DEFAULT);
+                    frame.state = DEFAULT_BLOCK;
+                    push(BLOCK);
+                    break;
+                case CASE_VALUE:
+                    if(!match(Symbol.COLON))
+                        throwError("No :");
+                    frame.expression = (Ast.Expression) result;
+                    frame.state = CASE_BLOCK;
+                    push(BLOCK);
+                    break;
+                case DEFAULT_BLOCK:
+                    frame.items.add(record(new Ast.Statement.Case(Optional.empty(), (List<Ast.Statement>) result), frame.mark));
+                    if(!match(Symbol.END))
+                        throwError("Illegal End of Switch case");
+                    value = new Ast.Statement.Switch((Ast.Expression) frame.value, (List<Ast.Statement.Case>) (List<?>) frame.items);
+                    break;
+                case IF_CONDITION:
+                    if(!match(Symbol.DO))
+                        throwError("Missing DO");
+                    frame.expression = (Ast.Expression) result;
+                    frame.state = IF_THEN;
+                    push(BLOCK);
+                    break;
+                case IF_THEN:
+                    if(match(Symbol.ELSE))
+                    {
+                        frame.value = result;
+                        frame.state = IF_ELSE;
+                        push(BLOCK);
+                        break;
+                    }
+                    if(!match(Symbol.END))
+                        throwError("Expected END");
+                    value = new Ast.Statement.If(frame.expression, (List<Ast.Statement>) result, new ArrayList<>());
+                    break;
+                case IF_ELSE:
+                    if(!match(Symbol.END))
+                        throwError("Expected END");
+                    value = new Ast.Statement.If(frame.expression, (List<Ast.Statement>) frame.value, (List<Ast.Statement>) result);
+                    break;
+                case WHILE_CONDITION:
+                    if(!match(Symbol.DO))
+                        throwError("Missing DO");
+                    frame.expression = (Ast.Expression) result;
+                    frame.state = WHILE_BLOCK;
+                    push(BLOCK);
+                    break;
+                case WHILE_BLOCK:
+                    if(!match(Symbol.END))
+                        throwError("Missing END");
+                    value = new Ast.Statement.While(frame.expression, (List<Ast.Statement>) result);
+                    break;
+                case RETURN_VALUE:
+                    if(!match(Symbol.SEMICOLON))
+                        throwError("Missing ;");
+                    value = new Ast.Statement.Return((Ast.Expression) result);
+                    break;
+                case RECEIVER:
+                    if(match(Symbol.ASSIGN))
+                    {
+                        frame.expression = (Ast.Expression) result;
+                        frame.state = ASSIGNMENT_VALUE;
+                        push(EXPRESSION);
+                        break;
+                    }
+                    if(!match(Symbol.SEMICOLON))
+                        throwError("Illegal Assignment statement: missing semicolon");
+                    value = new Ast.Statement.Expression((Ast.Expression) result);
+                    break;
+                case ASSIGNMENT_VALUE:
+                    if(!match(Symbol.SEMICOLON))
+                        throwError("Illegal Assignment statement");
+                    value = new Ast.Statement.Assignment(frame.expression, (Ast.Expression) result);
+                    break;
+                case EXPRESSION:
+                    if(!tokens.has(0))
+                        throw error("Parse Expression contains Illegal token index", tokens.index(0));
+                    frame.state = BINARY;
+                    frame.precedence = LOGICAL;
+                    break;
+                case BINARY:
+                    frame.state = BINARY_LEFT;
+                    result = parseVariableOrLiteral();
+                    if(result == null)
+                        push(PRIMARY);
+                    else if(positions != null)
+                        positions.put((Ast) result, frame.start, tokens.end(-1));
+                    break;
+                case BINARY_LEFT:
+                case BINARY_RIGHT:
+                    frame.expression = frame.state == BINARY_LEFT ? (Ast.Expression) result
+                            : record(share(new Ast.Expression.Binary(frame.text, frame.expression, (Ast.Expression) result)), frame.start);
+                    int symbol = tokens.has(0) ? tokens.symbol(0) : Symbol.NONE;
+                    if(PRECEDENCE[symbol] == 0 || PRECEDENCE[symbol] < frame.precedence)
+                    {
+                        value = frame.expression;
+                        break;
+                    }
+                    tokens.advance();
+                    frame.text = Symbol.text(symbol);
+                    frame.state = BINARY_RIGHT;
+                    push(BINARY).precedence = PRECEDENCE[symbol] + 1;
+                    break;
+                case PRIMARY:
+                    if(match(Symbol.TRUE))
+                        value = share(new Ast.Expression.Literal(true));
+                    else if(match(Symbol.FALSE))
+                        value = share(new Ast.Expression.Literal(false));
+                    else if(match(Symbol.NIL))
+                        value = share(new Ast.Expression.Literal(null));
+                    else if(match(Token.Type.INTEGER) || match(Token.Type.DECIMAL) || match(Token.Type.CHARACTER) || match(Token.Type.STRING))
+                        value = share(new Ast.Expression.Literal(tokens.value(-1)));
+                    else if(match(Symbol.LEFT_PAREN))
+                    {
+                        frame.state = GROUP;
+                        push(EXPRESSION);
+                    }
+                    else if(match(Token.Type.IDENTIFIER))
+                    {
+                        frame.text = tokens.literal(-1);
+                        if(match(Symbol.LEFT_PAREN))
+                        {
+                            frame.items = new ArrayList<>();
+                            if(tokens.has(0) && !peek(Symbol.RIGHT_PAREN))
+                            {
+                                frame.state = ARGUMENT;
+                                push(EXPRESSION);
+                            }
+                            else value = function(frame);
+                        }
+                        else if(match(Symbol.LEFT_BRACKET))
+                        {
+                            frame.state = INDEX;
+                            push(EXPRESSION);
+                        }
+                        else value = new Ast.Expression.Access(Optional.empty(), frame.text);
+                    }
+                    else throwError("Illegal Operator as expression");
+                    break;
+                case GROUP:
+                    if(!match(Symbol.RIGHT_PAREN))
+                        throwError("Illegal Grouping of Expression");
+                    value = share(new Ast.Expression.Group((Ast.Expression) result));
+                    break;
+                case ARGUMENT:
+                    frame.items.add(result);
+                    if(peek(Symbol.COMMA, Symbol.RIGHT_PAREN))
+                        throw error("Illegal end of function call", tokens.index(0) + 1);
+                    if(match(Symbol.COMMA) && tokens.has(0) && !peek(Symbol.RIGHT_PAREN))
+                        push(EXPRESSION);
+                    else value = function(frame);
+                    break;
+                case INDEX:
+                    if(!match(Symbol.RIGHT_BRACKET))
+                        throwError("Illegal Closing of Access Operator");
+                    value = new Ast.Expression.Access(Optional.of((Ast.Expression) result), frame.text);
+                    break;
+                default:
+                    throw new AssertionError("Invalid parser state: " + frame.state);
+            }
+            if(value != null)
+            {
+                //A chain of binary operators passes on nodes recorded already
+                if(positions != null && value instanceof Ast && frame.state != BINARY_LEFT && frame.state != BINARY_RIGHT)
+                    positions.put((Ast) value, frame.start, tokens.end(-1));
+                if(--size == 0)
+                    return value;
+                result = value;
             }
         }
-        return true;
     }
 
     /**
-     * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
-     * and advances the token stream.
+     * Pushes a frame for the given state, reusing the frames left over from
+     * earlier rules so the stack only allocates when it grows.
+     */
+    private Frame push(int state) {
+        if(size == frames.length)
+            frames = Arrays.copyOf(frames, size * 2);
+        if(frames[size] == null)
+            frames[size] = new Frame();
+        Frame frame = frames[size++];
+        frame.reset(state);
+        frame.start = start();
+        return frame;
+    }
+
+    /**
+     * Returns the index of the current token, where a node about to be parsed
+     * starts, if positions are recorded.
+     */
+    private int start() {
+        return positions == null || !tokens.has(0) ? 0 : tokens.index(0);
+    }
+
+    /**
+     * Returns the shared node equal to the expression, if expressions are
+     * hash consed.
+     */
+    private <T extends Ast.Expression> T share(T expression) {
+        return pool == null ? expression : pool.intern(expression);
+    }
+
+    /**
+     * Records the position of a node parsed from the given start to the
+     * previous token, if positions are recorded.
      */
-    private boolean match(Object... patterns) {
-        boolean peek = peek(patterns);
-        if (peek) {
-            for (int i = 0; i < patterns.length; i++) {
+    private <T extends Ast> T record(T ast, int start) {
+        if(positions != null)
+            positions.put(ast, start, tokens.end(-1));
+        return ast;
+    }
+
+    /**
+     * Parses the primary expressions which do not nest, a literal or a
+     * variable, for {@link #iterate(int)} without pushing a frame, or returns
+     * null if the next tokens are any other primary expression.
+     */
+    private Ast.Expression parseVariableOrLiteral() {
+        if(!tokens.has(0))
+            return null;
+        Token.Type type = tokens.type(0);
+        if(type == Token.Type.IDENTIFIER)
+        {
+            int symbol = tokens.symbol(0);
+            if(symbol == Symbol.TRUE || symbol == Symbol.FALSE || symbol == Symbol.NIL)
+            {
                 tokens.advance();
+                return share(new Ast.Expression.Literal(symbol == Symbol.NIL ? null : symbol == Symbol.TRUE));
             }
+            if(tokens.has(1) && (tokens.symbol(1) == Symbol.LEFT_PAREN || tokens.symbol(1) == Symbol.LEFT_BRACKET))
+                return null;
+            tokens.advance();
+            return new Ast.Expression.Access(Optional.empty(), tokens.literal(-1));
+        }
+        else if(type == Token.Type.INTEGER || type == Token.Type.DECIMAL || type == Token.Type.CHARACTER || type == Token.Type.STRING)
+        {
+            tokens.advance();
+            return share(new Ast.Expression.Literal(tokens.value(-1)));
         }
-        return peek;
+        return null;
     }
 
-    private static final class TokenStream {
+    /**
+     * Completes a function call expression in {@link #iterate(int)} once its
+     * arguments have been parsed.
+     */
+    @SuppressWarnings("unchecked")
+    private Ast.Expression function(Frame frame) throws ParseException {
+        if(!match(Symbol.RIGHT_PAREN))
+            throwError("Illegal End of Function Call");
+        return new Ast.Expression.Function(frame.text, (List<Ast.Expression>) (List<?>) frame.items);
+    }
 
-        private final List<Token> tokens;
-        private int index = 0;
+    private void throwError(String error) throws ParseException
+    {
+        if(tokens.has(0))
+            throw error(error, tokens.index(0));
+        else throw error(error, tokens.end(-1));
+    }
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
+    /**
+     * Creates the exception for a syntax error at the given char index. When
+     * tokens are pulled from a lexer, the rest of the input is lexed first, so
+     * a lexing error later in the input still takes precedence just as it
+     * would if the whole input had been lexed before parsing.
+     */
+    private ParseException error(String message, int index) {
+        tokens.drain();
+        return new ParseException(message, index, lines);
+    }
+    /**
+     * As in the lexer, returns {@code true} if the current token matches the
+     * given pattern. Unlike the lexer, the pattern is not a regex; instead it
+     * is either a {@link Symbol} int, which matches if the token is that
+     * keyword or operator, or a {@link Token.Type}, which matches if the
+     * token's type is the same.
+     *
+     * In other words, {@code Token(IDENTIFIER, "LET")} is matched by both
+     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek(Symbol.LET)}.
+     *
+     * Rather than taking varargs patterns, there is one overload for each
+     * sequence of patterns the grammar needs, so matching allocates nothing
+     * and never has to test the class of a pattern.
+     */
+    private boolean peek(int symbol) {
+        return tokens.has(0) && tokens.symbol(0) == symbol;
+    }
+
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.type(0) == type;
+    }
+
+    private boolean peek(int first, int second) {
+        return tokens.has(1) && tokens.symbol(0) == first && tokens.symbol(1) == second;
+    }
+
+    private boolean peek(int symbol, Token.Type type) {
+        return tokens.has(1) && tokens.symbol(0) == symbol && tokens.type(1) == type;
+    }
+
+    private boolean peek(int symbol, Token.Type type, int next) {
+        return tokens.has(2) && tokens.symbol(0) == symbol && tokens.type(1) == type && tokens.symbol(2) == next;
+    }
+
+    private boolean peek(Token.Type type, int symbol, Token.Type next) {
+        return tokens.has(2) && tokens.type(0) == type && tokens.symbol(1) == symbol && tokens.type(2) == next;
+    }
+
+    private boolean peek(Token.Type type, int symbol, Token.Type next, int fourth, int fifth) {
+        return peek(type, symbol, next) && tokens.has(4) && tokens.symbol(3) == fourth && tokens.symbol(4) == fifth;
+    }
+
+    /**
+     * As in the lexer, returns {@code true} if {@link #peek(int)} is true and
+     * advances the token stream, and likewise for each overload of peek.
+     */
+    private boolean match(int symbol) {
+        return peek(symbol) && advance(1);
+    }
+
+    private boolean match(Token.Type type) {
+        return peek(type) && advance(1);
+    }
+
+    private boolean match(int symbol, Token.Type type) {
+        return peek(symbol, type) && advance(2);
+    }
+
+    private boolean match(int symbol, Token.Type type, int next) {
+        return peek(symbol, type, next) && advance(3);
+    }
+
+    private boolean match(Token.Type type, int symbol, Token.Type next) {
+        return peek(type, symbol, next) && advance(3);
+    }
+
+    private boolean match(Token.Type type, int symbol, Token.Type next, int fourth, int fifth) {
+        return peek(type, symbol, next, fourth, fifth) && advance(5);
+    }
+
+    private boolean advance(int count) {
+        for (int i = 0; i < count; i++) {
+            tokens.advance();
         }
+        return true;
+    }
+
+    /**
+     * The parser's view of the token sequence. Tokens are addressed relative to
+     * the current index and read through accessors, so the source can be a
+     * list of {@link Token}s or a {@link TokenBuffer} without materializing
+     * tokens for every check.
+     */
+    private static abstract class TokenStream {
+
+        protected int index = 0;
 
         /**
          * Returns true if there is a token at index + offset.
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size();
+        public abstract boolean has(int offset);
+
+        /**
+         * Gets the type of the token at index + offset.
+         */
+        public abstract Token.Type type(int offset);
+
+        /**
+         * Gets the literal of the token at index + offset.
+         */
+        public abstract String literal(int offset);
+
+        /**
+         * Gets the starting char index of the token at index + offset.
+         */
+        public abstract int index(int offset);
+
+        /**
+         * Gets the {@link Symbol} of the token at index + offset.
+         */
+        public abstract int symbol(int offset);
+
+        /**
+         * Gets the decoded value of the literal token at index + offset.
+         */
+        public abstract Object value(int offset);
+
+        /**
+         * Gets the char index just past the token at index + offset.
+         */
+        public int end(int offset) {
+            return index(offset) + literal(offset).length();
         }
 
         /**
-         * Gets the token at index + offset.
+         * Returns true if the literal of the token at index + offset equals the
+         * given string.
          */
-        public Token get(int offset) {
-            return tokens.get(index + offset);
+        public boolean literalEquals(int offset, String literal) {
+            return literal.equals(literal(offset));
         }
 
         /**
@@ -648,6 +1354,202 @@ public final class Parser {
             index++;
         }
 
+        /**
+         * Reads any remaining input, after which the stream is unusable.
+         */
+        public void drain() {}
+
+        /**
+         * Returns a stream of the tokens from start up to end, where both are
+         * values of {@link #index}.
+         */
+        public TokenStream range(int start, int end) {
+            throw new UnsupportedOperationException("Parallel parsing requires a token list or buffer.");
+        }
+
+    }
+
+    private static final class ListStream extends TokenStream {
+
+        private final List<Token> tokens;
+
+        private ListStream(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < tokens.size();
+        }
+
+        @Override
+        public Token.Type type(int offset) {
+            return tokens.get(index + offset).getType();
+        }
+
+        @Override
+        public String literal(int offset) {
+            return tokens.get(index + offset).getLiteral();
+        }
+
+        @Override
+        public int index(int offset) {
+            return tokens.get(index + offset).getIndex();
+        }
+
+        @Override
+        public int symbol(int offset) {
+            return tokens.get(index + offset).getSymbol();
+        }
+
+        @Override
+        public Object value(int offset) {
+            return tokens.get(index + offset).getValue();
+        }
+
+        @Override
+        public TokenStream range(int start, int end) {
+            return new ListStream(tokens.subList(start, end));
+        }
+
+    }
+
+    private static final class BufferStream extends TokenStream {
+
+        private final TokenBuffer tokens;
+        private final int limit;
+
+        private BufferStream(TokenBuffer tokens) {
+            this(tokens, 0, tokens.size());
+        }
+
+        private BufferStream(TokenBuffer tokens, int start, int limit) {
+            this.tokens = tokens;
+            this.index = start;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < limit;
+        }
+
+        @Override
+        public Token.Type type(int offset) {
+            return tokens.getType(index + offset);
+        }
+
+        @Override
+        public String literal(int offset) {
+            return tokens.getLiteral(index + offset);
+        }
+
+        @Override
+        public int index(int offset) {
+            return tokens.getIndex(index + offset);
+        }
+
+        @Override
+        public int symbol(int offset) {
+            return tokens.getSymbol(index + offset);
+        }
+
+        @Override
+        public Object value(int offset) {
+            return tokens.getValue(index + offset);
+        }
+
+        @Override
+        public int end(int offset) {
+            return tokens.getIndex(index + offset) + tokens.getLength(index + offset);
+        }
+
+        @Override
+        public boolean literalEquals(int offset, String literal) {
+            return tokens.literalEquals(index + offset, literal);
+        }
+
+        @Override
+        public TokenStream range(int start, int end) {
+            return new BufferStream(tokens, start, end);
+        }
+
+    }
+
+    /**
+     * Pulls tokens from a lexer into a ring buffer as the parser looks ahead.
+     * The parser reaches at most five tokens back (the identifier of a {@code
+     * LIST} global) and five ahead (the longest {@code match} pattern), and
+     * the ring holds more than twice that, so a token is only overwritten once
+     * the parser can no longer reach it.
+     */
+    private static final class LexerStream extends TokenStream {
+
+        private static final int CAPACITY = 16;
+
+        private final Iterator<Token> lexer;
+        private final Token[] ring = new Token[CAPACITY];
+        private int lexed = 0;
+
+        private LexerStream(Iterator<Token> lexer) {
+            this.lexer = lexer;
+        }
+
+        private Token token(int offset) {
+            int i = index + offset;
+            fill(i);
+            if (i >= lexed || i < 0) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + lexed);
+            } else if (i < lexed - CAPACITY) {
+                throw new IllegalStateException("Token " + i + " is no longer buffered.");
+            }
+            return ring[i & (CAPACITY - 1)];
+        }
+
+        private void fill(int i) {
+            while (lexed <= i && lexer.hasNext()) {
+                ring[lexed++ & (CAPACITY - 1)] = lexer.next();
+            }
+        }
+
+        @Override
+        public boolean has(int offset) {
+            fill(index + offset);
+            return index + offset < lexed;
+        }
+
+        @Override
+        public Token.Type type(int offset) {
+            return token(offset).getType();
+        }
+
+        @Override
+        public String literal(int offset) {
+            return token(offset).getLiteral();
+        }
+
+        @Override
+        public int index(int offset) {
+            return token(offset).getIndex();
+        }
+
+        @Override
+        public int symbol(int offset) {
+            return token(offset).getSymbol();
+        }
+
+        @Override
+        public Object value(int offset) {
+            return token(offset).getValue();
+        }
+
+        @Override
+        public void drain() {
+            while (lexer.hasNext()) {
+                lexer.next();
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,231 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The keywords and operators of the language, each identified by a small int
+ * so the parser can match tokens with an int comparison instead of a string
+ * comparison. The lexer resolves the symbol of every identifier and operator
+ * token once, through a perfect hash over the first character, last character
+ * and length, and reuses the canonical {@link #text(int)} as the literal.
+ *
+ * Identifiers which are not keywords are shared through a {@link Table}, so
+ * every occurrence of a name is the same String instance by the time the
+ * Analyzer and Interpreter use it as a scope key.
+ */
+public final class Symbol {
+
+    public static final int NONE = 0;
+
+    public static final int LIST = 1;
+    public static final int VAR = 2;
+    public static final int VAL = 3;
+    public static final int FUN = 4;
+    public static final int DO = 5;
+    public static final int END = 6;
+    public static final int LET = 7;
+    public static final int SWITCH = 8;
+    public static final int CASE = 9;
+    public static final int DEFAULT = 10;
+    public static final int IF = 11;
+    public static final int ELSE = 12;
+    public static final int WHILE = 13;
+    public static final int RETURN = 14;
+    public static final int TRUE = 15;
+    public static final int FALSE = 16;
+    public static final int NIL = 17;
+
+    public static final int SEMICOLON = 18;
+    public static final int COLON = 19;
+    public static final int COMMA = 20;
+    public static final int ASSIGN = 21;
+    public static final int LEFT_PAREN = 22;
+    public static final int RIGHT_PAREN = 23;
+    public static final int LEFT_BRACKET = 24;
+    public static final int RIGHT_BRACKET = 25;
+    public static final int AND = 26;
+    public static final int OR = 27;
+    public static final int LESS = 28;
+    public static final int GREATER = 29;
+    public static final int EQUAL = 30;
+    public static final int NOT_EQUAL = 31;
+    public static final int PLUS = 32;
+    public static final int MINUS = 33;
+    public static final int TIMES = 34;
+    public static final int DIVIDE = 35;
+    public static final int POWER = 36;
+
+    private static final String[] TEXTS = {
+            null,
+            "LIST", "VAR", "VAL", "FUN", "DO", "END", "LET", "SWITCH", "CASE",
+            "DEFAULT", "IF", "ELSE", "WHILE", "RETURN", "TRUE", "FALSE", "NIL",
+            ";", ":", ",", "=", "(", ")", "[", "]", "&&", "||", "<", ">", "==",
+            "!=", "+", "-", "*", "/", "^"
+    };
+
+    private static final int MAX_LENGTH = 7;
+    private static final int MASK = 255;
+    private static final byte[] TABLE = new byte[MASK + 1];
+    private static final int MULTIPLIER = findMultiplier();
+
+    private Symbol() {}
+
+    /**
+     * Returns the symbol of the given text, or {@link #NONE}.
+     */
+    public static int lookup(String text) {
+        return lookup(text, 0, text.length());
+    }
+
+    /**
+     * Returns the symbol of the characters of the text between start and
+     * start + length, or {@link #NONE}, without copying them.
+     */
+    public static int lookup(CharSequence text, int start, int length) {
+        if (length == 0 || length > MAX_LENGTH) {
+            return NONE;
+        }
+        int symbol = TABLE[hash(MULTIPLIER, text.charAt(start), text.charAt(start + length - 1), length)];
+        String candidate = TEXTS[symbol];
+        if (symbol == NONE || candidate.length() != length) {
+            return NONE;
+        }
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != text.charAt(start + i)) {
+                return NONE;
+            }
+        }
+        return symbol;
+    }
+
+    /**
+     * Returns the canonical text of the symbol.
+     */
+    public static String text(int symbol) {
+        return TEXTS[symbol];
+    }
+
+    public static boolean isKeyword(int symbol) {
+        return symbol >= LIST && symbol <= NIL;
+    }
+
+    private static int hash(int multiplier, char first, char last, int length) {
+        return (first * multiplier + last * 31 + length) & MASK;
+    }
+
+    /**
+     * Searches for a multiplier which maps every symbol to its own slot of the
+     * table, and fills the table with it.
+     */
+    private static int findMultiplier() {
+        for (int multiplier = 1; multiplier < 1 << 16; multiplier++) {
+            Arrays.fill(TABLE, (byte) NONE);
+            boolean perfect = true;
+            for (int symbol = 1; symbol < TEXTS.length && perfect; symbol++) {
+                String text = TEXTS[symbol];
+                int slot = hash(multiplier, text.charAt(0), text.charAt(text.length() - 1), text.length());
+                perfect = TABLE[slot] == NONE;
+                TABLE[slot] = (byte) symbol;
+            }
+            if (perfect) {
+                return multiplier;
+            }
+        }
+        throw new AssertionError("No perfect hash for the symbol table.");
+    }
+
+    /**
+     * An open addressing table interning identifier names, looked up directly
+     * from the source characters so a name already seen is not copied again.
+     * A table is not thread safe; each lexer owns its own. The tables of
+     * lexers running concurrently over one input share their names through a
+     * concurrent map, which is only consulted the first time a table sees a
+     * name.
+     */
+    public static final class Table {
+
+        private final ConcurrentMap<String, String> shared;
+        private String[] entries = new String[256];
+        private int size = 0;
+
+        public Table() {
+            this(null);
+        }
+
+        /**
+         * Creates a table whose names are those of the given map, which is
+         * shared by other tables and to which the names first seen by this
+         * table are added.
+         */
+        public Table(ConcurrentMap<String, String> shared) {
+            this.shared = shared;
+        }
+
+        /**
+         * Returns the shared String for the characters of the text between
+         * start and start + length, creating it on first use.
+         */
+        public String intern(CharSequence text, int start, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + text.charAt(start + i);
+            }
+            int mask = entries.length - 1;
+            for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+                String entry = entries[slot];
+                if (entry == null) {
+                    entry = text.subSequence(start, start + length).toString();
+                    if (shared != null) {
+                        String name = shared.putIfAbsent(entry, entry);
+                        entry = name != null ? name : entry;
+                    }
+                    entries[slot] = entry;
+                    if (++size * 2 > entries.length) {
+                        grow();
+                    }
+                    return entry;
+                } else if (entry.hashCode() == hash && matches(entry, text, start, length)) {
+                    return entry;
+                }
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private static boolean matches(String entry, CharSequence text, int start, int length) {
+            if (entry.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (entry.charAt(i) != text.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private void grow() {
+            String[] old = entries;
+            entries = new String[old.length * 2];
+            int mask = entries.length - 1;
+            for (String entry : old) {
+                if (entry != null) {
+                    int slot = spread(entry.hashCode()) & mask;
+                    while (entries[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    entries[slot] = entry;
+                }
+            }
+        }
+
+    }
+
+}
@@ -1,5 +1,8 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
 public final class Token {
 
     public enum Type {
@@ -14,11 +17,23 @@ public final class Token {
     private final Type type;
     private final String literal;
     private final int index;
+    private final int symbol;
+    private Object value;
 
     public Token(Type type, String literal, int index) {
+        this(type, literal, index, type == Type.IDENTIFIER || type == Type.OPERATOR ? Symbol.lookup(literal) : Symbol.NONE, null);
+    }
+
+    /**
+     * Creates a token whose {@link Symbol} and literal value were already
+     * resolved by the lexer. A null value is decoded on first use.
+     */
+    Token(Type type, String literal, int index, int symbol, Object value) {
         this.type = type;
         this.literal = literal;
         this.index = index;
+        this.symbol = symbol;
+        this.value = value;
     }
 
     public Type getType() {
@@ -33,6 +48,113 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns the keyword or operator this token spells, or {@link
+     * Symbol#NONE} for other identifiers, operators and literals.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Returns this token moved by the given number of characters, sharing its
+     * literal and value.
+     */
+    Token shift(int delta) {
+        return new Token(type, literal, index + delta, symbol, value);
+    }
+
+    /**
+     * Returns the value of an integer, decimal, character or string token as
+     * the {@link BigInteger}, {@link BigDecimal}, {@link Character} or
+     * unescaped {@link String} it denotes, or null for other tokens.
+     */
+    public Object getValue() {
+        if (value == null && type != Type.IDENTIFIER && type != Type.OPERATOR) {
+            value = decode(type, literal, 0, literal.length());
+        }
+        return value;
+    }
+
+    /**
+     * Decodes the value of a literal token spanning the characters of the text
+     * between start and start + length. Integers and decimals of up to 18
+     * digits are accumulated in a long, and strings without escapes are copied
+     * directly.
+     */
+    static Object decode(Type type, CharSequence text, int start, int length) {
+        switch (type) {
+            case INTEGER: {
+                long unscaled = parseDigits(text, start, length);
+                return unscaled != Long.MIN_VALUE ? BigInteger.valueOf(unscaled)
+                        : new BigInteger(text.subSequence(start, start + length).toString());
+            }
+            case DECIMAL: {
+                long unscaled = parseDigits(text, start, length);
+                if (unscaled == Long.MIN_VALUE) {
+                    return new BigDecimal(text.subSequence(start, start + length).toString());
+                }
+                int point = start;
+                while (text.charAt(point) != '.') {
+                    point++;
+                }
+                return BigDecimal.valueOf(unscaled, start + length - point - 1);
+            }
+            case CHARACTER:
+                return unescape(text, start + 1, length - 2).charAt(0);
+            case STRING:
+                return unescape(text, start + 1, length - 2);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Accumulates the digits of a number, skipping a sign and decimal point,
+     * or returns {@link Long#MIN_VALUE} if there are too many to fit.
+     */
+    private static long parseDigits(CharSequence text, int start, int length) {
+        boolean negative = text.charAt(start) == '-';
+        int i = negative || text.charAt(start) == '+' ? start + 1 : start;
+        long result = 0;
+        int digits = 0;
+        for (; i < start + length; i++) {
+            char c = text.charAt(i);
+            if (c != '.') {
+                if (++digits > 18) {
+                    return Long.MIN_VALUE;
+                }
+                result = result * 10 + (c - '0');
+            }
+        }
+        return negative ? -result : result;
+    }
+
+    private static String unescape(CharSequence text, int start, int length) {
+        int escape = start;
+        while (escape < start + length && text.charAt(escape) != '\\') {
+            escape++;
+        }
+        if (escape == start + length) {
+            return text.subSequence(start, start + length).toString();
+        }
+        StringBuilder builder = new StringBuilder(length).append(text, start, escape);
+        for (int i = escape; i < start + length; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                switch (text.charAt(++i)) {
+                    case 'b': c = '\b'; break;
+                    case 'n': c = '\n'; break;
+                    case 'r': c = '\r'; break;
+                    case 't': c = '\t'; break;
+                    default: c = text.charAt(i);
+                }
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
@@ -0,0 +1,164 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A compact, struct-of-arrays representation of a lexed source. Each token is
+ * stored as a type ordinal, a {@link Symbol}, a start offset and a length in
+ * primitive arrays, and literals are only copied out of the source when
+ * {@link #getLiteral(int)} (or {@link #get(int)}) is called for that token.
+ *
+ * Use {@link Lexer#lexBuffer()} to create a buffer, {@link
+ * Parser#Parser(TokenBuffer)} to parse it directly, and {@link #asList()} where
+ * a {@code List<Token>} is needed.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final String source;
+    private byte[] types;
+    private byte[] symbols;
+    private int[] starts;
+    private int[] lengths;
+    private int size = 0;
+    private LineMap lines;
+
+    public TokenBuffer(String source) {
+        this(source, 16);
+    }
+
+    public TokenBuffer(String source, int capacity) {
+        this.source = source;
+        this.types = new byte[Math.max(capacity, 1)];
+        this.symbols = new byte[types.length];
+        this.starts = new int[types.length];
+        this.lengths = new int[types.length];
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the line map recorded while lexing the source, or null.
+     */
+    public LineMap getLineMap() {
+        return lines;
+    }
+
+    void setLineMap(LineMap lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * Appends a token covering {@code length} characters of the source from
+     * {@code start}.
+     */
+    public void add(Token.Type type, int start, int length) {
+        if (size == types.length) {
+            int capacity = types.length * 2;
+            types = Arrays.copyOf(types, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        if (type == Token.Type.IDENTIFIER || type == Token.Type.OPERATOR) {
+            symbols[size] = (byte) Symbol.lookup(source, start, length);
+        }
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    public Token.Type getType(int i) {
+        return TYPES[types[check(i)]];
+    }
+
+    public int getSymbol(int i) {
+        return symbols[check(i)];
+    }
+
+    public int getIndex(int i) {
+        return starts[check(i)];
+    }
+
+    public int getLength(int i) {
+        return lengths[check(i)];
+    }
+
+    /**
+     * Materializes the literal of the token, copying it out of the source
+     * unless the token is a keyword or operator with a canonical text.
+     */
+    public String getLiteral(int i) {
+        check(i);
+        if (symbols[i] != Symbol.NONE) {
+            return Symbol.text(symbols[i]);
+        }
+        return source.substring(starts[i], starts[i] + lengths[i]);
+    }
+
+    /**
+     * Decodes the value of the token as {@link Token#getValue()} does, reading
+     * directly from the source.
+     */
+    public Object getValue(int i) {
+        check(i);
+        return Token.decode(TYPES[types[i]], source, starts[i], lengths[i]);
+    }
+
+    /**
+     * Returns true if the literal of the token equals the given string,
+     * without materializing the literal.
+     */
+    public boolean literalEquals(int i, String literal) {
+        check(i);
+        return lengths[i] == literal.length() && source.regionMatches(starts[i], literal, 0, lengths[i]);
+    }
+
+    /**
+     * Materializes the token as a {@link Token} object.
+     */
+    public Token get(int i) {
+        return new Token(getType(i), getLiteral(i), starts[i], symbols[i], null);
+    }
+
+    /**
+     * Returns a read-only list view of the buffer, materializing each token as
+     * it is accessed.
+     */
+    public List<Token> asList() {
+        return new TokenList();
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+        return i;
+    }
+
+    private final class TokenList extends AbstractList<Token> implements RandomAccess {
+
+        @Override
+        public Token get(int index) {
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
+}
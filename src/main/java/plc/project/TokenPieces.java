@@ -0,0 +1,93 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read-only list of tokens made of slices of other token lists, as returned
+ * by {@link Lexer#relex}. Each slice is shifted by the change in length of the
+ * edits before it, which is only applied when a token is read, so the tokens
+ * before and after an edit are shared with the previous list rather than
+ * copied or shifted. A slice of a piece list is taken from its own slices, so
+ * slices never nest and each edit adds at most two of them.
+ *
+ * The lists the slices are taken from must not be modified afterwards.
+ */
+final class TokenPieces extends AbstractList<Token> implements RandomAccess {
+
+    private final List<List<Token>> lists = new ArrayList<>();
+    private int[] froms = new int[4];
+    private int[] deltas = new int[4];
+    //The number of tokens up to the end of each slice
+    private int[] ends = new int[4];
+    private int size = 0;
+
+    /**
+     * Appends the tokens of the list from one index up to another, with their
+     * indexes shifted by the delta.
+     */
+    TokenPieces add(List<Token> tokens, int from, int to, int delta) {
+        if (!(tokens instanceof TokenPieces)) {
+            append(tokens, from, to, delta);
+            return this;
+        }
+        TokenPieces pieces = (TokenPieces) tokens;
+        for (int piece = 0, first = 0; piece < pieces.lists.size() && first < to; first = pieces.ends[piece++]) {
+            int low = Math.max(from, first);
+            int high = Math.min(to, pieces.ends[piece]);
+            append(pieces.lists.get(piece), pieces.froms[piece] + low - first, pieces.froms[piece] + high - first, pieces.deltas[piece] + delta);
+        }
+        return this;
+    }
+
+    private void append(List<Token> tokens, int from, int to, int delta) {
+        if (from >= to) {
+            return;
+        }
+        //Extend the last slice where the two are adjacent in the same list
+        int last = lists.size() - 1;
+        if (last >= 0 && lists.get(last) == tokens && deltas[last] == delta
+                && froms[last] + ends[last] - (last == 0 ? 0 : ends[last - 1]) == from) {
+            ends[last] += to - from;
+        } else {
+            if (lists.size() == ends.length) {
+                froms = Arrays.copyOf(froms, ends.length * 2);
+                deltas = Arrays.copyOf(deltas, ends.length * 2);
+                ends = Arrays.copyOf(ends, ends.length * 2);
+            }
+            froms[lists.size()] = from;
+            deltas[lists.size()] = delta;
+            ends[lists.size()] = size + to - from;
+            lists.add(tokens);
+        }
+        size += to - from;
+    }
+
+    @Override
+    public Token get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        int low = 0;
+        int high = lists.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        Token token = lists.get(low).get(froms[low] + index - (low == 0 ? 0 : ends[low - 1]));
+        return deltas[low] == 0 ? token : token.shift(deltas[low]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,31 @@
+package plc.project;
+
+import java.util.stream.IntStream;
+
+/**
+ * Compares analyzing a large generated program in place against analyzing it
+ * into an {@link AnalysisResult}, and the throughput of analyzing one shared
+ * AST on every core at once, which only the latter allows.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=AnalysisResultBenchmark [--args="<chars>"]}
+ */
+final class AnalysisResultBenchmark {
+
+    public static void main(String[] args) {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 4_000_000));
+        Ast.Source ast = new Parser(new Lexer(input).lexBuffer()).parseSource();
+        int workers = Runtime.getRuntime().availableProcessors();
+        System.out.println("Input: " + input.length() + " chars, " + workers + " workers");
+
+        Bench.Result inPlace = Bench.measure("in place", 5, 10, () -> new Analyzer(new Scope(null)).visit(ast));
+        Bench.Result result = Bench.measure("result", 5, 10, () -> new Analyzer(new Scope(null), new AnalysisResult()).visit(ast));
+        Bench.Result shared = Bench.measure("shared", 3, 5, () -> IntStream.range(0, workers).parallel()
+                .forEach(i -> new Analyzer(new Scope(null), new AnalysisResult()).visit(ast)));
+        for (Bench.Result r : new Bench.Result[] {inPlace, result, shared}) {
+            System.out.printf("%-10s %8.2f ms %8.1f MB allocated%n", r.name, r.millis(), r.bytes / 1e6);
+        }
+        System.out.printf("shared throughput: %.1f analyses/s vs %.1f in place%n",
+                workers * 1e9 / shared.nanos, 1e9 / inPlace.nanos);
+    }
+
+}
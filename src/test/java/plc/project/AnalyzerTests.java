@@ -1,16 +1,24 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -1117,6 +1125,117 @@ public final class AnalyzerTests {
         );
     }
 
+    @Test
+    public void testResult() {
+        String input = Corpus.program(5);
+        Ast.Source annotated = parse(input);
+        new Analyzer(new Scope(null)).visit(annotated);
+        Ast.Source ast = parse(input);
+        AnalysisResult result = new AnalysisResult();
+        new Analyzer(new Scope(null), result).visit(ast);
+        //Annotations are part of equality, so an annotated AST would differ
+        Assertions.assertEquals(parse(input), ast);
+        Assertions.assertEquals(generate(annotated, null), generate(ast, result));
+    }
+
+    @Test
+    public void testResultScopes() {
+        // x + x
+        Ast.Expression.Access access = new Ast.Expression.Access(Optional.empty(), "x");
+        Ast.Expression.Binary ast = new Ast.Expression.Binary("+", access, access);
+        Scope integers = new Scope(null);
+        integers.defineVariable("x", "x", Environment.Type.INTEGER, true, Environment.NIL);
+        Scope decimals = new Scope(null);
+        decimals.defineVariable("x", "x", Environment.Type.DECIMAL, true, Environment.NIL);
+        AnalysisResult integer = new AnalysisResult();
+        AnalysisResult decimal = new AnalysisResult();
+        new Analyzer(integers, integer).visit(ast);
+        new Analyzer(decimals, decimal).visit(ast);
+        Assertions.assertEquals(Environment.Type.INTEGER, integer.getType(ast));
+        Assertions.assertEquals(Environment.Type.DECIMAL, decimal.getType(ast));
+        Assertions.assertEquals(decimals.lookupVariable("x"), decimal.getVariable(access));
+        Assertions.assertThrows(IllegalStateException.class, ast::getType);
+        Assertions.assertThrows(IllegalStateException.class, access::getVariable);
+    }
+
+    @Test
+    public void testResultConcurrent() {
+        String input = Corpus.program(20);
+        Ast.Source annotated = parse(input);
+        new Analyzer(new Scope(null)).visit(annotated);
+        String expected = generate(annotated, null);
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setPool(new AstPool());
+        Ast.Source ast = parser.parseSource();
+        List<String> generated = IntStream.range(0, 16).parallel().mapToObj(i -> {
+            AnalysisResult result = new AnalysisResult();
+            new Analyzer(new Scope(null), result).visit(ast);
+            return generate(ast, result);
+        }).collect(Collectors.toList());
+        generated.forEach(code -> Assertions.assertEquals(expected, code));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    public void testAnalyzeParallel(String test, String input) {
+        String expected = outcome(input, null, (analyzer, ast) -> analyzer.visit(ast));
+        Assertions.assertEquals(expected, outcome(input, null, (analyzer, ast) -> analyzer.visitParallel(ast, ForkJoinPool.commonPool())));
+        Assertions.assertEquals(expected, outcome(input, new AnalysisResult(), (analyzer, ast) -> analyzer.visitParallel(ast, ForkJoinPool.commonPool())));
+    }
+
+    private static Stream<Arguments> testAnalyzeParallel() {
+        String main = "FUN main(): Integer DO RETURN 0; END\n";
+        return Stream.of(
+                Arguments.of("Program", Corpus.program(30)),
+                Arguments.of("Main Only", main),
+                Arguments.of("Missing Main", "FUN f(): Integer DO RETURN 1; END"),
+                Arguments.of("Global Error", "VAL x: Integer = TRUE;\n" + main),
+                Arguments.of("Forward Call", "FUN f(): Integer DO RETURN g(); END\nFUN g(): Integer DO RETURN 1; END\n" + main),
+                Arguments.of("Recursive Call", "FUN f(): Integer DO RETURN f(); END\n" + main),
+                Arguments.of("Earlier Parameter", "FUN f(x: Integer): Integer DO RETURN x; END\nFUN g(): Integer DO RETURN x; END\n" + main),
+                Arguments.of("Later Parameter", "FUN f(): Integer DO RETURN y; END\nFUN g(y: Integer): Integer DO RETURN y; END\n" + main),
+                Arguments.of("Body Error Before Signature Error", "FUN f(): Integer DO RETURN TRUE; END\nFUN g() DO END\nFUN g() DO END\n" + main),
+                Arguments.of("Signature Error Before Body Error", "FUN f() DO END\nFUN f() DO END\nFUN g(): Integer DO RETURN TRUE; END\n" + main),
+                Arguments.of("Several Body Errors", "FUN f(): Integer DO RETURN TRUE; END\nFUN g(): Integer DO RETURN 'c'; END\n" + main)
+        );
+    }
+
+    @Test
+    public void testAnalyzeParallelScope() {
+        // FUN f(): Integer DO RETURN g(); END, with g/0 in the parent scope
+        String input = "FUN f(): Integer DO RETURN g(); END\nFUN g(): Decimal DO RETURN 1.0; END\nFUN main(): Integer DO RETURN f(); END";
+        Scope parent = new Scope(null);
+        parent.defineFunction("g", "g", Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL);
+        Ast.Source ast = parse(input);
+        new Analyzer(parent).visitParallel(ast, ForkJoinPool.commonPool());
+        //The body of f resolves the parent's g, as g is only declared after it
+        Assertions.assertEquals(parent.lookupFunction("g", 0), ((Ast.Expression.Function) ((Ast.Statement.Return) ast.getFunctions().get(0).getStatements().get(0)).getValue()).getFunction());
+    }
+
+    /**
+     * Returns the code generated from the input once analyzed, or the message
+     * of the exception analysis threw.
+     */
+    private static String outcome(String input, AnalysisResult result, BiConsumer<Analyzer, Ast.Source> analysis) {
+        Ast.Source ast = parse(input);
+        try {
+            analysis.accept(new Analyzer(new Scope(null), result), ast);
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+        return generate(ast, result);
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+    private static String generate(Ast ast, AnalysisResult result) {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer), result).visit(ast);
+        return writer.toString();
+    }
+
     /**
      * Helper function for tests. If {@param expected} is {@code null}, analysis
      * is expected to throw a {@link RuntimeException}.
@@ -0,0 +1,59 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Compares lexing and parsing a source file against getting its AST from an
+ * {@link AstCache}, both on a miss, which also stores the AST, and on a hit.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=AstCacheBenchmark [--args="<chars>"]}
+ */
+final class AstCacheBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 4_000_000));
+        Path directory = Files.createTempDirectory("benchmark");
+        Path path = Files.write(directory.resolve("input.plc"), input.getBytes(StandardCharsets.UTF_8));
+        try {
+            AstCache cache = new AstCache(directory.resolve("cache"));
+            Path file = directory.resolve("cache").resolve(AstCache.key(Files.readAllBytes(path)) + ".ast");
+            Bench.Result cold = Bench.measure("lex+parse", 5, 10, () -> {
+                try {
+                    new Parser(new Lexer(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)).lexBuffer()).parseSource();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Bench.Result miss = Bench.measure("miss", 5, 10, () -> {
+                try {
+                    Files.deleteIfExists(file);
+                    cache.parse(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Bench.Result hit = Bench.measure("hit", 5, 10, () -> {
+                try {
+                    cache.parse(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            System.out.println("Input: " + input.length() + " chars, cache file " + Files.size(file) + " bytes");
+            for (Bench.Result result : new Bench.Result[] {cold, miss, hit}) {
+                System.out.printf("%-10s %8.2f ms%n", result.name, result.millis());
+            }
+            System.out.printf("hit speedup %.1fx%n", cold.nanos / hit.nanos);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+}
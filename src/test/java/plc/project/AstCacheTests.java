@@ -0,0 +1,111 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Tests that ASTs survive encoding, and that {@link AstCache} returns the
+ * stored AST of a source and replaces files it cannot use.
+ */
+final class AstCacheTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testEncode(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, AstCache.decode(ByteBuffer.wrap(AstCache.encode(expected))));
+    }
+
+    private static Stream<Arguments> testEncode() {
+        return Stream.of(
+                Arguments.of("Program", Corpus.program(20)),
+                Arguments.of("Empty", ""),
+                Arguments.of("Literals", "LIST xs: Any = [NIL, TRUE, FALSE, 0, -1, 123456789012345678901234567890, 0.0, -1.50, "
+                        + "3.14159265358979323846264338327950288, 'a', '\\n', '\u00e9', \"\", \"\\\"\u00e9\ud83d\ude00\\t\"];"),
+                Arguments.of("Statements", "VAR x: Integer; VAL y: Integer = (1 + 2) * f(x, xs[0]);\n"
+                        + "FUN f(a: Integer, b: Integer) DO LET c; LET d: Integer; LET e = a; a = b;\n"
+                        + "SWITCH a CASE 1: IF b DO RETURN a; ELSE WHILE c DO f(); END END DEFAULT END END")
+        );
+    }
+
+    @Test
+    void testHeader() {
+        byte[] bytes = AstCache.encode(new Ast.Source(Arrays.asList(), Arrays.asList()));
+        bytes[7]++;
+        Assertions.assertNull(AstCache.decode(ByteBuffer.wrap(bytes)));
+        Assertions.assertNull(AstCache.decode(ByteBuffer.wrap(new byte[0])));
+    }
+
+    @Test
+    void testCacheHit(@TempDir Path directory) throws IOException {
+        String input = Corpus.program(5);
+        AstCache cache = new AstCache(directory);
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, cache.parse(input));
+        Path file = directory.resolve(AstCache.key(input.getBytes(StandardCharsets.UTF_8)) + ".ast");
+        Assertions.assertTrue(Files.exists(file));
+        //A hit is decoded from the file without parsing the source
+        Ast.Source other = new Parser(new Lexer("FUN main() DO END").lex()).parseSource();
+        Files.write(file, AstCache.encode(other));
+        Assertions.assertEquals(other, new AstCache(directory).parse(input));
+        Path path = Files.write(directory.resolve("input.plc"), input.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(other, cache.parse(path));
+    }
+
+    @Test
+    void testCacheInvalid(@TempDir Path directory) throws IOException {
+        String input = Corpus.program(5);
+        AstCache cache = new AstCache(directory);
+        Ast.Source expected = cache.parse(input);
+        Path file = directory.resolve(AstCache.key(input.getBytes(StandardCharsets.UTF_8)) + ".ast");
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] version = bytes.clone();
+        version[7]++;
+        for (byte[] invalid : new byte[][] {version, Arrays.copyOf(bytes, bytes.length / 2), Arrays.copyOf(bytes, bytes.length + 1), new byte[0]}) {
+            Files.write(file, invalid);
+            Assertions.assertEquals(expected, cache.parse(input));
+            Assertions.assertArrayEquals(bytes, Files.readAllBytes(file));
+        }
+    }
+
+    @Test
+    void testCacheCorrupt(@TempDir Path directory) throws IOException {
+        String input = Corpus.program(5);
+        AstCache cache = new AstCache(directory);
+        Ast.Source expected = cache.parse(input);
+        Path file = directory.resolve(AstCache.key(input.getBytes(StandardCharsets.UTF_8)) + ".ast");
+        byte[] bytes = Files.readAllBytes(file);
+        //A big integer literal whose size is a ten byte varint of -1
+        ByteBuffer corrupt = ByteBuffer.allocate(20).put(bytes, 0, 8).put((byte) 11).put((byte) 4);
+        for (int i = 0; i < 9; i++) {
+            corrupt.put((byte) 0xFF);
+        }
+        corrupt.put((byte) 0x01);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstCache.decode(ByteBuffer.wrap(corrupt.array())));
+        Files.write(file, corrupt.array());
+        Assertions.assertEquals(expected, cache.parse(input));
+        Assertions.assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+
+    @Test
+    void testCacheException(@TempDir Path directory) throws IOException {
+        AstCache cache = new AstCache(directory);
+        Assertions.assertThrows(ParseException.class, () -> cache.parse("FUN main() DO RETURN 0 END"));
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package plc.project;
+
+/**
+ * Compares parsing a large generated program with and without hash consing
+ * into an {@link AstPool}: the retained heap of the AST, the time to parse it,
+ * and the time to compare two parses of it for equality.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=AstPoolBenchmark [--args="<chars>"]}
+ */
+final class AstPoolBenchmark {
+
+    public static void main(String[] args) {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 8_000_000));
+        TokenBuffer tokens = new Lexer(input).lexBuffer();
+        System.out.println("Input: " + input.length() + " chars, " + tokens.size() + " tokens");
+
+        long base = Bench.usedHeap();
+        Ast.Source plain = new Parser(tokens).parseSource();
+        long plainHeap = Bench.usedHeap() - base;
+        AstPool pool = new AstPool();
+        base = Bench.usedHeap();
+        Ast.Source pooled = parse(tokens, pool);
+        long pooledHeap = Bench.usedHeap() - base;
+        System.out.printf("retained: plain %.1f MB, pooled %.1f MB including the pool of %d nodes%n",
+                plainHeap / 1e6, pooledHeap / 1e6, pool.size());
+
+        Bench.Result plainParse = Bench.measure("plain", 5, 10, () -> new Parser(tokens).parseSource());
+        Bench.Result pooledParse = Bench.measure("pooled", 5, 10, () -> parse(tokens, new AstPool()));
+        Ast.Source plainCopy = new Parser(tokens).parseSource();
+        Ast.Source pooledCopy = parse(tokens, pool);
+        Bench.Result plainEquals = Bench.measure("plain ==", 5, 10, () -> plain.equals(plainCopy));
+        Bench.Result pooledEquals = Bench.measure("pooled ==", 5, 10, () -> pooled.equals(pooledCopy));
+        for (Bench.Result result : new Bench.Result[] {plainParse, pooledParse, plainEquals, pooledEquals}) {
+            System.out.printf("%-10s %8.2f ms %8.1f bytes/token allocated%n", result.name, result.millis(), result.bytes / tokens.size());
+        }
+    }
+
+    private static Ast.Source parse(TokenBuffer tokens, AstPool pool) {
+        Parser parser = new Parser(tokens);
+        parser.setPool(pool);
+        return parser.parseSource();
+    }
+
+}
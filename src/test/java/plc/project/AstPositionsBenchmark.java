@@ -0,0 +1,47 @@
+package plc.project;
+
+/**
+ * Measures the cost of recording {@link AstPositions} while parsing a
+ * generated program, in both parser modes, against parsing without them, then
+ * also of indexing them with a first lookup, and the cost of a lookup.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=AstPositionsBenchmark [--args="<chars>"]}
+ */
+final class AstPositionsBenchmark {
+
+    public static void main(String[] args) {
+        int chars = Bench.intArg(args, 0, 4_000_000);
+        String input = Corpus.programOfSize(chars);
+        TokenBuffer tokens = new Lexer(input).lexBuffer();
+        System.out.println(input.length() + " chars, " + tokens.size() + " tokens");
+        for (boolean iterative : new boolean[] {false, true}) {
+            Bench.Result disabled = Bench.measure("disabled", 5, 10, () -> parse(tokens, iterative, null));
+            Bench.Result enabled = Bench.measure("enabled", 5, 10, () -> parse(tokens, iterative, new AstPositions()));
+            Bench.Result indexed = Bench.measure("indexed", 5, 10, () -> {
+                AstPositions positions = new AstPositions();
+                positions.contains(parse(tokens, iterative, positions));
+            });
+            System.out.println(iterative ? "iterative:" : "recursive:");
+            for (Bench.Result result : new Bench.Result[] {disabled, enabled, indexed}) {
+                System.out.printf("%-10s %8.2f ms %8.1f bytes/token allocated%n", result.name, result.millis(), result.bytes / tokens.size());
+            }
+        }
+        AstPositions positions = new AstPositions();
+        Ast.Source source = parse(tokens, false, positions);
+        long[] sum = new long[1];
+        Bench.Result lookup = Bench.measure("lookup", 5, 10, () -> {
+            for (Ast.Function function : source.getFunctions()) {
+                sum[0] += positions.getStart(function) + positions.getEnd(function);
+            }
+        });
+        System.out.printf("%d nodes, %.1f ns per lookup%n", positions.size(), lookup.nanos / source.getFunctions().size() / 2);
+    }
+
+    private static Ast.Source parse(TokenBuffer tokens, boolean iterative, AstPositions positions) {
+        Parser parser = new Parser(tokens);
+        parser.setIterative(iterative);
+        parser.setPositions(positions);
+        return parser.parseSource();
+    }
+
+}
@@ -0,0 +1,112 @@
+package plc.project;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * A small measurement harness shared by the benchmark mains. Each measurement
+ * runs the body for a number of warmup iterations, then reports the average
+ * wall time and the average bytes allocated by the calling thread over the
+ * measured iterations.
+ *
+ * Benchmarks are run with {@code gradle benchmark -PbenchmarkClass=<Class>}.
+ */
+final class Bench {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Bench() {}
+
+    static final class Result {
+
+        final String name;
+        final double nanos;
+        final double bytes;
+
+        private Result(String name, double nanos, double bytes) {
+            this.name = name;
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        double seconds() {
+            return nanos / 1e9;
+        }
+
+        double millis() {
+            return nanos / 1e6;
+        }
+
+    }
+
+    static Result measure(String name, int warmups, int iterations, Runnable body) {
+        for (int i = 0; i < warmups; i++) {
+            body.run();
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            body.run();
+        }
+        long nanos = System.nanoTime() - start;
+        bytes = allocatedBytes() - bytes;
+        return new Result(name, (double) nanos / iterations, (double) bytes / iterations);
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the calling thread.
+     */
+    static long allocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Returns the heap currently in use after requesting a full collection,
+     * which is precise enough to compare the retained size of data structures.
+     */
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the peak usage of the old generation while running the body,
+     * above its usage before. Data which stays live across collections is
+     * promoted there, so this approximates the peak retained heap of the body
+     * without sampling.
+     */
+    static long peakRetained(Runnable body) {
+        usedHeap();
+        long base = 0;
+        for (MemoryPoolMXBean pool : oldGenerations()) {
+            pool.resetPeakUsage();
+            base += pool.getUsage().getUsed();
+        }
+        body.run();
+        long peak = 0;
+        for (MemoryPoolMXBean pool : oldGenerations()) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak - base;
+    }
+
+    private static java.util.List<MemoryPoolMXBean> oldGenerations() {
+        java.util.List<MemoryPoolMXBean> pools = new java.util.ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && (pool.getName().contains("Old") || pool.getName().contains("Tenured"))) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    static int intArg(String[] args, int index, int fallback) {
+        return args.length > index ? Integer.parseInt(args[index]) : fallback;
+    }
+
+}
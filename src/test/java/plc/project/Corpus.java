@@ -0,0 +1,105 @@
+package plc.project;
+
+/**
+ * Generates synthetic but well formed programs for the equivalence tests and
+ * the benchmarks. Every generated program lexes, parses, analyzes and runs.
+ */
+final class Corpus {
+
+    private Corpus() {}
+
+    /**
+     * Returns a program with three globals, the given number of helper
+     * functions and a {@code main} function calling the last helper. Each
+     * helper uses every kind of token and statement once.
+     */
+    static String program(int functions) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("VAL limit: Integer = 100;\n");
+        builder.append("VAR total: Integer = 0;\n");
+        builder.append("LIST primes: Integer = [2, 3, 5, 7];\n");
+        for (int i = 0; i < functions; i++) {
+            builder.append("FUN f").append(i).append("(x").append(i).append(": Integer, y").append(i).append(": Integer): Integer DO\n");
+            builder.append("    LET a: Integer = x").append(i).append(" * 60 * 60 + y").append(i).append(" - 1;\n");
+            builder.append("    LET s: String = \"value \\\"").append(i).append("\\\"\\n\";\n");
+            builder.append("    LET c: Character = 'c';\n");
+            builder.append("    LET d: Decimal = 1.5 * 2.0 - 0.25;\n");
+            builder.append("    IF a > limit && TRUE DO\n");
+            builder.append("        a = a - primes[1];\n");
+            builder.append("    ELSE\n");
+            builder.append("        a = a + 2;\n");
+            builder.append("    END\n");
+            builder.append("    SWITCH c\n");
+            builder.append("        CASE 'a':\n");
+            builder.append("            a = 0;\n");
+            builder.append("        DEFAULT\n");
+            builder.append("            a = a + 1;\n");
+            builder.append("    END\n");
+            builder.append("    WHILE a > 1000 DO\n");
+            builder.append("        a = a / 2;\n");
+            builder.append("    END\n");
+            if (i > 0) {
+                builder.append("    a = a + f").append(i - 1).append("(1, a);\n");
+            }
+            builder.append("    RETURN a;\n");
+            builder.append("END\n");
+        }
+        builder.append("FUN main(): Integer DO\n");
+        if (functions > 0) {
+            builder.append("    print(f").append(functions - 1).append("(1, 2));\n");
+        }
+        builder.append("    RETURN 0;\n");
+        builder.append("END\n");
+        return builder.toString();
+    }
+
+    /**
+     * Returns roughly the given number of characters of statements dominated
+     * by long identifiers, for benchmarking identifier runs.
+     */
+    static String identifiers(int chars) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < chars; i++) {
+            builder.append("        total_of_all_values_").append(i).append(" = previous-running-total_").append(i)
+                    .append(" + current_element_value_in_list_").append(i % 97).append(";\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns roughly the given number of characters of statements dominated
+     * by long string and number literals, for benchmarking literal runs.
+     */
+    static String literals(int chars) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < chars; i++) {
+            builder.append("        print(\"The quick brown fox jumps over the lazy dog, line ").append(i)
+                    .append("\", 12345678901234567890").append(i).append(", -31415926535.8979323846").append(i).append(");\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns roughly the given number of characters of statements dominated
+     * by long chains of binary operators of every precedence, for
+     * benchmarking expression parsing.
+     */
+    static String expressions(int chars) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < chars; i++) {
+            builder.append("    total = a").append(i % 10).append(" * 60 + b / 2 - c ^ 2 < limit && x").append(i)
+                    .append(" != y || (p + q) * r > s - t == f(u * v, w[i + 1]) && total + 1 - z > 0;\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a program of roughly the given number of characters by
+     * generating enough helper functions.
+     */
+    static String programOfSize(int chars) {
+        int functions = Math.max(1, chars / program(1).length());
+        return program(functions);
+    }
+
+}
@@ -0,0 +1,27 @@
+package plc.project;
+
+import java.util.List;
+
+/**
+ * Measures parsing statements dominated by long chains of binary operators
+ * from already lexed tokens, reporting the time and the bytes allocated per
+ * token by the parser alone.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=ExpressionParserBenchmark [--args="<chars>"]}
+ */
+final class ExpressionParserBenchmark {
+
+    public static void main(String[] args) {
+        String input = "FUN main(): Integer DO\n" + Corpus.expressions(Bench.intArg(args, 0, 4_000_000)) + "    RETURN 0;\nEND\n";
+        List<Token> tokens = new Lexer(input).lex();
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        System.out.println("Input: " + input.length() + " chars, " + tokens.size() + " tokens");
+
+        Bench.Result list = Bench.measure("List<Token>", 5, 10, () -> new Parser(tokens).parseSource());
+        Bench.Result tokenBuffer = Bench.measure("TokenBuffer", 5, 10, () -> new Parser(buffer).parseSource());
+        for (Bench.Result result : new Bench.Result[] {list, tokenBuffer}) {
+            System.out.printf("%-12s %8.2f ms %8.1f bytes/token allocated%n", result.name, result.millis(), result.bytes / tokens.size());
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+package plc.project;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Compares the retained heap of a large program as a tree of {@link Ast}
+ * objects against a {@link FlatAst}, the cost of converting between them, and
+ * the time to count every node of each with a visitor.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=FlatAstBenchmark [--args="<chars>"]}
+ */
+final class FlatAstBenchmark {
+
+    public static void main(String[] args) {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 16_000_000));
+        TokenBuffer tokens = new Lexer(input).lexBuffer();
+        System.out.println("Input: " + input.length() + " chars, " + tokens.size() + " tokens");
+
+        long base = Bench.usedHeap();
+        Ast.Source parsed = new Parser(tokens).parseSource();
+        long tree = Bench.usedHeap() - base;
+        FlatAst flat = FlatAst.of(parsed);
+        parsed = null;
+        //Measured once the tree is gone, so the literals and names they share count too
+        long arena = Bench.usedHeap() - base;
+        System.out.printf("%d nodes, retained: tree %.1f MB, flat %.1f MB (%d ints)%n",
+                flat.size(), tree / 1e6, arena / 1e6, flat.getArenaSize());
+
+        Ast.Source source = new Parser(tokens).parseSource();
+        Bench.Result encode = Bench.measure("encode", 3, 5, () -> FlatAst.of(source));
+        Bench.Result decode = Bench.measure("decode", 3, 5, flat::toAst);
+        Bench.Result treeCount = Bench.measure("tree count", 5, 10, () -> new Counter().visit(source));
+        Bench.Result flatCount = Bench.measure("flat count", 5, 10, () -> new FlatCounter().visit(flat.cursor()));
+        for (Bench.Result result : new Bench.Result[] {encode, decode, treeCount, flatCount}) {
+            System.out.printf("%-10s %8.2f ms %8.1f bytes/node allocated%n", result.name, result.millis(), result.bytes / flat.size());
+        }
+        System.out.printf("traversal speedup: %.1fx%n", treeCount.nanos / flatCount.nanos);
+    }
+
+    /**
+     * Counts the nodes of a {@link FlatAst} through its cursor.
+     */
+    private static final class FlatCounter implements FlatAst.Visitor<Integer> {
+
+        @Override
+        public Integer visit(FlatAst.Cursor cursor) {
+            switch (cursor.getKind()) {
+                case FlatAst.SOURCE:
+                    return 1 + nodes(cursor, FlatAst.GLOBALS) + nodes(cursor, FlatAst.FUNCTIONS);
+                case FlatAst.GLOBAL:
+                case FlatAst.DECLARATION:
+                    return 1 + optional(cursor, FlatAst.VALUE);
+                case FlatAst.FUNCTION:
+                    return 1 + nodes(cursor, FlatAst.STATEMENTS);
+                case FlatAst.EXPRESSION_STATEMENT:
+                case FlatAst.GROUP:
+                    return 1 + cursor.visit(FlatAst.EXPRESSION, this);
+                case FlatAst.ASSIGNMENT:
+                    return 1 + cursor.visit(FlatAst.RECEIVER, this) + cursor.visit(FlatAst.VALUE, this);
+                case FlatAst.IF:
+                    return 1 + cursor.visit(FlatAst.CONDITION, this) + nodes(cursor, FlatAst.THEN_STATEMENTS) + nodes(cursor, FlatAst.ELSE_STATEMENTS);
+                case FlatAst.SWITCH:
+                    return 1 + cursor.visit(FlatAst.CONDITION, this) + nodes(cursor, FlatAst.CASES);
+                case FlatAst.CASE:
+                    return 1 + optional(cursor, FlatAst.VALUE) + nodes(cursor, FlatAst.STATEMENTS);
+                case FlatAst.WHILE:
+                    return 1 + cursor.visit(FlatAst.CONDITION, this) + nodes(cursor, FlatAst.STATEMENTS);
+                case FlatAst.RETURN:
+                    return 1 + cursor.visit(FlatAst.VALUE, this);
+                case FlatAst.LITERAL:
+                    return 1;
+                case FlatAst.BINARY:
+                    return 1 + cursor.visit(FlatAst.LEFT, this) + cursor.visit(FlatAst.RIGHT, this);
+                case FlatAst.ACCESS:
+                    return 1 + optional(cursor, FlatAst.OFFSET);
+                case FlatAst.FUNCTION_CALL:
+                    return 1 + nodes(cursor, FlatAst.ARGUMENTS);
+                case FlatAst.LIST:
+                    return 1 + nodes(cursor, FlatAst.VALUES);
+                default:
+                    throw new AssertionError();
+            }
+        }
+
+        private int nodes(FlatAst.Cursor cursor, int role) {
+            int count = 0;
+            int size = cursor.size(role);
+            for (int i = 0; i < size; i++) {
+                count += cursor.visit(role, i, this);
+            }
+            return count;
+        }
+
+        private int optional(FlatAst.Cursor cursor, int role) {
+            return cursor.has(role) ? cursor.visit(role, this) : 0;
+        }
+
+    }
+
+    /**
+     * Counts the nodes of a tree of {@link Ast} objects.
+     */
+    private static final class Counter implements Ast.Visitor<Integer> {
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            return 1 + nodes(ast.getGlobals()) + nodes(ast.getFunctions());
+        }
+
+        @Override
+        public Integer visit(Ast.Global ast) {
+            return 1 + optional(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Function ast) {
+            return 1 + nodes(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            return 1 + optional(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            return 1 + visit(ast.getReceiver()) + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            return 1 + visit(ast.getCondition()) + nodes(ast.getThenStatements()) + nodes(ast.getElseStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Switch ast) {
+            return 1 + visit(ast.getCondition()) + nodes(ast.getCases());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Case ast) {
+            return 1 + optional(ast.getValue()) + nodes(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            return 1 + visit(ast.getCondition()) + nodes(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            return 1 + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            return 1 + visit(ast.getLeft()) + visit(ast.getRight());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            return 1 + optional(ast.getOffset());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            return 1 + nodes(ast.getArguments());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.PlcList ast) {
+            return 1 + nodes(ast.getValues());
+        }
+
+        private int nodes(List<? extends Ast> nodes) {
+            int count = 0;
+            for (Ast node : nodes) {
+                count += visit(node);
+            }
+            return count;
+        }
+
+        private int optional(Optional<? extends Ast> node) {
+            return node.isPresent() ? visit(node.get()) : 0;
+        }
+
+    }
+
+}
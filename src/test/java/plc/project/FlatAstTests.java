@@ -0,0 +1,106 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+/**
+ * Tests that ASTs survive encoding into a {@link FlatAst}, and that a cursor
+ * reads the fields of each node.
+ */
+final class FlatAstTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRoundTrip(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, FlatAst.of(expected).toAst());
+    }
+
+    private static Stream<Arguments> testRoundTrip() {
+        return Stream.of(
+                Arguments.of("Program", Corpus.program(20)),
+                Arguments.of("Empty", ""),
+                Arguments.of("Literals", "LIST xs: Any = [NIL, TRUE, FALSE, 0, -1, 123456789012345678901234567890, 0.0, -1.50, 'a', \"\", \"s\"];"),
+                Arguments.of("Statements", "VAR x: Integer; VAL y: Integer = (1 + 2) * f(x, xs[0]);\n"
+                        + "FUN f(a: Integer, b: Integer) DO LET c; LET d: Integer; LET e = a; a = b;\n"
+                        + "SWITCH a CASE 1: IF b DO RETURN a; ELSE WHILE c DO f(); END END DEFAULT END END")
+        );
+    }
+
+    @Test
+    void testExpression() {
+        Ast.Expression expected = new Ast.Expression.Binary("+", new Ast.Expression.Literal(BigInteger.ONE), new Ast.Expression.Access(java.util.Optional.empty(), "x"));
+        FlatAst ast = FlatAst.of(expected);
+        Assertions.assertEquals(expected, ast.toAst());
+        Assertions.assertEquals(3, ast.size());
+        Assertions.assertEquals(FlatAst.BINARY, ast.getKind(ast.getRoot()));
+    }
+
+    @Test
+    void testCursor() {
+        String input = "VAR x: Integer = 1;\nFUN f(a: Integer): Integer DO IF a DO RETURN x + a; END END";
+        FlatAst ast = FlatAst.of(new Parser(new Lexer(input).lex()).parseSource());
+        FlatAst.Cursor cursor = ast.cursor();
+        Assertions.assertEquals(FlatAst.SOURCE, cursor.getKind());
+        Assertions.assertEquals(1, cursor.size(FlatAst.GLOBALS));
+        Assertions.assertEquals(BigInteger.ONE, cursor.visit(FlatAst.GLOBALS, 0, global -> {
+            Assertions.assertEquals("x", global.getString(FlatAst.NAME));
+            Assertions.assertEquals("Integer", global.getString(FlatAst.TYPE_NAME));
+            Assertions.assertTrue(global.getBoolean(FlatAst.MUTABLE));
+            return global.visit(FlatAst.VALUE, FlatAst.Cursor::getLiteral);
+        }));
+        cursor.visit(FlatAst.FUNCTIONS, 0, function -> {
+            Assertions.assertEquals("f", function.getString(FlatAst.NAME));
+            Assertions.assertEquals("a", function.getString(FlatAst.PARAMETERS, 0));
+            Assertions.assertEquals("Integer", function.getString(FlatAst.RETURN_TYPE_NAME));
+            return function.visit(FlatAst.STATEMENTS, 0, statement -> {
+                Assertions.assertEquals(FlatAst.IF, statement.getKind());
+                Assertions.assertEquals(0, statement.size(FlatAst.ELSE_STATEMENTS));
+                return statement.visit(FlatAst.THEN_STATEMENTS, 0, ret -> ret.visit(FlatAst.VALUE, binary -> {
+                    Assertions.assertEquals("+", binary.getString(FlatAst.OPERATOR));
+                    Assertions.assertEquals(Boolean.FALSE, binary.visit(FlatAst.LEFT, left -> left.has(FlatAst.OFFSET)));
+                    return null;
+                }));
+            });
+        });
+        //The cursor is back at the root after each visit
+        Assertions.assertEquals(ast.getRoot(), cursor.getNode());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> cursor.getString(FlatAst.NAME));
+    }
+
+    @Test
+    void testCursorSize() {
+        FlatAst ast = FlatAst.of(new Parser(new Lexer(Corpus.program(20)).lex()).parseSource());
+        Assertions.assertEquals(ast.size(), (int) count(ast.cursor()));
+    }
+
+    /**
+     * Counts the nodes below the cursor by visiting every field which holds
+     * nodes.
+     */
+    private static Integer count(FlatAst.Cursor cursor) {
+        int count = 1;
+        for (int role : new int[] {FlatAst.GLOBALS, FlatAst.FUNCTIONS, FlatAst.STATEMENTS, FlatAst.THEN_STATEMENTS,
+                FlatAst.ELSE_STATEMENTS, FlatAst.CASES, FlatAst.ARGUMENTS, FlatAst.VALUES}) {
+            if (cursor.hasField(role)) {
+                for (int i = 0; i < cursor.size(role); i++) {
+                    count += cursor.visit(role, i, FlatAstTests::count);
+                }
+            }
+        }
+        for (int role : new int[] {FlatAst.VALUE, FlatAst.EXPRESSION, FlatAst.RECEIVER, FlatAst.CONDITION,
+                FlatAst.LEFT, FlatAst.RIGHT, FlatAst.OFFSET}) {
+            if (cursor.hasField(role) && cursor.getKind() != FlatAst.LITERAL && cursor.has(role)) {
+                count += cursor.visit(role, FlatAstTests::count);
+            }
+        }
+        return count;
+    }
+
+}
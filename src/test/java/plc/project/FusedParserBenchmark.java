@@ -0,0 +1,32 @@
+package plc.project;
+
+/**
+ * Compares lexing into a {@code List<Token>} and then parsing it against
+ * parsing while pulling tokens from the {@link Lexer} through {@link
+ * Parser#Parser(Lexer)}, reporting the end to end time, the bytes allocated
+ * per token and the peak retained heap of each pipeline.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=FusedParserBenchmark [--args="<chars>"]}
+ */
+final class FusedParserBenchmark {
+
+    public static void main(String[] args) {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 8_000_000));
+        int tokens = new Lexer(input).lex().size();
+        System.out.println("Input: " + input.length() + " chars, " + tokens + " tokens");
+
+        Bench.Result list = Bench.measure("List<Token>", 5, 10, () -> new Parser(new Lexer(input).lex()).parseSource());
+        Bench.Result buffer = Bench.measure("TokenBuffer", 5, 10, () -> new Parser(new Lexer(input).lexBuffer()).parseSource());
+        Bench.Result fused = Bench.measure("fused", 5, 10, () -> new Parser(new Lexer(input)).parseSource());
+        for (Bench.Result result : new Bench.Result[] {list, buffer, fused}) {
+            System.out.printf("%-12s %8.2f ms %8.1f bytes/token allocated%n", result.name, result.millis(), result.bytes / tokens);
+        }
+
+        long listPeak = Bench.peakRetained(() -> new Parser(new Lexer(input).lex()).parseSource());
+        long bufferPeak = Bench.peakRetained(() -> new Parser(new Lexer(input).lexBuffer()).parseSource());
+        long fusedPeak = Bench.peakRetained(() -> new Parser(new Lexer(input)).parseSource());
+        System.out.printf("peak retained: List<Token> %.1f MB, TokenBuffer %.1f MB, fused %.1f MB%n",
+                listPeak / 1e6, bufferPeak / 1e6, fusedPeak / 1e6);
+    }
+
+}
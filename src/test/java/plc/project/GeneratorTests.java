@@ -1,6 +1,5 @@
 package plc.project;
 
-import com.sun.org.apache.xpath.internal.operations.Bool;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Tags;
 import org.junit.jupiter.api.Test;
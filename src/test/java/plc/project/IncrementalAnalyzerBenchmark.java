@@ -0,0 +1,58 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares analyzing a program of many functions from scratch against
+ * analyzing it again with an {@link IncrementalAnalyzer} after an edit to the
+ * body of one function, and after an edit to the signature of one, each with
+ * and without getting the merged result.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=IncrementalAnalyzerBenchmark [--args="<functions>"]}
+ */
+final class IncrementalAnalyzerBenchmark {
+
+    public static void main(String[] args) {
+        int functions = Bench.intArg(args, 0, 50_000);
+        Ast.Source source = parse(Corpus.program(functions));
+        int middle = functions / 2;
+        Ast.Source body = replace(source, middle, "FUN f" + middle + "(x" + middle + ": Integer, y" + middle + ": Integer): Integer DO RETURN y" + middle + "; END");
+        Ast.Source signature = replace(source, middle, "FUN f" + middle + "(x" + middle + ": Any, y" + middle + ": Integer): Integer DO RETURN y" + middle + "; END");
+        System.out.println("Input: " + functions + " functions");
+
+        Bench.Result full = Bench.measure("full", 3, 5, () -> new Analyzer(new Scope(null), new AnalysisResult()).visit(source));
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        analyzer.analyze(source);
+        //Each iteration edits the source, and the next one reverts the edit
+        Ast.Source[] sources = {body, source};
+        int[] next = {0};
+        Bench.Result bodyEdit = Bench.measure("body edit", 20, 100, () -> analyzer.analyze(sources[next[0]++ & 1]));
+        int checked = analyzer.getChecked();
+        Bench.Result bodyMerge = Bench.measure("body+merge", 20, 100, () -> {
+            analyzer.analyze(sources[next[0]++ & 1]);
+            analyzer.getResult();
+        });
+        sources[0] = signature;
+        Bench.Result signatureEdit = Bench.measure("signature", 3, 10, () -> analyzer.analyze(sources[next[0]++ & 1]));
+        Bench.Result signatureMerge = Bench.measure("sig+merge", 3, 10, () -> {
+            analyzer.analyze(sources[next[0]++ & 1]);
+            analyzer.getResult();
+        });
+        for (Bench.Result result : new Bench.Result[] {full, bodyEdit, bodyMerge, signatureEdit, signatureMerge}) {
+            System.out.printf("%-10s %10.3f ms%n", result.name, result.millis());
+        }
+        System.out.printf("bodies checked per body edit: %d, per signature edit: %d%n", checked, analyzer.getChecked());
+    }
+
+    private static Ast.Source replace(Ast.Source source, int index, String function) {
+        List<Ast.Function> functions = new ArrayList<>(source.getFunctions());
+        functions.set(index, parse(function).getFunctions().get(0));
+        return new Ast.Source(source.getGlobals(), functions);
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lexBuffer()).parseSource();
+    }
+
+}
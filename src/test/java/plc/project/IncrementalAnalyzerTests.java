@@ -0,0 +1,208 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests that an {@link IncrementalAnalyzer} analyzes each edit of a source
+ * like an {@link Analyzer} analyzing it from scratch, and that it only checks
+ * the bodies an edit affected.
+ */
+final class IncrementalAnalyzerTests {
+
+    @Test
+    void testUnchanged() {
+        Ast.Source source = parse(Corpus.program(10));
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        Assertions.assertEquals(11, analyzer.getChecked());
+        assertAnalysis(source, analyzer);
+        Assertions.assertEquals(0, analyzer.getChecked());
+    }
+
+    @Test
+    void testBodyEdit() {
+        Ast.Source source = parse(Corpus.program(10));
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        String function = "FUN f5(x5: Integer, y5: Integer): Integer DO RETURN x5 + f4(y5, total); END";
+        assertAnalysis(replace(source, 5, function), analyzer);
+        Assertions.assertEquals(1, analyzer.getChecked());
+    }
+
+    @Test
+    void testBodyError() {
+        Ast.Source source = parse(Corpus.program(10));
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        assertAnalysis(replace(source, 5, "FUN f5(x5: Integer, y5: Integer): Integer DO RETURN f6(x5, y5); END"), analyzer);
+        //The previous source is analyzed from scratch after an error
+        assertAnalysis(source, analyzer);
+        Assertions.assertEquals(11, analyzer.getChecked());
+    }
+
+    @Test
+    void testPooledEdit() {
+        //Literals shared by the pool are annotated by several bodies, and keep
+        //their annotations while any of them remains
+        AstPool pool = new AstPool();
+        Ast.Source source = parse(Corpus.program(10), pool);
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        for (int i = 0; i < 10; i++) {
+            Ast.Function function = parse("FUN f" + i + "(x" + i + ": " + (i % 2 == 0 ? "Integer" : "Any") + ", y" + i + ": Integer): Integer DO RETURN y" + i + " + 1; END", pool).getFunctions().get(0);
+            List<Ast.Function> functions = new ArrayList<>(source.getFunctions());
+            functions.set(i, function);
+            source = new Ast.Source(source.getGlobals(), functions);
+            assertAnalysis(source, analyzer);
+            AnalysisResult expected = new AnalysisResult();
+            new Analyzer(new Scope(null), expected).visit(source);
+            Assertions.assertEquals(expected.size(), analyzer.getResult().size());
+        }
+    }
+
+    @Test
+    void testSignatureEdit() {
+        Ast.Source source = parse(Corpus.program(10));
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        //No other body looks up the renamed parameters
+        assertAnalysis(replace(source, 5, "FUN f5(z5: Integer, w5: Integer): Integer DO RETURN z5 * w5; END"), analyzer);
+        Assertions.assertEquals(1, analyzer.getChecked());
+    }
+
+    @Test
+    void testDependentEdit() {
+        Ast.Source source = parse(Corpus.program(10));
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        //f6 calls f5, and must now fail on its Decimal result
+        Ast.Source edited = replace(source, 5, "FUN f5(x5: Integer, y5: Integer): Decimal DO RETURN 1.0; END");
+        assertAnalysis(edited, analyzer);
+        //f6 calls f5/2, which no longer exists
+        edited = replace(source, 5, "FUN f5(x5: Integer): Integer DO RETURN x5; END");
+        assertAnalysis(edited, analyzer);
+        assertAnalysis(source, analyzer);
+    }
+
+    @Test
+    void testDependentRecheck() {
+        Ast.Source source = parse(Corpus.program(10));
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        //f6 calls f5, so it is checked again against the new signature
+        assertAnalysis(replace(source, 5, "FUN f5(x5: Any, y5: Integer): Integer DO RETURN y5; END"), analyzer);
+        Assertions.assertEquals(2, analyzer.getChecked());
+        assertAnalysis(source, analyzer);
+        Assertions.assertEquals(2, analyzer.getChecked());
+    }
+
+    @Test
+    void testParameterRename() {
+        //Parameters are declared in the scope of the globals, so g sees x
+        Ast.Source source = parse("FUN f(x: Integer): Integer DO RETURN x; END\nFUN g(): Integer DO RETURN x; END\nFUN main(): Integer DO RETURN 0; END");
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        assertAnalysis(replace(source, 0, "FUN f(z: Integer): Integer DO RETURN z; END"), analyzer);
+    }
+
+    @Test
+    void testInsertBefore() {
+        //main calls the parent's g until a g is declared before it
+        Scope parent = new Scope(null);
+        parent.defineFunction("g", "g", Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL);
+        Ast.Source source = parse("FUN f(): Integer DO RETURN 1; END\nFUN main(): Integer DO RETURN g(); END");
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(parent);
+        assertAnalysis(source, parent, analyzer);
+        //Declared after main, the new g is not seen by it
+        assertAnalysis(insert(source, 2, "FUN g(): Decimal DO RETURN 1.0; END"), parent, analyzer);
+        assertAnalysis(insert(source, 1, "FUN g(): Decimal DO RETURN 1.0; END"), parent, analyzer);
+    }
+
+    @Test
+    void testReorder() {
+        Ast.Source source = parse("FUN f(): Integer DO RETURN 1; END\nFUN main(): Integer DO RETURN f(); END");
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        List<Ast.Function> functions = new ArrayList<>(source.getFunctions());
+        functions.add(functions.remove(0));
+        assertAnalysis(new Ast.Source(source.getGlobals(), functions), analyzer);
+    }
+
+    @Test
+    void testGlobalEdit() {
+        Ast.Source source = parse(Corpus.program(10));
+        IncrementalAnalyzer analyzer = new IncrementalAnalyzer(new Scope(null));
+        assertAnalysis(source, analyzer);
+        List<Ast.Global> globals = new ArrayList<>(source.getGlobals());
+        globals.set(0, parse("VAL limit: Integer = 200;").getGlobals().get(0));
+        assertAnalysis(new Ast.Source(globals, source.getFunctions()), analyzer);
+        Assertions.assertEquals(0, analyzer.getChecked());
+        globals = new ArrayList<>(globals);
+        globals.set(0, parse("VAL limit: Decimal = 200.0;").getGlobals().get(0));
+        assertAnalysis(new Ast.Source(globals, source.getFunctions()), analyzer);
+    }
+
+    /**
+     * Asserts that the incremental analyzer analyzes the source like an
+     * analyzer from scratch: generating the same code, or throwing the same
+     * exception.
+     */
+    private static void assertAnalysis(Ast.Source source, IncrementalAnalyzer analyzer) {
+        assertAnalysis(source, new Scope(null), analyzer);
+    }
+
+    private static void assertAnalysis(Ast.Source source, Scope parent, IncrementalAnalyzer analyzer) {
+        String expected;
+        try {
+            AnalysisResult result = new AnalysisResult();
+            new Analyzer(parent, result).visit(source);
+            expected = generate(source, result);
+        } catch (RuntimeException e) {
+            expected = e.getMessage();
+        }
+        String actual;
+        try {
+            analyzer.analyze(source);
+            actual = generate(source, analyzer.getResult());
+        } catch (RuntimeException e) {
+            actual = e.getMessage();
+        }
+        Assertions.assertEquals(expected, actual);
+    }
+
+    private static Ast.Source replace(Ast.Source source, int index, String function) {
+        List<Ast.Function> functions = new ArrayList<>(source.getFunctions());
+        functions.set(index, parse(function).getFunctions().get(0));
+        return new Ast.Source(source.getGlobals(), functions);
+    }
+
+    private static Ast.Source insert(Ast.Source source, int index, String function) {
+        List<Ast.Function> functions = new ArrayList<>(source.getFunctions());
+        functions.add(index, parse(function).getFunctions().get(0));
+        return new Ast.Source(source.getGlobals(), functions);
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+    private static Ast.Source parse(String input, AstPool pool) {
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setPool(pool);
+        return parser.parseSource();
+    }
+
+    private static String generate(Ast ast, AnalysisResult result) {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer), result).visit(ast);
+        return writer.toString();
+    }
+
+}
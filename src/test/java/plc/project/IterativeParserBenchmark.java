@@ -0,0 +1,56 @@
+package plc.project;
+
+/**
+ * Compares the recursive parser against {@link Parser#setIterative(boolean)}
+ * on a generated program, on operator heavy statements and on statements
+ * nesting blocks, groups, calls and indexes a hundred levels deep each.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=IterativeParserBenchmark [--args="<chars>"]}
+ */
+final class IterativeParserBenchmark {
+
+    public static void main(String[] args) {
+        int chars = Bench.intArg(args, 0, 4_000_000);
+        run("program", Corpus.programOfSize(chars));
+        run("expressions", "FUN main() DO\n" + Corpus.expressions(chars) + "END\n");
+        run("nested", "FUN main() DO\n" + nested(chars) + "END\n");
+    }
+
+    private static String nested(int chars) {
+        StringBuilder statement = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            statement.append("IF x DO ");
+        }
+        for (int i = 0; i < 100; i++) {
+            statement.append("(f(a[");
+        }
+        statement.append("1");
+        for (int i = 0; i < 100; i++) {
+            statement.append("]))");
+        }
+        statement.append(";");
+        for (int i = 0; i < 100; i++) {
+            statement.append(" END");
+        }
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < chars) {
+            builder.append(statement).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void run(String name, String input) {
+        TokenBuffer tokens = new Lexer(input).lexBuffer();
+        System.out.println(name + ": " + input.length() + " chars, " + tokens.size() + " tokens");
+        Bench.Result recursive = Bench.measure("recursive", 5, 10, () -> new Parser(tokens).parseSource());
+        Bench.Result iterative = Bench.measure("iterative", 5, 10, () -> {
+            Parser parser = new Parser(tokens);
+            parser.setIterative(true);
+            parser.parseSource();
+        });
+        for (Bench.Result result : new Bench.Result[] {recursive, iterative}) {
+            System.out.printf("%-10s %8.2f ms %8.1f bytes/token allocated%n", result.name, result.millis(), result.bytes / tokens.size());
+        }
+    }
+
+}
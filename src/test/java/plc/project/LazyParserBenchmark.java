@@ -0,0 +1,28 @@
+package plc.project;
+
+/**
+ * Compares parsing a large program with {@link Parser#parseSource()} against
+ * {@link Parser#parseSourceLazy()}, and the time to start it with {@link
+ * Interpreter} when {@code main} only calls a handful of its functions.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=LazyParserBenchmark [--args="<chars>"]}
+ */
+final class LazyParserBenchmark {
+
+    public static void main(String[] args) {
+        String program = Corpus.programOfSize(Bench.intArg(args, 0, 8_000_000));
+        String input = program.substring(0, program.indexOf("FUN main()")) + "FUN main(): Integer DO\n    RETURN f3(1, 2);\nEND\n";
+        TokenBuffer tokens = new Lexer(input).lexBuffer();
+        System.out.println("Input: " + input.length() + " chars, " + tokens.size() + " tokens");
+
+        Bench.Result eager = Bench.measure("eager", 5, 10, () -> new Parser(tokens).parseSource());
+        Bench.Result lazy = Bench.measure("lazy", 5, 10, () -> new Parser(tokens).parseSourceLazy());
+        Bench.Result eagerRun = Bench.measure("eager run", 5, 10, () -> new Interpreter(null).visit(new Parser(tokens).parseSource()));
+        Bench.Result lazyRun = Bench.measure("lazy run", 5, 10, () -> new Interpreter(null).visit(new Parser(tokens).parseSourceLazy()));
+        for (Bench.Result result : new Bench.Result[] {eager, lazy, eagerRun, lazyRun}) {
+            System.out.printf("%-10s %8.2f ms %8.1f bytes/token allocated%n", result.name, result.millis(), result.bytes / tokens.size());
+        }
+        System.out.printf("speedup: parse %.1fx, run %.1fx%n", eager.nanos / lazy.nanos, eagerRun.nanos / lazyRun.nanos);
+    }
+
+}
@@ -0,0 +1,26 @@
+package plc.project;
+
+/**
+ * Compares the table driven {@link Lexer} against the original {@link
+ * RegexLexer} on a generated program, reporting throughput in characters per
+ * second and the bytes allocated per token.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=LexerBenchmark [--args="<chars>"]}
+ */
+final class LexerBenchmark {
+
+    public static void main(String[] args) {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 250_000));
+        int tokens = new Lexer(input).lex().size();
+        System.out.println("Input: " + input.length() + " chars, " + tokens + " tokens");
+
+        Bench.Result regex = Bench.measure("regex", 2, 3, () -> new RegexLexer(input).lex());
+        Bench.Result dfa = Bench.measure("dfa", 20, 30, () -> new Lexer(input).lex());
+        for (Bench.Result result : new Bench.Result[] {regex, dfa}) {
+            System.out.printf("%-6s %12.0f chars/s %10.1f bytes/token %10.2f ms%n",
+                    result.name, input.length() / result.seconds(), result.bytes / tokens, result.millis());
+        }
+        System.out.printf("speedup %.1fx%n", regex.nanos / dfa.nanos);
+    }
+
+}
@@ -7,7 +7,9 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -299,6 +301,484 @@ public class LexerTests {
         testParseExceptions(input, index);
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testRegexEquivalence(String test, String input) {
+        Assertions.assertEquals(outcome(() -> new RegexLexer(input).lex()), outcome(() -> new Lexer(input).lex()));
+    }
+
+    private static Stream<Arguments> testRegexEquivalence() {
+        return Stream.of(
+                Arguments.of("Trailing Minus", "x -"),
+                Arguments.of("Minus Dot", "1 -.5"),
+                Arguments.of("Negative Zero Dot", "-0."),
+                Arguments.of("Negative Zero Digit", "-05"),
+                Arguments.of("Zero Dot", "0.x"),
+                Arguments.of("Integer Dot", "12.x"),
+                Arguments.of("Escaped Whitespace", "a\\n\\tb\\x"),
+                Arguments.of("Unicode", "\"h\u00e9llo\" '\u00e9' \u00e9"),
+                Arguments.of("Unterminated Escape", "\"abc\\"),
+                Arguments.of("Character Escape at End", "'\\"),
+                Arguments.of("Operators", "&&& ||| !== === = ! & | \\ _"),
+                Arguments.of("Program", Corpus.program(3)),
+                Arguments.of("Long Runs", Corpus.identifiers(1000) + Corpus.literals(1000) + "\"\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\"  \n\n\n\n\n\n\n\n\n x"),
+                Arguments.of("Run Into Error", "abcdefghijklmnopq \"abcdefghijklmnopq\n")
+        );
+    }
+
+    @Test
+    void testRegexEquivalenceRandom() {
+        java.util.Random random = new java.util.Random(42);
+        String alphabet = "aZb@_-0019.'\"\\&|!=\n\r\t\b ;(\u00e9";
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String input = builder.toString();
+            Assertions.assertEquals(outcome(() -> new RegexLexer(input).lex()), outcome(() -> new Lexer(input).lex()), input);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testStreaming(String test, String input, int window) {
+        Assertions.assertEquals(outcome(() -> new Lexer(input).lex()), outcome(() -> {
+            List<Token> tokens = new java.util.ArrayList<>();
+            new Lexer(new java.io.StringReader(input), window).tokens().forEachRemaining(tokens::add);
+            return tokens;
+        }));
+    }
+
+    private static Stream<Arguments> testStreaming() {
+        return Stream.of(
+                Arguments.of("Program", Corpus.program(20), 16),
+                Arguments.of("Token Longer Than Window", "x = \"a string longer than the window\";", 4),
+                Arguments.of("Lookahead Across Refill", "12.x -0.5 a&&b", 2),
+                Arguments.of("Error Offset", Corpus.program(5) + "\"unterminated", 32),
+                Arguments.of("Empty", "", 8),
+                Arguments.of("Runs Across Refill", Corpus.identifiers(1000) + Corpus.literals(1000), 13)
+        );
+    }
+
+    @Test
+    void testStreamingLines() {
+        //Streaming lexers only record lines when asked to
+        String input = Corpus.program(20);
+        Lexer lexer = new Lexer(new java.io.StringReader(input), 16);
+        lexer.tokens().forEachRemaining(token -> {});
+        Assertions.assertNull(lexer.getLineMap());
+        Lexer recording = new Lexer(new java.io.StringReader(input), 16, true);
+        recording.tokens().forEachRemaining(token -> {});
+        assertLines(LineMap.of(input), recording.getLineMap());
+        String invalid = input + "\n'ab'";
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(new java.io.StringReader(invalid), 16, true).tokens().forEachRemaining(token -> {}));
+        Assertions.assertEquals(LineMap.of(invalid).format(exception.getIndex()), exception.getLineMap().format(exception.getIndex()));
+        exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(new java.io.StringReader(invalid), 16).tokens().forEachRemaining(token -> {}));
+        Assertions.assertNull(exception.getLineMap());
+    }
+
+    @Test
+    void testStreamingChannel() {
+        String input = Corpus.program(10);
+        java.nio.channels.ReadableByteChannel channel = java.nio.channels.Channels.newChannel(
+                new java.io.ByteArrayInputStream(input.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+        List<Token> tokens = java.util.stream.StreamSupport.stream(new Lexer(channel).spliterator(), false)
+                .collect(java.util.stream.Collectors.toList());
+        Assertions.assertEquals(new Lexer(input).lex(), tokens);
+    }
+
+    @Test
+    void testTokenBuffer() {
+        String input = Corpus.program(10) + " 1.5 'c' \"s\" -1 && @x";
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        List<Token> tokens = new Lexer(input).lex();
+        Assertions.assertEquals(tokens, buffer.asList());
+        for (int i = 0; i < tokens.size(); i++) {
+            Assertions.assertEquals(tokens.get(i).getType(), buffer.getType(i));
+            Assertions.assertEquals(tokens.get(i).getIndex(), buffer.getIndex(i));
+            Assertions.assertTrue(buffer.literalEquals(i, tokens.get(i).getLiteral()));
+        }
+    }
+
+    @Test
+    void testTokenBufferException() {
+        Assertions.assertEquals(outcome(() -> new Lexer("x \"unterminated").lex()),
+                outcome(() -> new Lexer("x \"unterminated").lexBuffer().asList()));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input, int chunk) {
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            Assertions.assertEquals(outcome(() -> new Lexer(input).lex()), outcome(() -> new Lexer(input).lexParallel(pool, chunk)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelInterned() {
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            //Every line is a chunk of its own
+            List<Token> tokens = new Lexer("name = 1;\nname = name;\n").lexParallel(pool, 1);
+            Assertions.assertSame(tokens.get(0).getLiteral(), tokens.get(4).getLiteral());
+            Assertions.assertSame(tokens.get(0).getLiteral(), tokens.get(6).getLiteral());
+            Map<String, String> names = new HashMap<>();
+            for (Token token : new Lexer(Corpus.program(50)).lexParallel(pool, 64)) {
+                if (token.getType() == Token.Type.IDENTIFIER) {
+                    Assertions.assertSame(names.computeIfAbsent(token.getLiteral(), name -> name), token.getLiteral());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testParallel() {
+        return Stream.of(
+                Arguments.of("Program", Corpus.program(50), 64),
+                Arguments.of("Single Chunk", Corpus.program(2), 1 << 20),
+                Arguments.of("No Newlines", "LET x = 1; LET y = -0.5; x && y", 2),
+                Arguments.of("Lookahead Before Newline", "1.\n-\n0.5\n&\n&\n-0\n.5", 1),
+                Arguments.of("First Error Wins", Corpus.program(5) + "'ab'\n" + Corpus.program(5) + "\"unterminated\n", 16),
+                Arguments.of("Unterminated Before Cut", "x = \"abc\ny = 1;", 1),
+                Arguments.of("Empty", "", 4)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSymbol(String test, String input, int expected) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(expected, token.getSymbol());
+        Assertions.assertEquals(expected, Symbol.lookup(input));
+        if (expected != Symbol.NONE) {
+            Assertions.assertSame(Symbol.text(expected), token.getLiteral());
+        }
+    }
+
+    private static Stream<Arguments> testSymbol() {
+        return Stream.of(
+                Arguments.of("Keyword", "LET", Symbol.LET),
+                Arguments.of("Keyword Prefix", "LE", Symbol.NONE),
+                Arguments.of("Keyword Suffix", "LETS", Symbol.NONE),
+                Arguments.of("Lowercase Keyword", "let", Symbol.NONE),
+                Arguments.of("Same Ends", "LAT", Symbol.NONE),
+                Arguments.of("Identifier", "getName", Symbol.NONE),
+                Arguments.of("Single Operator", ";", Symbol.SEMICOLON),
+                Arguments.of("Double Operator", "!=", Symbol.NOT_EQUAL),
+                Arguments.of("Unknown Operator", "@", Symbol.NONE)
+        );
+    }
+
+    @Test
+    void testSymbolTable() {
+        for (int symbol = Symbol.LIST; symbol <= Symbol.POWER; symbol++) {
+            Assertions.assertEquals(symbol, Symbol.lookup(Symbol.text(symbol)), Symbol.text(symbol));
+        }
+        List<Token> tokens = new Lexer("name (name) name").lex();
+        Assertions.assertSame(tokens.get(0).getLiteral(), tokens.get(2).getLiteral());
+        Assertions.assertSame(tokens.get(0).getLiteral(), tokens.get(4).getLiteral());
+        TokenBuffer buffer = new Lexer("LET x = y;").lexBuffer();
+        Assertions.assertEquals(Symbol.LET, buffer.getSymbol(0));
+        Assertions.assertEquals(Symbol.NONE, buffer.getSymbol(1));
+        Assertions.assertEquals(Symbol.ASSIGN, buffer.getSymbol(2));
+        Assertions.assertEquals(Symbol.SEMICOLON, buffer.getSymbol(4));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testValue(String test, String input, Object expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexToken().getValue());
+        Assertions.assertEquals(expected, new Token(new Lexer(input).lexToken().getType(), input, 0).getValue());
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().getValue(0));
+    }
+
+    private static Stream<Arguments> testValue() {
+        return Stream.of(
+                Arguments.of("Integer", "-123", new java.math.BigInteger("-123")),
+                Arguments.of("Integer Long Fast Path", "999999999999999999", new java.math.BigInteger("999999999999999999")),
+                Arguments.of("Integer Overflow", "-92233720368547758070", new java.math.BigInteger("-92233720368547758070")),
+                Arguments.of("Decimal Scale", "1.50", new java.math.BigDecimal("1.50")),
+                Arguments.of("Decimal Negative", "-0.001", new java.math.BigDecimal("-0.001")),
+                Arguments.of("Decimal Overflow", "12345678901234567.890", new java.math.BigDecimal("12345678901234567.890")),
+                Arguments.of("Character", "'c'", 'c'),
+                Arguments.of("Character Escape", "'\\''", '\''),
+                Arguments.of("String", "\"abc\"", "abc"),
+                Arguments.of("String Escapes", "\"\\b\\n\\r\\t\\'\\\"\"", "\b\n\r\t'\""),
+                Arguments.of("Escaped Backslash", "\"\\\\n\"", "\\n"),
+                Arguments.of("Identifier", "abc", null)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testMapped(String test, byte[] input, @org.junit.jupiter.api.io.TempDir java.nio.file.Path directory) throws java.io.IOException {
+        java.nio.file.Path path = java.nio.file.Files.write(directory.resolve("input.plc"), input);
+        String decoded = new String(input, java.nio.charset.StandardCharsets.UTF_8);
+        Assertions.assertEquals(decoded, MappedSource.map(path).toString());
+        Assertions.assertEquals(decoded.chars().allMatch(c -> c < 128), MappedSource.map(path).isAscii());
+        Assertions.assertEquals(outcome(() -> new Lexer(decoded).lex()), outcome(() -> {
+            try {
+                return new Lexer(path).lex();
+            } catch (java.io.IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }));
+    }
+
+    private static Stream<Arguments> testMapped() {
+        String padding = String.join("", java.util.Collections.nCopies(MappedSource.PAGE - 2, " "));
+        return Stream.of(
+                Arguments.of("Ascii", utf8(Corpus.program(20))),
+                Arguments.of("Empty", new byte[0]),
+                Arguments.of("Multi-byte Page", utf8("LET s = \"\u00fc\u4e2d\";\n" + Corpus.program(20))),
+                Arguments.of("Multi-byte At Page End", utf8(padding + "\"\u00e9\" x")),
+                Arguments.of("Surrogate Pair Across Pages", utf8(padding + "\"\ud83d\ude00\" x")),
+                Arguments.of("Malformed", new byte[] {'"', 'a', (byte) 0xff, 'b', '"', ' ', 'x', (byte) 0xe4}),
+                Arguments.of("Error Index After Multi-byte", utf8("\"\u4e2d\u4e2d\" 'ab'"))
+        );
+    }
+
+    private static byte[] utf8(String input) {
+        return input.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String input, int offset, int removed, String inserted) {
+        String edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+        List<Token> previous = new Lexer(input).lex();
+        Assertions.assertEquals(outcome(() -> new Lexer(edited).lex()),
+                outcome(() -> new Lexer(edited).relex(previous, offset, removed, inserted)));
+    }
+
+    private static Stream<Arguments> testRelex() {
+        String program = Corpus.program(10);
+        return Stream.of(
+                Arguments.of("Insert Statement", program, program.indexOf("RETURN"), 0, "a = 1;\n    "),
+                Arguments.of("Remove Function", program, program.indexOf("FUN f3"), program.indexOf("FUN f4") - program.indexOf("FUN f3"), ""),
+                Arguments.of("Rename", program, program.indexOf("limit"), 5, "bound"),
+                Arguments.of("Join Identifiers", "abc def", 3, 1, ""),
+                Arguments.of("Split Identifier", "abcdef", 3, 0, " "),
+                Arguments.of("Lookahead Number", "x -y", 3, 1, "5"),
+                Arguments.of("Lookahead Operator", "a & b", 2, 1, "&"),
+                Arguments.of("Open String", "a = b; c = d;", 4, 0, "\""),
+                Arguments.of("Move String End", "a = \"b\" + \"c\";", 6, 1, ""),
+                Arguments.of("Append", "a = 1", 5, 0, ";"),
+                Arguments.of("Empty", "", 0, 0, "x"),
+                Arguments.of("Delete All", "LET x = 1;", 0, 10, "")
+        );
+    }
+
+    @Test
+    void testRelexRandom() {
+        java.util.Random random = new java.util.Random(42);
+        String alphabet = "ab@-01.9'\"&|= \n;\\n";
+        for (int i = 0; i < 20000; i++) {
+            String input = random(random, alphabet, 16);
+            Object previous = outcome(() -> new Lexer(input).lex());
+            if (!(previous instanceof List)) {
+                continue;
+            }
+            int offset = random.nextInt(input.length() + 1);
+            int removed = random.nextInt(input.length() - offset + 1);
+            String inserted = random(random, alphabet, 4);
+            String edited = input.substring(0, offset) + inserted + input.substring(offset + removed);
+            @SuppressWarnings("unchecked")
+            List<Token> tokens = (List<Token>) previous;
+            Assertions.assertEquals(outcome(() -> new Lexer(edited).lex()),
+                    outcome(() -> new Lexer(edited).relex(tokens, offset, removed, inserted)), input + " -> " + edited);
+            Lexer lexer = new Lexer(input);
+            lexer.lex();
+            Lexer relexer = new Lexer(edited);
+            try {
+                relexer.relex(tokens, lexer.getLineMap(), offset, removed, inserted);
+                assertLines(LineMap.of(edited), relexer.getLineMap());
+            } catch (ParseException e) {
+                Assertions.assertEquals(LineMap.of(edited).format(e.getIndex()), e.getLineMap().format(e.getIndex()));
+            }
+        }
+    }
+
+    @Test
+    void testRelexChained() {
+        java.util.Random random = new java.util.Random(7);
+        //Without quotes, no edit can make the input fail to lex
+        String input = Corpus.program(5).replaceAll(".*['\"].*\n", "");
+        Lexer lexer = new Lexer(input);
+        List<Token> tokens = lexer.lex();
+        LineMap lines = lexer.getLineMap();
+        for (int i = 0; i < 300; i++) {
+            int offset = random.nextInt(input.length() + 1);
+            int removed = random.nextInt(Math.min(8, input.length() - offset) + 1);
+            String inserted = random(random, "ab1 \n;=", 6);
+            input = input.substring(0, offset) + inserted + input.substring(offset + removed);
+            Lexer relexer = new Lexer(input);
+            tokens = relexer.relex(tokens, lines, offset, removed, inserted);
+            lines = relexer.getLineMap();
+            Assertions.assertEquals(new Lexer(input).lex(), tokens);
+            LineMap expected = LineMap.of(input);
+            assertLines(expected, lines);
+            for (int index = 0; index < input.length(); index++) {
+                Assertions.assertEquals(expected.getLine(index), lines.getLine(index));
+            }
+        }
+    }
+
+    @Test
+    void testRelexCost() {
+        //The same edit reads as much of a program ten times the size
+        for (int functions : new int[] {100, 1000}) {
+            String input = Corpus.program(functions);
+            Lexer lexer = new Lexer(input);
+            List<Token> tokens = lexer.lex();
+            int offset = input.indexOf("limit", input.length() / 2);
+            String edited = input.substring(0, offset) + "L" + input.substring(offset + 1);
+            int[] reads = new int[2];
+            List<Token> previous = new java.util.AbstractList<Token>() {
+                @Override
+                public Token get(int index) {
+                    reads[0]++;
+                    return tokens.get(index);
+                }
+
+                @Override
+                public int size() {
+                    return tokens.size();
+                }
+            };
+            CharSequence chars = new CharSequence() {
+                @Override
+                public char charAt(int index) {
+                    reads[1]++;
+                    return edited.charAt(index);
+                }
+
+                @Override
+                public int length() {
+                    return edited.length();
+                }
+
+                @Override
+                public CharSequence subSequence(int start, int end) {
+                    reads[1] += end - start;
+                    return edited.subSequence(start, end);
+                }
+            };
+            Lexer relexer = new Lexer(chars, 0, chars.length());
+            List<Token> relexed = relexer.relex(previous, lexer.getLineMap(), offset, 1, "L");
+            LineMap lines = relexer.getLineMap();
+            Assertions.assertTrue(reads[0] < 64, reads[0] + " tokens read");
+            Assertions.assertTrue(reads[1] < 256, reads[1] + " characters read");
+            Assertions.assertEquals(new Lexer(edited).lex(), relexed);
+            assertLines(LineMap.of(edited), lines);
+        }
+    }
+
+    @Test
+    void testRelexReusesTokens() {
+        String input = Corpus.program(10);
+        int offset = input.indexOf("FUN f5");
+        List<Token> previous = new Lexer(input).lex();
+        String edited = input.substring(0, offset) + "VAL z: Integer = 1;\n" + input.substring(offset);
+        List<Token> tokens = new Lexer(edited).relex(previous, offset, 0, "VAL z: Integer = 1;\n");
+        Assertions.assertSame(previous.get(0), tokens.get(0));
+        Assertions.assertSame(previous.get(previous.size() - 1).getLiteral(), tokens.get(tokens.size() - 1).getLiteral());
+    }
+
+    @Test
+    void testLineMap() {
+        String input = Corpus.program(20) + "\r\n\r\nx\\ny \n";
+        Lexer lexer = new Lexer(input);
+        lexer.lex();
+        LineMap lines = lexer.getLineMap();
+        int line = 1;
+        int column = 1;
+        for (int i = 0; i < input.length(); i++) {
+            Assertions.assertEquals(line + ":" + column, lines.format(i));
+            Assertions.assertEquals(line, lines.getLine(i));
+            Assertions.assertEquals(column, lines.getColumn(i));
+            if (input.charAt(i) == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        Assertions.assertEquals(line, lines.getLineCount());
+        assertLines(LineMap.of(input), lines);
+        assertLines(lines, new Lexer(input).lexBuffer().getLineMap());
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            Lexer parallel = new Lexer(input);
+            parallel.lexParallel(pool, 64);
+            assertLines(lines, parallel.getLineMap());
+        } finally {
+            pool.shutdown();
+        }
+        Lexer relexer = new Lexer(input);
+        relexer.relex(lexer.lex(), 0, 0, "");
+        assertLines(lines, relexer.getLineMap());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLineMapException(String test, String input, String location) {
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lex());
+        Assertions.assertEquals(location, exception.getLineMap().format(exception.getIndex()));
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lexParallel(pool, 1));
+            Assertions.assertEquals(location, exception.getLineMap().format(exception.getIndex()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testLineMapException() {
+        return Stream.of(
+                Arguments.of("First Line", "x 'ab'", "1:5"),
+                Arguments.of("Later Line", "x\ny\n  z \"abc", "3:9"),
+                Arguments.of("Newline In String", "x\n\"abc\ndef\"", "2:5"),
+                Arguments.of("Windows Newlines", "x\r\n\r\n'ab'", "3:3")
+        );
+    }
+
+    private static void assertLines(LineMap expected, LineMap actual) {
+        Assertions.assertEquals(expected.getLineCount(), actual.getLineCount());
+        for (int line = 1; line <= expected.getLineCount(); line++) {
+            Assertions.assertEquals(expected.getLineStart(line), actual.getLineStart(line));
+        }
+    }
+
+    private static String random(java.util.Random random, String alphabet, int maximum) {
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(maximum);
+        for (int j = 0; j < length; j++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the tokens produced by the lexer, or a description of the
+     * {@link ParseException} it threw, so two lexers can be compared.
+     */
+    static Object outcome(java.util.function.Supplier<List<Token>> lexer) {
+        try {
+            return lexer.get();
+        } catch (ParseException e) {
+            return e.getMessage() + "@" + e.getIndex();
+        }
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
@@ -0,0 +1,53 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares lexing a file by reading and decoding it into a String against
+ * lexing it through the memory mapped {@link Lexer#Lexer(Path)}, for a pure
+ * ASCII file and for one with a multi-byte character every few pages.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=MappedLexerBenchmark [--args="<chars>"]}
+ */
+final class MappedLexerBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String program = Corpus.programOfSize(Bench.intArg(args, 0, 4_000_000));
+        run("ascii", program);
+        run("mixed", program.replace("\"value ", "\"valu\u00e9 "));
+    }
+
+    private static void run(String name, String input) throws IOException {
+        Path path = Files.createTempFile("benchmark", ".plc");
+        try {
+            Files.write(path, input.getBytes(StandardCharsets.UTF_8));
+            int tokens = new Lexer(input).lex().size();
+            System.out.println(name + ": " + input.length() + " chars, " + tokens + " tokens");
+            Bench.Result string = Bench.measure("string", 5, 10, () -> {
+                try {
+                    new Lexer(new String(Files.readAllBytes(path), StandardCharsets.UTF_8)).lex();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Bench.Result mapped = Bench.measure("mapped", 5, 10, () -> {
+                try {
+                    new Lexer(path).lex();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            for (Bench.Result result : new Bench.Result[] {string, mapped}) {
+                System.out.printf("%-6s %12.0f chars/s %10.1f bytes/token %10.2f ms%n",
+                        result.name, input.length() / result.seconds(), result.bytes / tokens, result.millis());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+}
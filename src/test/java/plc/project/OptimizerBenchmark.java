@@ -0,0 +1,52 @@
+package plc.project;
+
+/**
+ * Compares interpreting a loop of constant expressions with and without an
+ * {@link Optimizer} pass first, and measures the pass itself on a large
+ * generated program.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=OptimizerBenchmark [--args="<iterations> <chars>"]}
+ */
+final class OptimizerBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = Bench.intArg(args, 0, 100_000);
+        Ast.Source loop = new Parser(new Lexer(loop(iterations)).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(loop);
+        Ast.Source optimizedLoop = (Ast.Source) new Optimizer(Optimizer.Backend.INTERPRETER).visit(loop);
+        System.out.println("Loop: " + iterations + " iterations");
+
+        String input = Corpus.programOfSize(Bench.intArg(args, 1, 4_000_000));
+        Ast.Source ast = new Parser(new Lexer(input).lexBuffer()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        System.out.println("Input: " + input.length() + " chars");
+
+        Bench.Result plain = Bench.measure("plain", 3, 5, () -> new Interpreter(new Scope(null)).visit(loop));
+        Bench.Result optimized = Bench.measure("optimized", 3, 5, () -> new Interpreter(new Scope(null)).visit(optimizedLoop));
+        Bench.Result pass = Bench.measure("pass", 5, 10, () -> new Optimizer(Optimizer.Backend.INTERPRETER).visit(ast));
+        for (Bench.Result result : new Bench.Result[] {plain, optimized, pass}) {
+            System.out.printf("%-10s %8.2f ms %8.1f MB allocated%n", result.name, result.millis(), result.bytes / 1e6);
+        }
+    }
+
+    /**
+     * Returns a program looping over arithmetic, concatenation and logic on
+     * literals and a VAL global.
+     */
+    private static String loop(int iterations) {
+        return "VAL limit: Integer = 100;\n" +
+                "FUN main(): Integer DO\n" +
+                "    LET i: Integer = 0;\n" +
+                "    LET total: Integer = 0;\n" +
+                "    WHILE i < " + iterations + " DO\n" +
+                "        total = total + 60 * 60 * 24 / limit;\n" +
+                "        IF \"a\" + 'b' == \"ab\" && 1.5 * 2.0 - 0.25 > 2.5 DO\n" +
+                "            total = total - (limit - 1);\n" +
+                "        END\n" +
+                "        i = i + 1;\n" +
+                "    END\n" +
+                "    RETURN total;\n" +
+                "END\n";
+    }
+
+}
@@ -0,0 +1,200 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Tests that an {@link Optimizer} folds constant expressions to the values the
+ * {@link Interpreter} evaluates them to, and leaves any expression it cannot
+ * fold as the interpreter would have evaluated it.
+ */
+final class OptimizerTests {
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testFold(String test, String type, String expression, Object expected) {
+        Ast.Source source = analyze(parse(function(type, expression)));
+        Ast.Source optimized = (Ast.Source) new Optimizer(Optimizer.Backend.INTERPRETER).visit(source);
+        Ast.Expression value = ((Ast.Statement.Return) optimized.getFunctions().get(0).getStatements().get(0)).getValue();
+        Assertions.assertTrue(value instanceof Ast.Expression.Literal, value.toString());
+        Assertions.assertEquals(expected, ((Ast.Expression.Literal) value).getLiteral());
+        Assertions.assertEquals(expected, interpret(source, "f"));
+        Assertions.assertEquals(expected, interpret(optimized, "f"));
+    }
+
+    private static Stream<Arguments> testFold() {
+        return Stream.of(
+                Arguments.of("Integer", "Integer", "60 * 60 * 24", BigInteger.valueOf(86400)),
+                Arguments.of("Integer Division", "Integer", "7 / 2", BigInteger.valueOf(3)),
+                Arguments.of("Group", "Integer", "(1 + 2) * (10 - 4)", BigInteger.valueOf(18)),
+                Arguments.of("Power", "Integer", "2 ^ 10", BigInteger.valueOf(1024)),
+                Arguments.of("Negative Power", "Integer", "2 ^ (0 - 1)", BigInteger.ZERO),
+                Arguments.of("Decimal Addition", "Decimal", "0.1 + 0.2", BigDecimal.valueOf(0.1 + 0.2)),
+                Arguments.of("Decimal Subtraction", "Decimal", "1.50 - 0.25", new BigDecimal("1.25")),
+                Arguments.of("Decimal Multiplication", "Decimal", "0.25 * 0.5", new BigDecimal("0.1")),
+                Arguments.of("Decimal Division", "Decimal", "1.0 / 3.0", new BigDecimal("0.3")),
+                Arguments.of("Concatenation", "String", "\"a\" + 1 + 'c' + 1.50", "a1c1.50"),
+                Arguments.of("Comparison", "Boolean", "1 < 2", true),
+                //compareTo of strings is the difference of the first characters
+                Arguments.of("String Comparison", "Boolean", "\"a\" < \"c\"", false),
+                Arguments.of("Decimal Equality", "Boolean", "1.0 == 1.00", false),
+                Arguments.of("Inequality", "Boolean", "'a' != 'b'", true),
+                Arguments.of("And", "Boolean", "TRUE && FALSE", false),
+                Arguments.of("Or", "Boolean", "FALSE || 1 > 0", true)
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testNotFolded(String test, String type, String expression) {
+        Ast.Source source = analyze(parse(function(type, expression)));
+        Ast.Source optimized = (Ast.Source) new Optimizer(Optimizer.Backend.INTERPRETER).visit(source);
+        Assertions.assertSame(source, optimized);
+    }
+
+    private static Stream<Arguments> testNotFolded() {
+        return Stream.of(
+                Arguments.of("Division By Zero", "Integer", "1 / 0"),
+                Arguments.of("Decimal Division By Zero", "Decimal", "1.0 / 0.0"),
+                Arguments.of("Overflow", "Integer", "2147483647 + 1"),
+                Arguments.of("Power Overflow", "Integer", "2 ^ 40")
+        );
+    }
+
+    /**
+     * Tests that optimizing for the generator only folds the expressions the
+     * generated Java evaluates as the interpreter does, comparing its code to
+     * that of the unoptimized AST, or of the folded value if it is folded.
+     */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource
+    void testGenerated(String test, String type, String expression, String folded) {
+        Ast.Source source = analyze(parse(function(type, expression)));
+        Ast.Source optimized = (Ast.Source) new Optimizer(Optimizer.Backend.GENERATOR).visit(source);
+        if (folded == null) {
+            Assertions.assertSame(source, optimized);
+            Assertions.assertEquals(generate(source), generate(optimized));
+        } else {
+            Assertions.assertEquals(generate(analyze(parse(function(type, folded)))), generate(optimized));
+        }
+        Assertions.assertEquals(interpret(source, "f"), interpret(optimized, "f"));
+    }
+
+    private static Stream<Arguments> testGenerated() {
+        return Stream.of(
+                Arguments.of("Integer", "Integer", "60 * 60 * 24", "86400"),
+                Arguments.of("Power", "Integer", "2 ^ 10", null),
+                Arguments.of("Decimal Addition", "Decimal", "0.1 + 0.2", "0.30000000000000004"),
+                Arguments.of("Exact Decimal Subtraction", "Decimal", "1.50 - 0.25", "1.25"),
+                Arguments.of("Decimal Subtraction", "Decimal", "0.3 - 0.1", null),
+                Arguments.of("Exact Decimal Multiplication", "Decimal", "1.5 * 2.0", "3.0"),
+                Arguments.of("Decimal Multiplication", "Decimal", "0.25 * 0.5", null),
+                Arguments.of("Decimal Division", "Decimal", "1.0 / 3.0", null),
+                Arguments.of("Equality", "Boolean", "1 == 1", "TRUE"),
+                Arguments.of("Decimal Equality", "Boolean", "1.0 == 1.00", null),
+                Arguments.of("Decimal Inequality", "Boolean", "1.0 != 1.00", null),
+                Arguments.of("Decimal Comparison", "Boolean", "1.5 > 0.5", "TRUE"),
+                Arguments.of("Character Comparison", "Boolean", "'a' < 'c'", null),
+                Arguments.of("Concatenation", "String", "\"a\" + 1 + 'c'", "\"a1c\""),
+                Arguments.of("Decimal Concatenation", "String", "\"a\" + 1.50", null),
+                Arguments.of("Quote Concatenation", "String", "\"a\" + '\"'", null)
+        );
+    }
+
+    @Test
+    void testShortCircuit() {
+        Ast.Source source = analyze(parse("VAR x: Boolean = TRUE;\nFUN main(): Integer DO\n" +
+                "    print(TRUE && x);\n" +
+                "    print(x || FALSE);\n" +
+                "    print((FALSE || x));\n" +
+                "    print(x && FALSE);\n" +
+                "    RETURN 0;\nEND"));
+        Ast.Source optimized = (Ast.Source) new Optimizer(Optimizer.Backend.GENERATOR).visit(source);
+        Assertions.assertEquals(generate(source).replace("true && ", "").replace(" || false", "")
+                .replace("(false || x)", "x"), generate(optimized));
+        //The optimized AST is still one the analyzer accepts
+        analyze(optimized);
+    }
+
+    @Test
+    void testPropagate() {
+        Ast.Source source = analyze(parse("VAL day: Integer = 60 * 60 * 24;\nVAR week: Integer = day * 7;\n" +
+                "FUN main(): Integer DO RETURN week + day; END"));
+        Ast.Source optimized = (Ast.Source) new Optimizer(Optimizer.Backend.INTERPRETER).visit(source);
+        Assertions.assertEquals(analyze(parse("VAL day: Integer = 86400;\nVAR week: Integer = 604800;\n" +
+                "FUN main(): Integer DO RETURN week + 86400; END")), optimized);
+        Assertions.assertEquals(BigInteger.valueOf(691200), interpret(optimized, "main"));
+    }
+
+    @Test
+    void testPropagateShadowed() {
+        //The local is not the global, which main sees
+        Ast.Source source = analyze(parse("VAL x: Integer = 1;\n" +
+                "FUN f(): Integer DO LET x: Integer = 3; RETURN x; END\nFUN main(): Integer DO RETURN x; END"));
+        Ast.Source optimized = (Ast.Source) new Optimizer(Optimizer.Backend.INTERPRETER).visit(source);
+        Assertions.assertSame(source.getFunctions().get(0), optimized.getFunctions().get(0));
+        Assertions.assertEquals(BigInteger.valueOf(3), interpret(optimized, "f"));
+        Assertions.assertEquals(BigInteger.ONE, interpret(optimized, "main"));
+    }
+
+    @Test
+    void testCorpus() {
+        Ast.Source source = parse(Corpus.program(10));
+        analyze(source);
+        Ast.Source optimized = (Ast.Source) new Optimizer(Optimizer.Backend.GENERATOR).visit(source);
+        Assertions.assertNotSame(source, optimized);
+        Assertions.assertEquals(interpret(source, "main"), interpret(optimized, "main"));
+        Assertions.assertEquals(generate(analyze(optimized)), generate(optimized));
+        //Optimizing into a result generates the same code, without annotating
+        //the AST
+        Ast.Source unannotated = parse(Corpus.program(10));
+        AnalysisResult result = new AnalysisResult();
+        new Analyzer(new Scope(null), result).visit(unannotated);
+        Ast.Source optimizedResult = (Ast.Source) new Optimizer(result, Optimizer.Backend.GENERATOR).visit(unannotated);
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer), result).visit(optimizedResult);
+        Assertions.assertEquals(generate(optimized), writer.toString());
+    }
+
+    /**
+     * Returns a source with a function f returning the expression.
+     */
+    private static String function(String type, String expression) {
+        return "FUN f(): " + type + " DO RETURN " + expression + "; END\nFUN main(): Integer DO RETURN 0; END";
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+    private static Ast.Source analyze(Ast.Source source) {
+        new Analyzer(new Scope(null)).visit(source);
+        return source;
+    }
+
+    /**
+     * Runs the source, then returns the result of calling the given function.
+     */
+    private static Object interpret(Ast.Source source, String function) {
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.visit(source);
+        return interpreter.getScope().lookupFunction(function, 0).invoke(new ArrayList<>()).getValue();
+    }
+
+    private static String generate(Ast ast) {
+        StringWriter writer = new StringWriter();
+        new Generator(new PrintWriter(writer)).visit(ast);
+        return writer.toString();
+    }
+
+}
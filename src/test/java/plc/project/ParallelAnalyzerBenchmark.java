@@ -0,0 +1,36 @@
+package plc.project;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures {@link Analyzer#visitParallel(Ast.Source, ForkJoinPool)} on a
+ * program of many functions on pools of 1, 2, 4, ... threads up to the number
+ * of available processors, relative to the sequential {@link
+ * Analyzer#visit(Ast.Source)}.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=ParallelAnalyzerBenchmark [--args="<functions>"]}
+ */
+final class ParallelAnalyzerBenchmark {
+
+    public static void main(String[] args) {
+        int functions = Bench.intArg(args, 0, 20_000);
+        Ast.Source ast = new Parser(new Lexer(Corpus.program(functions)).lexBuffer()).parseSource();
+        System.out.println("Input: " + functions + " functions, " + Runtime.getRuntime().availableProcessors() + " processors");
+
+        Bench.Result sequential = Bench.measure("sequential", 5, 10, () -> new Analyzer(new Scope(null)).visit(ast));
+        System.out.printf("%-12s %8.2f ms%n", sequential.name, sequential.millis());
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Bench.Result parallel = Bench.measure(threads + " threads", 5, 10, () -> new Analyzer(new Scope(null)).visitParallel(ast, pool));
+            Bench.Result result = Bench.measure(threads + " result", 5, 10, () -> new Analyzer(new Scope(null), new AnalysisResult()).visitParallel(ast, pool));
+            pool.shutdown();
+            System.out.printf("%-12s %8.2f ms %6.2fx%n", parallel.name, parallel.millis(), sequential.nanos / parallel.nanos);
+            System.out.printf("%-12s %8.2f ms %6.2fx%n", result.name, result.millis(), sequential.nanos / result.nanos);
+            if (threads == processors) {
+                break;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package plc.project;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures {@link Lexer#lexParallel(ForkJoinPool)} on pools of 1, 2, 4, ...
+ * threads up to the number of available processors, relative to the
+ * sequential {@link Lexer#lex()}.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=ParallelLexerBenchmark [--args="<chars>"]}
+ */
+final class ParallelLexerBenchmark {
+
+    public static void main(String[] args) {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 16_000_000));
+        System.out.println("Input: " + input.length() + " chars, " + Runtime.getRuntime().availableProcessors() + " processors");
+
+        Bench.Result sequential = Bench.measure("sequential", 5, 10, () -> new Lexer(input).lex());
+        System.out.printf("%-12s %8.2f ms%n", sequential.name, sequential.millis());
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Bench.Result parallel = Bench.measure(threads + " threads", 5, 10, () -> new Lexer(input).lexParallel(pool));
+            pool.shutdown();
+            System.out.printf("%-12s %8.2f ms %6.2fx%n", parallel.name, parallel.millis(), sequential.nanos / parallel.nanos);
+            if (threads == processors) {
+                break;
+            }
+        }
+    }
+
+}
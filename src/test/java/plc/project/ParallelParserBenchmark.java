@@ -0,0 +1,34 @@
+package plc.project;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures {@link Parser#parseSourceParallel(ForkJoinPool)} from a lexed
+ * {@link TokenBuffer} on pools of 1, 2, 4, ... threads up to the number of
+ * available processors, relative to the sequential {@link Parser#parseSource()}.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=ParallelParserBenchmark [--args="<chars>"]}
+ */
+final class ParallelParserBenchmark {
+
+    public static void main(String[] args) {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 16_000_000));
+        TokenBuffer tokens = new Lexer(input).lexBuffer();
+        System.out.println("Input: " + input.length() + " chars, " + tokens.size() + " tokens, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+
+        Bench.Result sequential = Bench.measure("sequential", 5, 10, () -> new Parser(tokens).parseSource());
+        System.out.printf("%-12s %8.2f ms%n", sequential.name, sequential.millis());
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Bench.Result parallel = Bench.measure(threads + " threads", 5, 10, () -> new Parser(tokens).parseSourceParallel(pool));
+            pool.shutdown();
+            System.out.printf("%-12s %8.2f ms %6.2fx%n", parallel.name, parallel.millis(), sequential.nanos / parallel.nanos);
+            if (threads == processors) {
+                break;
+            }
+        }
+    }
+
+}
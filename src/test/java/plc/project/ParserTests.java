@@ -11,7 +11,10 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
@@ -592,6 +595,521 @@ final class ParserTests {
         );
     }
 
+    @Test
+    void testTokenBuffer() {
+        String input = Corpus.program(10);
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), new Parser(new Lexer(input).lexBuffer()).parseSource());
+    }
+
+    @Test
+    void testTokenBufferException() {
+        String input = "FUN main(): Integer DO\n    RETURN 0\nEND";
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lexBuffer()).parseSource());
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLexerStream(String test, String input) {
+        Assertions.assertEquals(outcome(() -> new Parser(new Lexer(input).lex()).parseSource()),
+                outcome(() -> new Parser(new Lexer(input)).parseSource()));
+    }
+
+    private static Stream<Arguments> testLexerStream() {
+        return Stream.of(
+                Arguments.of("Program", Corpus.program(20)),
+                Arguments.of("List Global", "LIST list: Integer = [1, 2, 3]; FUN main(): Integer DO RETURN list[0]; END"),
+                Arguments.of("Empty", ""),
+                Arguments.of("Parse Error", "FUN main(): Integer DO\n    RETURN 0\nEND"),
+                Arguments.of("Parse Error At End", "VAR x: Integer = 1"),
+                Arguments.of("Lex Error After Parse Error", "FUN main(): Integer DO RETURN 0 END\n" + Corpus.program(2) + "'ab'"),
+                Arguments.of("Lex Error", "FUN main(): Integer DO RETURN \"abc; END")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParseParallel(String test, String input) {
+        Object expected = outcome(() -> new Parser(new Lexer(input).lex()).parseSource());
+        Assertions.assertEquals(expected, outcome(() -> new Parser(new Lexer(input).lex()).parseSourceParallel(ForkJoinPool.commonPool())));
+        Assertions.assertEquals(expected, outcome(() -> new Parser(new Lexer(input).lexBuffer()).parseSourceParallel(ForkJoinPool.commonPool())));
+    }
+
+    private static Stream<Arguments> testParseParallel() {
+        String program = Corpus.program(20);
+        int middle = program.indexOf("FUN f10");
+        return Stream.of(
+                Arguments.of("Program", program),
+                Arguments.of("Globals Only", "VAR x: Integer = 1; VAL y: Integer = 2;"),
+                Arguments.of("Empty", ""),
+                Arguments.of("Global Error", "VAR x: Integer = 1 " + program),
+                Arguments.of("Missing End", program.substring(0, program.lastIndexOf("END"))),
+                Arguments.of("Missing Semicolon", program.replaceFirst("RETURN a;", "RETURN a")),
+                Arguments.of("Extra End", program.substring(0, middle) + "END\n" + program.substring(middle)),
+                Arguments.of("Unbalanced Do", program.substring(0, middle) + "FUN g() DO DO\n" + program.substring(middle)),
+                Arguments.of("Global After Function", program + "VAR x: Integer = 1;"),
+                Arguments.of("Trailing Token", program + "x")
+        );
+    }
+
+    @Test
+    void testParseParallelLexerStream() {
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> new Parser(new Lexer(Corpus.program(2))).parseSourceParallel(ForkJoinPool.commonPool()));
+    }
+
+    @Test
+    void testParseLazy() {
+        String input = Corpus.program(20);
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).parseSourceLazy());
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSourceLazy());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParseLazyException(String test, String input) {
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        Ast.Source source = new Parser(new Lexer(input).lexBuffer()).parseSourceLazy();
+        Assertions.assertEquals(Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ZERO))),
+                source.getFunctions().get(1).getStatements());
+        ParseException actual = Assertions.assertThrows(ParseException.class, () -> source.getFunctions().get(0).getStatements());
+        Assertions.assertEquals(expected.getMessage() + "@" + expected.getIndex(), actual.getMessage() + "@" + actual.getIndex());
+    }
+
+    private static Stream<Arguments> testParseLazyException() {
+        return Stream.of(
+                Arguments.of("Missing Semicolon", "FUN f() DO\n    LET x = 1\nEND\nFUN main(): Integer DO RETURN 0; END"),
+                Arguments.of("Missing Expression", "FUN f() DO\n    IF x DO x = ; END\nEND\nFUN main(): Integer DO RETURN 0; END"),
+                Arguments.of("Stray Else", "FUN f() DO\n    x;\n    ELSE\nEND\nFUN main(): Integer DO RETURN 0; END")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIterative(String test, String input) {
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setIterative(true);
+        Assertions.assertEquals(outcome(() -> new Parser(new Lexer(input).lex()).parseSource()), outcome(parser::parseSource));
+    }
+
+    private static Stream<Arguments> testIterative() {
+        return Stream.of(
+                Arguments.of("Program", Corpus.program(20)),
+                Arguments.of("Expressions", "FUN main() DO\n" + Corpus.expressions(2000) + "END"),
+                Arguments.of("Nested", "VAL x: Integer = ((f(a[b + (c)], g()) * 2));\nFUN main() DO IF a DO WHILE b DO SWITCH c CASE 1: IF d DO e; ELSE f; END DEFAULT RETURN 0; END END END END"),
+                Arguments.of("Declarations", "FUN main() DO LET x; LET y: Integer; LET z = 1; LET w: Integer = 2; END"),
+                Arguments.of("Missing Semicolon", "FUN main() DO LET x = 1 END"),
+                Arguments.of("Missing Type", "FUN main() DO LET x: = 1; END"),
+                Arguments.of("Missing Do", "FUN main() DO IF x y; END END"),
+                Arguments.of("Missing Else End", "FUN main() DO IF x DO y; ELSE z;"),
+                Arguments.of("Missing Default", "FUN main() DO SWITCH x CASE 1: y; END END"),
+                Arguments.of("Missing Colon", "FUN main() DO SWITCH x CASE 1 y; DEFAULT z; END END"),
+                Arguments.of("Missing Return Value", "FUN main() DO RETURN; END"),
+                Arguments.of("Missing Assignment Value", "FUN main() DO x = ; END"),
+                Arguments.of("Missing Assignment Semicolon", "FUN main() DO x = 1 END"),
+                Arguments.of("Trailing Comma", "FUN main() DO f(1,); END"),
+                Arguments.of("Missing Comma", "FUN main() DO f(1 2); END"),
+                Arguments.of("Unclosed Call", "FUN main() DO f(1, 2"),
+                Arguments.of("Unclosed Group", "FUN main() DO (1 + 2; END"),
+                Arguments.of("Unclosed Index", "FUN main() DO x[1; END"),
+                Arguments.of("Missing Operand", "FUN main() DO x = 1 + ; END"),
+                Arguments.of("Missing Operand At End", "VAL x: Integer = 1 +")
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("testSource")
+    void testIterativeSource(String test, List<Token> tokens, Ast.Source expected) {
+        assertIterative(tokens, Parser::parseSource);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource({
+            "testSwitchFunction",
+            "testExpressionStatement",
+            "testDeclarationStatement",
+            "testAssignmentStatement",
+            "testIfStatement",
+            "testWhileStatement",
+            "testReturnStatement",
+            "testStatementExceptions",
+            "plc.project.ParserExpressionTests#testExpressionStatement",
+            "plc.project.ParserExpressionTests#testAssignmentStatement"
+    })
+    void testIterativeStatement(String test, List<Token> tokens, Object expected) {
+        assertIterative(tokens, Parser::parseStatement);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource({
+            "testLiteralExpression",
+            "testGroupExpression",
+            "testBinaryExpression",
+            "testAccessExpression",
+            "testFunctionExpression",
+            "plc.project.ParserExpressionTests#testLiteralExpression",
+            "plc.project.ParserExpressionTests#testGroupExpression",
+            "plc.project.ParserExpressionTests#testBinaryExpression",
+            "plc.project.ParserExpressionTests#testAccessExpression",
+            "plc.project.ParserExpressionTests#testFunctionExpression",
+            "plc.project.ParserExpressionTests#testExpressionExceptions"
+    })
+    void testIterativeExpression(String test, List<Token> tokens, Object expected) {
+        assertIterative(tokens, Parser::parseExpression);
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.ParserExpressionTests#testStatementExceptions")
+    void testIterativeStatementException(List<Token> tokens, int index) {
+        assertIterative(tokens, Parser::parseStatement);
+    }
+
+    /**
+     * Asserts that parsing the tokens iteratively returns the same AST, or
+     * throws the same exception, as parsing them recursively.
+     */
+    private static void assertIterative(List<Token> tokens, Function<Parser, ? extends Ast> rule) {
+        Parser iterative = new Parser(tokens);
+        iterative.setIterative(true);
+        Assertions.assertEquals(outcome(() -> rule.apply(new Parser(tokens))), outcome(() -> rule.apply(iterative)));
+    }
+
+    @Test
+    void testIterativeGroupDepth() {
+        int depth = 100_000;
+        String input = repeat("(", depth) + "x" + repeat(")", depth);
+        Parser parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setIterative(true);
+        Ast.Expression expression = parser.parseExpression();
+        for (int i = 0; i < depth; i++) {
+            expression = ((Ast.Expression.Group) expression).getExpression();
+        }
+        Assertions.assertEquals(new Ast.Expression.Access(Optional.empty(), "x"), expression);
+    }
+
+    @Test
+    void testIterativeCallDepth() {
+        int depth = 100_000;
+        String input = repeat("f(x[", depth) + "x" + repeat("])", depth);
+        Parser parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setIterative(true);
+        Ast.Expression expression = parser.parseExpression();
+        for (int i = 0; i < depth; i++) {
+            Ast.Expression.Function function = (Ast.Expression.Function) expression;
+            Assertions.assertEquals("f", function.getName());
+            expression = ((Ast.Expression.Access) function.getArguments().get(0)).getOffset().get();
+        }
+        Assertions.assertEquals(new Ast.Expression.Access(Optional.empty(), "x"), expression);
+    }
+
+    @Test
+    void testIterativeBlockDepth() {
+        int depth = 100_000;
+        String input = "FUN main() DO\n" + repeat("IF x DO WHILE y DO\n", depth) + "z;\n" + repeat("END ELSE END\n", depth) + "END";
+        Parser parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setIterative(true);
+        List<Ast.Statement> statements = parser.parseSource().getFunctions().get(0).getStatements();
+        for (int i = 0; i < depth; i++) {
+            Ast.Statement.If statement = (Ast.Statement.If) statements.get(0);
+            Assertions.assertTrue(statement.getElseStatements().isEmpty());
+            statements = ((Ast.Statement.While) statement.getThenStatements().get(0)).getStatements();
+        }
+        Assertions.assertEquals(Arrays.asList(new Ast.Statement.Expression(new Ast.Expression.Access(Optional.empty(), "z"))), statements);
+    }
+
+    @Test
+    void testIterativeErrorDepth() {
+        int depth = 100_000;
+        String input = repeat("(", depth) + "x" + repeat(")", depth - 1);
+        Parser parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setIterative(true);
+        ParseException exception = Assertions.assertThrows(ParseException.class, parser::parseExpression);
+        Assertions.assertEquals(input.length(), exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testPositions(String test, boolean iterative) {
+        String input = "VAL x: Integer = (1 + f(a)) * b;\nFUN main() DO\n    SWITCH x CASE 1: y[0] = 2; DEFAULT RETURN x; END\nEND";
+        Lexer lexer = new Lexer(input);
+        Parser parser = new Parser(lexer.lex());
+        AstPositions positions = new AstPositions();
+        parser.setIterative(iterative);
+        parser.setPositions(positions);
+        Ast.Source source = parser.parseSource();
+        Ast.Global global = source.getGlobals().get(0);
+        Ast.Expression.Binary product = (Ast.Expression.Binary) global.getValue().get();
+        Ast.Expression.Group group = (Ast.Expression.Group) product.getLeft();
+        Ast.Expression.Binary sum = (Ast.Expression.Binary) group.getExpression();
+        Ast.Statement.Switch statement = (Ast.Statement.Switch) source.getFunctions().get(0).getStatements().get(0);
+        Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) statement.getCases().get(0).getStatements().get(0);
+        Assertions.assertEquals("VAL x: Integer = (1 + f(a)) * b;", span(input, positions, global));
+        Assertions.assertEquals("(1 + f(a)) * b", span(input, positions, product));
+        Assertions.assertEquals("(1 + f(a))", span(input, positions, group));
+        Assertions.assertEquals("1 + f(a)", span(input, positions, sum));
+        Assertions.assertEquals("f(a)", span(input, positions, sum.getRight()));
+        Assertions.assertEquals("a", span(input, positions, ((Ast.Expression.Function) sum.getRight()).getArguments().get(0)));
+        Assertions.assertEquals(input.substring(input.indexOf("FUN")), span(input, positions, source.getFunctions().get(0)));
+        Assertions.assertEquals("SWITCH x CASE 1: y[0] = 2; DEFAULT RETURN x; END", span(input, positions, statement));
+        Assertions.assertEquals("CASE 1: y[0] = 2;", span(input, positions, statement.getCases().get(0)));
+        Assertions.assertEquals("DEFAULT RETURN x;", span(input, positions, statement.getCases().get(1)));
+        Assertions.assertEquals("y[0] = 2;", span(input, positions, assignment));
+        Assertions.assertEquals("y[0]", span(input, positions, assignment.getReceiver()));
+        Assertions.assertEquals("3:5", positions.format(statement, lexer.getLineMap()));
+        Assertions.assertFalse(positions.contains(source));
+        Assertions.assertEquals(-1, positions.getStart(source));
+    }
+
+    private static Stream<Arguments> testPositions() {
+        return Stream.of(
+                Arguments.of("Recursive", false),
+                Arguments.of("Iterative", true)
+        );
+    }
+
+    @Test
+    void testPositionsModes() {
+        String input = Corpus.program(20);
+        AstPositions expected = new AstPositions();
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setPositions(expected);
+        Ast.Source source = parser.parseSource();
+        AstPositions iterative = new AstPositions();
+        parser = new Parser(new Lexer(input).lex());
+        parser.setIterative(true);
+        parser.setPositions(iterative);
+        assertPositions(expected, source, iterative, parser.parseSource());
+        AstPositions parallel = new AstPositions();
+        parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setPositions(parallel);
+        assertPositions(expected, source, parallel, parser.parseSourceParallel(ForkJoinPool.commonPool()));
+        AstPositions lazy = new AstPositions();
+        parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setPositions(lazy);
+        Ast.Source actual = parser.parseSourceLazy();
+        //Bodies are only recorded once they are parsed
+        Assertions.assertTrue(lazy.size() < expected.size());
+        assertPositions(expected, source, lazy, actual);
+    }
+
+    private static void assertPositions(AstPositions expected, Ast.Source source, AstPositions positions, Ast.Source actual) {
+        Assertions.assertEquals(source, actual);
+        Assertions.assertEquals(expected.size(), positions.size());
+        for (int i = 0; i < source.getFunctions().size(); i++) {
+            List<Ast.Statement> statements = source.getFunctions().get(i).getStatements();
+            for (int j = 0; j < statements.size(); j++) {
+                Ast.Statement statement = actual.getFunctions().get(i).getStatements().get(j);
+                Assertions.assertEquals(expected.getStart(statements.get(j)), positions.getStart(statement));
+                Assertions.assertEquals(expected.getEnd(statements.get(j)), positions.getEnd(statement));
+            }
+        }
+    }
+
+    private static String span(String input, AstPositions positions, Ast node) {
+        return input.substring(positions.getStart(node), positions.getEnd(node));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testPositions")
+    void testPool(String test, boolean iterative) {
+        String input = "VAL x: Integer = 1 + 2;\nFUN f() DO RETURN (1 + 2) * y + 1; END";
+        AstPool pool = new AstPool();
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setIterative(iterative);
+        parser.setPool(pool);
+        Ast.Source source = parser.parseSource();
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), source);
+        Ast.Expression.Binary global = (Ast.Expression.Binary) source.getGlobals().get(0).getValue().get();
+        Ast.Expression.Binary sum = (Ast.Expression.Binary) ((Ast.Statement.Return) source.getFunctions().get(0).getStatements().get(0)).getValue();
+        Ast.Expression.Binary product = (Ast.Expression.Binary) sum.getLeft();
+        Assertions.assertSame(global, ((Ast.Expression.Group) product.getLeft()).getExpression());
+        Assertions.assertSame(global.getLeft(), sum.getRight());
+        Assertions.assertTrue(pool.isShared(product.getLeft()));
+        //Anything holding a variable is only as shared as its operands
+        Assertions.assertFalse(pool.isShared(product));
+        Assertions.assertFalse(pool.isShared(sum));
+        Assertions.assertEquals(4, pool.size());
+    }
+
+    @Test
+    void testPoolAnalyzed() {
+        String input = "VAL x: Integer = 1 + 2;\nFUN f(): Integer DO RETURN (1 + 2) * 3; END\nFUN main(): Integer DO RETURN 0; END";
+        AstPool pool = new AstPool();
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setPool(pool);
+        Ast.Source first = parser.parseSource();
+        int size = pool.size();
+        //Annotating the shared nodes in place does not unshare them
+        new Analyzer(new Scope(null)).visit(first);
+        parser = new Parser(new Lexer(input).lex());
+        parser.setPool(pool);
+        Ast.Source second = parser.parseSource();
+        Ast.Expression.Binary global = (Ast.Expression.Binary) first.getGlobals().get(0).getValue().get();
+        Ast.Expression.Binary product = (Ast.Expression.Binary) ((Ast.Statement.Return) first.getFunctions().get(0).getStatements().get(0)).getValue();
+        Assertions.assertSame(global, second.getGlobals().get(0).getValue().get());
+        Assertions.assertSame(global.getLeft(), ((Ast.Expression.Binary) second.getGlobals().get(0).getValue().get()).getLeft());
+        Assertions.assertSame(product, ((Ast.Statement.Return) second.getFunctions().get(0).getStatements().get(0)).getValue());
+        Assertions.assertTrue(pool.isShared(global));
+        Assertions.assertTrue(pool.isShared(product.getLeft()));
+        Assertions.assertEquals(size, pool.size());
+    }
+
+    @Test
+    void testPoolModes() {
+        String input = Corpus.program(20);
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        AstPool pool = new AstPool();
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setPool(pool);
+        Ast.Source first = parser.parseSource();
+        int size = pool.size();
+        parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setPool(pool);
+        Ast.Source parallel = parser.parseSourceParallel(ForkJoinPool.commonPool());
+        parser = new Parser(new Lexer(input).lexBuffer());
+        parser.setPool(pool);
+        Ast.Source lazy = parser.parseSourceLazy();
+        Assertions.assertEquals(expected, first);
+        Assertions.assertEquals(expected, parallel);
+        Assertions.assertEquals(expected, lazy);
+        Assertions.assertEquals(size, pool.size());
+        Assertions.assertSame(first.getGlobals().get(0).getValue().get(), parallel.getGlobals().get(0).getValue().get());
+    }
+
+    @Test
+    void testHashCode() {
+        String input = Corpus.program(20);
+        Ast.Source first = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Source second = new Parser(new Lexer(input).lexBuffer()).parseSourceLazy();
+        Assertions.assertEquals(first.hashCode(), second.hashCode());
+        Assertions.assertNotEquals(new Ast.Expression.Literal(new BigDecimal("1.0")).hashCode(), new Ast.Expression.Literal(new BigDecimal("1.00")).hashCode());
+        Assertions.assertNotEquals(new Ast.Expression.Literal(BigInteger.ONE).hashCode(), new Ast.Expression.Group(new Ast.Expression.Literal(BigInteger.ONE)).hashCode());
+    }
+
+    @Test
+    void testLazyHashCode() {
+        AtomicInteger parsed = new AtomicInteger();
+        Supplier<List<Ast.Statement>> body = () -> {
+            parsed.incrementAndGet();
+            throw new ParseException("Expected END.", 0);
+        };
+        Ast.Function lazy = new Ast.Function("f", Arrays.asList(), Arrays.asList(), Optional.empty(), body);
+        Ast.Function other = new Ast.Function("g", Arrays.asList(), Arrays.asList(), Optional.empty(), body);
+        Ast.Function eager = new Ast.Function("f", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList());
+        Assertions.assertEquals(eager.hashCode(), lazy.hashCode());
+        Assertions.assertFalse(lazy.equals(other));
+        Assertions.assertTrue(lazy.toString().contains("statements=<unparsed>"), lazy.toString());
+        Assertions.assertEquals(0, parsed.get());
+        //Equal signatures compare the bodies, which must be parsed
+        Assertions.assertThrows(ParseException.class, () -> lazy.equals(eager));
+        Assertions.assertEquals(1, parsed.get());
+    }
+
+    private static String repeat(String string, int count) {
+        StringBuilder builder = new StringBuilder(string.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(string);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the parsed AST, or a description of the {@link ParseException}
+     * thrown, so two parsing pipelines can be compared.
+     */
+    private static Object outcome(java.util.function.Supplier<Ast> parser) {
+        try {
+            return parser.get();
+        } catch (ParseException e) {
+            return e.getMessage() + "@" + e.getIndex();
+        }
+    }
+
+    @Test
+    void testLineMapException() {
+        String input = "FUN main(): Integer DO\n    RETURN 0\nEND";
+        Lexer lexer = new Lexer(input);
+        List<Token> tokens = lexer.lex();
+        Assertions.assertNull(Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSource()).getLineMap());
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens, lexer.getLineMap()).parseSource());
+        Assertions.assertEquals("3:1", exception.getLineMap().format(exception.getIndex()));
+        exception = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lexBuffer()).parseSource());
+        Assertions.assertEquals("3:1", exception.getLineMap().format(exception.getIndex()));
+    }
+
+    @Test
+    void testBinaryPrecedence() {
+        java.util.Random random = new java.util.Random(42);
+        String[] operators = {"&&", "||", "<", ">", "==", "!=", "+", "-", "*", "/", "^"};
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder input = new StringBuilder("x0");
+            java.util.Deque<Ast.Expression> operands = new java.util.ArrayDeque<>();
+            java.util.Deque<String> pending = new java.util.ArrayDeque<>();
+            operands.push(new Ast.Expression.Access(Optional.empty(), "x0"));
+            int count = random.nextInt(8);
+            for (int j = 1; j <= count; j++) {
+                String operator = operators[random.nextInt(operators.length)];
+                input.append(' ').append(operator).append(" x").append(j);
+                while (!pending.isEmpty() && precedence(pending.peek()) >= precedence(operator)) {
+                    reduce(operands, pending.pop());
+                }
+                pending.push(operator);
+                operands.push(new Ast.Expression.Access(Optional.empty(), "x" + j));
+            }
+            while (!pending.isEmpty()) {
+                reduce(operands, pending.pop());
+            }
+            Assertions.assertEquals(operands.pop(), new Parser(new Lexer(input.toString()).lex()).parseExpression(), input.toString());
+        }
+    }
+
+    @Test
+    void testBinaryPrecedenceLevel() {
+        Parser parser = new Parser(new Lexer("a * b + c < d && e").lex());
+        Assertions.assertEquals(new Ast.Expression.Binary("+",
+                new Ast.Expression.Binary("*",
+                        new Ast.Expression.Access(Optional.empty(), "a"),
+                        new Ast.Expression.Access(Optional.empty(), "b")),
+                new Ast.Expression.Access(Optional.empty(), "c")), parser.parseAdditiveExpression());
+        Assertions.assertThrows(ParseException.class, parser::parseMultiplicativeExpression);
+    }
+
+    /**
+     * Parses a function of a great many {@code x;} statements, each of which
+     * runs the statement, primary expression and block matching several times
+     * over, and checks that only the AST itself is allocated: a statement and
+     * an access node, and the growth of the statement list.
+     */
+    @Test
+    void testMatchingAllocation() {
+        int statements = 200_000;
+        StringBuilder input = new StringBuilder("FUN main() DO\n");
+        for (int i = 0; i < statements; i++) {
+            input.append("    x;\n");
+        }
+        List<Token> tokens = new Lexer(input.append("END\n").toString()).lex();
+        new Parser(tokens).parseSource();
+        long bytes = Bench.allocatedBytes();
+        new Parser(tokens).parseSource();
+        bytes = Bench.allocatedBytes() - bytes;
+        Assertions.assertTrue(bytes / statements < 64, bytes / statements + " bytes per statement");
+    }
+
+    /**
+     * The precedence of a binary operator in the grammar, for building the
+     * expected trees of {@link #testBinaryPrecedence()} by shunting-yard.
+     */
+    private static int precedence(String operator) {
+        return "&& ||".contains(operator) ? 1 : "< > == !=".contains(operator) ? 2 : "+ -".contains(operator) ? 3 : 4;
+    }
+
+    private static void reduce(java.util.Deque<Ast.Expression> operands, String operator) {
+        Ast.Expression right = operands.pop();
+        operands.push(new Ast.Expression.Binary(operator, operands.pop(), right));
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
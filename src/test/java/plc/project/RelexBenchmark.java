@@ -0,0 +1,34 @@
+package plc.project;
+
+import java.util.List;
+
+/**
+ * Compares lexing a whole edited program against {@link Lexer#relex} for a one
+ * character edit in the middle of it, including the line map of the result.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=RelexBenchmark [--args="<chars>"]}
+ */
+final class RelexBenchmark {
+
+    public static void main(String[] args) {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 4_000_000));
+        int offset = input.indexOf("limit", input.length() / 2);
+        String edited = input.substring(0, offset) + "L" + input.substring(offset + 1);
+        Lexer lexer = new Lexer(input);
+        List<Token> previous = lexer.lex();
+        LineMap lines = lexer.getLineMap();
+        System.out.println("Input: " + input.length() + " chars, " + previous.size() + " tokens");
+
+        Bench.Result full = Bench.measure("lex", 5, 10, () -> new Lexer(edited).lex());
+        Bench.Result relex = Bench.measure("relex", 5, 10, () -> {
+            Lexer relexer = new Lexer(edited);
+            relexer.relex(previous, lines, offset, 1, "L");
+            relexer.getLineMap();
+        });
+        for (Bench.Result result : new Bench.Result[] {full, relex}) {
+            System.out.printf("%-6s %10.2f ms %12.1f bytes/token%n", result.name, result.millis(), result.bytes / previous.size());
+        }
+        System.out.printf("speedup %.1fx%n", full.nanos / relex.nanos);
+    }
+
+}
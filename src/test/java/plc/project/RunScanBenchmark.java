@@ -0,0 +1,26 @@
+package plc.project;
+
+/**
+ * Measures lexing throughput on corpora dominated by long identifiers, by long
+ * literals and by a regular program, which exercise the run scanning of the
+ * {@link Lexer} differently.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=RunScanBenchmark [--args="<chars>"]}
+ */
+final class RunScanBenchmark {
+
+    public static void main(String[] args) {
+        int chars = Bench.intArg(args, 0, 2_000_000);
+        run("identifiers", Corpus.identifiers(chars));
+        run("literals", Corpus.literals(chars));
+        run("program", Corpus.programOfSize(chars));
+    }
+
+    private static void run(String name, String input) {
+        int tokens = new Lexer(input).lex().size();
+        Bench.Result result = Bench.measure(name, 20, 30, () -> new Lexer(input).lex());
+        System.out.printf("%-12s %12.0f chars/s %10.2f ms %8d tokens%n",
+                result.name, input.length() / result.seconds(), result.millis(), tokens);
+    }
+
+}
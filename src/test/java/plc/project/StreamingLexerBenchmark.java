@@ -0,0 +1,57 @@
+package plc.project;
+
+import java.io.Reader;
+
+/**
+ * Measures the peak retained heap of streaming inputs of growing numbers of
+ * lines through a {@link Lexer}, with and without recording lines. Without
+ * them, it should stay bounded by the window whatever the size of the input.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=StreamingLexerBenchmark [--args="<lines>"]}
+ */
+final class StreamingLexerBenchmark {
+
+    public static void main(String[] args) {
+        int maximum = Bench.intArg(args, 0, 8_000_000);
+        for (int lines = maximum / 64; lines <= maximum; lines *= 4) {
+            int count = lines;
+            long plain = Bench.peakRetained(() -> new Lexer(new LineReader(count)).tokens().forEachRemaining(token -> {}));
+            long recorded = Bench.peakRetained(() -> new Lexer(new LineReader(count), Lexer.DEFAULT_WINDOW, true).tokens().forEachRemaining(token -> {}));
+            System.out.printf("%,12d lines: %8.2f MB retained, %8.2f MB recording lines%n", lines, plain / 1e6, recorded / 1e6);
+        }
+    }
+
+    /**
+     * Reads the same statement on each of the given number of lines, without
+     * holding them.
+     */
+    private static final class LineReader extends Reader {
+
+        private static final char[] LINE = "total = total + 1;\n".toCharArray();
+
+        private final long length;
+        private long position = 0;
+
+        private LineReader(int lines) {
+            this.length = (long) lines * LINE.length;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            if (position == length) {
+                return -1;
+            }
+            int read = (int) Math.min(count, length - position);
+            for (int i = 0; i < read; i++) {
+                buffer[offset + i] = LINE[(int) ((position + i) % LINE.length)];
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() {}
+
+    }
+
+}
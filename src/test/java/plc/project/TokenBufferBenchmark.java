@@ -0,0 +1,40 @@
+package plc.project;
+
+import java.util.List;
+
+/**
+ * Compares the retained heap of a lexed program stored as a {@code List<Token>}
+ * against a {@link TokenBuffer}, in bytes per token, and the time to lex and
+ * parse from each representation.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=TokenBufferBenchmark [--args="<chars>"]}
+ */
+final class TokenBufferBenchmark {
+
+    public static void main(String[] args) {
+        String input = Corpus.programOfSize(Bench.intArg(args, 0, 4_000_000));
+
+        long base = Bench.usedHeap();
+        List<Token> list = new Lexer(input).lex();
+        long listBytes = Bench.usedHeap() - base;
+        int tokens = list.size();
+        list = null;
+
+        base = Bench.usedHeap();
+        TokenBuffer buffer = new Lexer(input).lexBuffer();
+        long bufferBytes = Bench.usedHeap() - base;
+
+        System.out.println("Input: " + input.length() + " chars, " + tokens + " tokens");
+        System.out.printf("List<Token>  %6.1f bytes/token%n", (double) listBytes / tokens);
+        System.out.printf("TokenBuffer  %6.1f bytes/token (%d)%n", (double) bufferBytes / tokens, buffer.size());
+
+        Bench.Result lexList = Bench.measure("lex List<Token>", 5, 10, () -> new Lexer(input).lex());
+        Bench.Result lexBuffer = Bench.measure("lex TokenBuffer", 5, 10, () -> new Lexer(input).lexBuffer());
+        Bench.Result parseList = Bench.measure("lex+parse List<Token>", 5, 10, () -> new Parser(new Lexer(input).lex()).parseSource());
+        Bench.Result parseBuffer = Bench.measure("lex+parse TokenBuffer", 5, 10, () -> new Parser(new Lexer(input).lexBuffer()).parseSource());
+        for (Bench.Result result : new Bench.Result[] {lexList, lexBuffer, parseList, parseBuffer}) {
+            System.out.printf("%-22s %8.2f ms %8.1f bytes/token allocated%n", result.name, result.millis(), result.bytes / tokens);
+        }
+    }
+
+}
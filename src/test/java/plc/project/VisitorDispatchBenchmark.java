@@ -0,0 +1,88 @@
+package plc.project;
+
+/**
+ * Compares {@link Interpreter} dispatching nodes through {@link
+ * Ast#accept(Ast.Visitor)} against the chain of {@code instanceof} checks
+ * {@link Ast.Visitor#visit(Ast)} used before, on a loop of expression heavy
+ * statements.
+ *
+ * Usage: {@code gradle benchmark -PbenchmarkClass=VisitorDispatchBenchmark [--args="<iterations>"]}
+ */
+final class VisitorDispatchBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = Bench.intArg(args, 0, 20_000);
+        String input = "LIST xs: Integer = [1, 2, 3, 4];\n"
+                + "FUN main(): Integer DO\n"
+                + "    LET i = 0;\n"
+                + "    LET total = 0;\n"
+                + "    WHILE i < " + iterations + " DO\n"
+                + "        total = total + (i * 3 - xs[1]) / 2 - (xs[2] + i) * (xs[3] - 1);\n"
+                + "        IF total > 1000000 || total < 0 - 1000000 && i != 0 DO total = 0; END\n"
+                + "        i = i + 1;\n"
+                + "    END\n"
+                + "    RETURN total;\n"
+                + "END\n";
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Bench.Result chain = Bench.measure("instanceof", 5, 10, () -> new ChainInterpreter().visit(source));
+        Bench.Result accept = Bench.measure("accept", 5, 10, () -> new Interpreter(null).visit(source));
+        for (Bench.Result result : new Bench.Result[] {chain, accept}) {
+            System.out.printf("%-10s %8.2f ms %8.1f ns/iteration%n", result.name, result.millis(), result.nanos / iterations);
+        }
+        System.out.printf("speedup: %.2fx%n", chain.nanos / accept.nanos);
+    }
+
+    /**
+     * The interpreter dispatching as {@link Ast.Visitor#visit(Ast)} did
+     * before {@link Ast#accept(Ast.Visitor)}.
+     */
+    private static final class ChainInterpreter extends Interpreter {
+
+        ChainInterpreter() {
+            super(null);
+        }
+
+        @Override
+        public Environment.PlcObject visit(Ast ast) {
+            if (ast instanceof Ast.Source) {
+                return visit((Ast.Source) ast);
+            } else if (ast instanceof Ast.Global) {
+                return visit((Ast.Global) ast);
+            } else if (ast instanceof Ast.Function) {
+                return visit((Ast.Function) ast);
+            } else if (ast instanceof Ast.Statement.Expression) {
+                return visit((Ast.Statement.Expression) ast);
+            } else if (ast instanceof Ast.Statement.Declaration) {
+                return visit((Ast.Statement.Declaration) ast);
+            } else if (ast instanceof Ast.Statement.Assignment) {
+                return visit((Ast.Statement.Assignment) ast);
+            } else if (ast instanceof Ast.Statement.If) {
+                return visit((Ast.Statement.If) ast);
+            } else if (ast instanceof Ast.Statement.Switch) {
+                return visit((Ast.Statement.Switch) ast);
+            } else if (ast instanceof Ast.Statement.Case) {
+                return visit((Ast.Statement.Case) ast);
+            } else if (ast instanceof Ast.Statement.While) {
+                return visit((Ast.Statement.While) ast);
+            } else if (ast instanceof Ast.Statement.Return) {
+                return visit((Ast.Statement.Return) ast);
+            } else if (ast instanceof Ast.Expression.Literal) {
+                return visit((Ast.Expression.Literal) ast);
+            } else if (ast instanceof Ast.Expression.Group) {
+                return visit((Ast.Expression.Group) ast);
+            } else if (ast instanceof Ast.Expression.Binary) {
+                return visit((Ast.Expression.Binary) ast);
+            } else if (ast instanceof Ast.Expression.Access) {
+                return visit((Ast.Expression.Access) ast);
+            } else if (ast instanceof Ast.Expression.Function) {
+                return visit((Ast.Expression.Function) ast);
+            } else if (ast instanceof Ast.Expression.PlcList) {
+                return visit((Ast.Expression.PlcList) ast);
+            } else {
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+        }
+
+    }
+
+}